@@ -0,0 +1,76 @@
+package com.kiss.kissnest.config;
+
+import com.kiss.foundation.exception.StatusException;
+import com.kiss.kissnest.status.NestStatusCode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * 部署线程池：节点任务在 deployExecutor 中并行执行，不占用 Tomcat 请求线程；部署调度和 salt job 轮询各用一个定时任务线程池
+ */
+@Configuration
+public class DeployExecutorConfig {
+
+    @Value("${deploy.executor.maxPoolSize:50}")
+    private Integer maxPoolSize;
+
+    @Value("${deploy.executor.queueCapacity:500}")
+    private Integer queueCapacity;
+
+    @Value("${deploy.scheduler.poolSize:1}")
+    private Integer deploySchedulerPoolSize;
+
+    @Value("${salt.job.pollerPoolSize:2}")
+    private Integer pollerPoolSize;
+
+    @Bean(name = "deployExecutor")
+    public ThreadPoolTaskExecutor deployExecutor() {
+
+        // 线程池只有在队列满后才会超过核心线程数，核心线程数与最大线程数相同，空闲线程超时回收
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxPoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("nest-deploy-");
+        // 队列满时拒绝并返回错误，不在提交线程（可能是 Tomcat 请求线程）中执行阻塞的 salt 调用
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            throw new StatusException(NestStatusCode.DEPLOY_EXECUTOR_BUSY);
+        });
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.initialize();
+
+        return executor;
+    }
+
+    /**
+     * 部署调度定时任务线程，重试排队中的部署，续租执行中的部署
+     */
+    @Bean(name = "deployScheduler")
+    public ThreadPoolTaskScheduler deployScheduler() {
+
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(deploySchedulerPoolSize);
+        scheduler.setThreadNamePrefix("nest-deploy-scheduler-");
+        scheduler.initialize();
+
+        return scheduler;
+    }
+
+    /**
+     * salt 异步 job 轮询线程，少量线程即可跟踪大量在途 job
+     */
+    @Bean(name = "saltJobScheduler")
+    public ThreadPoolTaskScheduler saltJobScheduler() {
+
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(pollerPoolSize);
+        scheduler.setThreadNamePrefix("nest-salt-job-");
+        scheduler.initialize();
+
+        return scheduler;
+    }
+}
@@ -0,0 +1,32 @@
+package com.kiss.kissnest.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * GitLab 线程池：批量添加成员等场景下并行调用 GitLab 接口
+ */
+@Configuration
+public class GitlabExecutorConfig {
+
+    @Value("${gitlab.client.poolSize:8}")
+    private Integer gitlabPoolSize;
+
+    /**
+     * GitLab 并行查询线程，批量添加成员时并行解析用户 id
+     */
+    @Bean(name = "gitlabExecutor")
+    public ThreadPoolTaskExecutor gitlabExecutor() {
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(gitlabPoolSize);
+        executor.setMaxPoolSize(gitlabPoolSize);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("nest-gitlab-");
+        executor.initialize();
+
+        return executor;
+    }
+}
@@ -0,0 +1,69 @@
+package com.kiss.kissnest.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Jenkins 线程池：批量触发构建、消费构建通知、轮询构建日志
+ */
+@Configuration
+public class JenkinsExecutorConfig {
+
+    @Value("${jenkins.executor.poolSize:10}")
+    private Integer jenkinsPoolSize;
+
+    @Value("${jenkins.notification.consumerPoolSize:4}")
+    private Integer notificationPoolSize;
+
+    @Value("${jenkins.console.pollerPoolSize:2}")
+    private Integer consolePollerPoolSize;
+
+    /**
+     * 批量触发 Jenkins 构建，线程数不超过 Jenkins 连接池的单路由连接数
+     */
+    @Bean(name = "jenkinsExecutor")
+    public ThreadPoolTaskExecutor jenkinsExecutor() {
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(jenkinsPoolSize);
+        executor.setMaxPoolSize(jenkinsPoolSize);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("nest-jenkins-");
+        executor.initialize();
+
+        return executor;
+    }
+
+    /**
+     * Jenkins 通知消费线程，每个任务的通知在同一个线程内顺序处理
+     */
+    @Bean(name = "notificationExecutor")
+    public ThreadPoolTaskExecutor notificationExecutor() {
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(notificationPoolSize);
+        executor.setMaxPoolSize(notificationPoolSize);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("nest-notification-");
+        executor.initialize();
+
+        return executor;
+    }
+
+    /**
+     * 构建日志轮询线程，每个正在查看的构建一个定时任务
+     */
+    @Bean(name = "consoleLogScheduler")
+    public ThreadPoolTaskScheduler consoleLogScheduler() {
+
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(consolePollerPoolSize);
+        scheduler.setThreadNamePrefix("nest-console-");
+        scheduler.initialize();
+
+        return scheduler;
+    }
+}
@@ -0,0 +1,30 @@
+package com.kiss.kissnest.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * 监控数据线程池
+ */
+@Configuration
+public class MonitorExecutorConfig {
+
+    @Value("${monitor.schedulerPoolSize:1}")
+    private Integer monitorSchedulerPoolSize;
+
+    /**
+     * 监控数据定时任务线程，清理不再上报的服务器，写入和清理汇总数据
+     */
+    @Bean(name = "monitorScheduler")
+    public ThreadPoolTaskScheduler monitorScheduler() {
+
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(monitorSchedulerPoolSize);
+        scheduler.setThreadNamePrefix("nest-monitor-");
+        scheduler.initialize();
+
+        return scheduler;
+    }
+}
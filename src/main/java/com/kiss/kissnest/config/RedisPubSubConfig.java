@@ -0,0 +1,34 @@
+package com.kiss.kissnest.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Redis 订阅容器，用于在多个实例之间分发 WebSocket 消息
+ */
+@Configuration
+public class RedisPubSubConfig {
+
+    /**
+     * 订阅消息由单个线程按到达顺序处理，保证同一团队的消息顺序；处理只是放入各连接的发送缓冲区，不会阻塞
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("nest-redis-sub-");
+        executor.initialize();
+
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.setTaskExecutor(executor);
+
+        return container;
+    }
+}
@@ -0,0 +1,88 @@
+package com.kiss.kissnest.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * WebSocket 线程池：定时任务、发送、关闭连接、发布消息
+ */
+@Configuration
+public class WebSocketExecutorConfig {
+
+    @Value("${websocket.schedulerPoolSize:1}")
+    private Integer webSocketSchedulerPoolSize;
+
+    @Value("${websocket.senderPoolSize:8}")
+    private Integer webSocketSenderPoolSize;
+
+    @Value("${websocket.closerPoolSize:2}")
+    private Integer webSocketCloserPoolSize;
+
+    @Value("${websocket.publisherPoolSize:4}")
+    private Integer webSocketPublisherPoolSize;
+
+    /**
+     * WebSocket 定时任务线程，清理失效连接、检查发送超时、合并推送监控数据
+     */
+    @Bean(name = "webSocketScheduler")
+    public ThreadPoolTaskScheduler webSocketScheduler() {
+
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(webSocketSchedulerPoolSize);
+        scheduler.setThreadNamePrefix("nest-websocket-");
+        scheduler.initialize();
+
+        return scheduler;
+    }
+
+    /**
+     * WebSocket 发送线程，每个连接同时最多占用一个线程，慢连接不影响其他连接
+     */
+    @Bean(name = "webSocketExecutor")
+    public ThreadPoolTaskExecutor webSocketExecutor() {
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(webSocketSenderPoolSize);
+        executor.setMaxPoolSize(webSocketSenderPoolSize);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("nest-websocket-send-");
+        executor.initialize();
+
+        return executor;
+    }
+
+    /**
+     * WebSocket 关闭连接线程，与发送线程分开，关闭不会排在卡住的发送任务后面
+     */
+    @Bean(name = "webSocketCloseExecutor")
+    public ThreadPoolTaskExecutor webSocketCloseExecutor() {
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(webSocketCloserPoolSize);
+        executor.setMaxPoolSize(webSocketCloserPoolSize);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("nest-websocket-close-");
+        executor.initialize();
+
+        return executor;
+    }
+
+    /**
+     * WebSocket 消息发布线程，分配序号、写入 Redis 并发布；每个团队同时最多占用一个线程，保证团队内的序号顺序
+     */
+    @Bean(name = "webSocketPublishExecutor")
+    public ThreadPoolTaskExecutor webSocketPublishExecutor() {
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(webSocketPublisherPoolSize);
+        executor.setMaxPoolSize(webSocketPublisherPoolSize);
+        executor.setQueueCapacity(Integer.MAX_VALUE);
+        executor.setThreadNamePrefix("nest-websocket-publish-");
+        executor.initialize();
+
+        return executor;
+    }
+}
@@ -4,10 +4,13 @@ import com.kiss.foundation.utils.BeanCopyUtil;
 import com.kiss.kissnest.entity.BuildLog;
 import com.kiss.kissnest.entity.Job;
 import com.kiss.kissnest.enums.WebSocketMessageTypeEnums;
+import com.kiss.kissnest.enums.WebSocketTopicEnums;
 import com.kiss.kissnest.input.*;
 import com.kiss.kissnest.output.*;
+import com.kiss.kissnest.service.JenkinsNotificationService;
 import com.kiss.kissnest.service.JobService;
 import com.kiss.kissnest.service.PackageRepositoryService;
+import com.kiss.kissnest.service.ProgramControlService;
 import com.kiss.kissnest.service.WebSocketService;
 import com.kiss.kissnest.util.OutputUtil;
 import com.kiss.kissnest.validator.JobValidator;
@@ -15,6 +18,7 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
@@ -45,6 +49,12 @@ public class JobController {
     @Autowired
     private OutputUtil outputUtil;
 
+    @Autowired
+    private ProgramControlService programControlService;
+
+    @Autowired
+    private JenkinsNotificationService jenkinsNotificationService;
+
     @InitBinder
     public void initBinder(WebDataBinder binder) {
 
@@ -66,11 +76,18 @@ public class JobController {
 
         BuildLogOutput buildLogOutput = outputUtil.toBuildLogOutput(buildLog);
 
-        webSocketService.sendMessage(WebSocketMessageTypeEnums.BUILD_PROJECT_PENDING.value(), buildLogOutput);
+        webSocketService.sendMessage(buildLog.getTeamId(), WebSocketMessageTypeEnums.BUILD_PROJECT_PENDING.value(), buildLogOutput, WebSocketTopicEnums.PROJECT.topic(buildLog.getProjectId()));
 
         return buildLogOutput;
     }
 
+    @PostMapping("/job/build/batch/exec")
+    @ApiOperation(value = "批量执行构建任务")
+    public List<BuildLogOutput> batchExecBuildJob(@Validated @RequestBody BatchBuildJobInput batchBuildJobInput) {
+
+        return jobService.batchBuildJob(batchBuildJobInput);
+    }
+
     @GetMapping("/job/exist")
     @ApiOperation(value = "检查任务是否存在")
     public Map<String, Boolean> validateJobExist(@RequestParam("projectId") Integer projectId, @RequestParam("type") Integer type) {
@@ -87,9 +104,13 @@ public class JobController {
 
     @GetMapping("/job/build/log/output")
     @ApiOperation(value = "获取构建日志输出")
-    public Map<String, Object> getBuildLogOutputById(@RequestParam("id") Integer id) {
+    public LogRangeOutput getBuildLogOutputById(@RequestParam("id") Integer id,
+                                                @RequestParam(value = "unit", defaultValue = "line") String unit,
+                                                @RequestParam(value = "offset", defaultValue = "0") Long offset,
+                                                @RequestParam(value = "limit", defaultValue = "1000") Integer limit,
+                                                @RequestParam(value = "tail", defaultValue = "false") Boolean tail) {
 
-        return jobService.getDeployLogOutputTextById(id);
+        return jobService.getDeployLogOutputTextById(id, unit, offset, limit, tail);
     }
 
     @GetMapping("/job/build/result")
@@ -120,6 +141,20 @@ public class JobController {
         return jobService.deployJob(deployJobInput);
     }
 
+    @PostMapping("/job/deploy/continue")
+    @ApiOperation(value = "继续金丝雀部署")
+    public void continueDeployJob(@RequestParam("id") Integer id) {
+
+        jobService.resumeDeploy(id);
+    }
+
+    @PostMapping("/job/deploy/abort")
+    @ApiOperation(value = "终止金丝雀部署")
+    public void abortDeployJob(@RequestParam("id") Integer id) {
+
+        jobService.abortDeploy(id);
+    }
+
     @GetMapping("/job/deploy/envs")
     @ApiOperation(value = "获取项目可部署环境列表")
     public List<EnvironmentOutput> getDeployEnvs(@RequestParam("projectId") Integer projectId) {
@@ -136,9 +171,20 @@ public class JobController {
 
     @GetMapping("/job/deploy/log/output")
     @ApiOperation(value = "获取部署任务日志输出")
-    public Map<String, Object> getDeployLogOutputText(@RequestParam("id") Integer id) {
+    public LogRangeOutput getDeployLogOutputText(@RequestParam("id") Integer id,
+                                                 @RequestParam(value = "unit", defaultValue = "line") String unit,
+                                                 @RequestParam(value = "offset", defaultValue = "0") Long offset,
+                                                 @RequestParam(value = "limit", defaultValue = "1000") Integer limit,
+                                                 @RequestParam(value = "tail", defaultValue = "false") Boolean tail) {
+
+        return jobService.getDeployLogOutputText(id, unit, offset, limit, tail);
+    }
 
-        return jobService.getDeployLogOutputText(id);
+    @GetMapping(value = "/job/log/block", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @ApiOperation(value = "读取本实例写入的压缩日志块,供其他实例读取")
+    public byte[] getLogBlock(@RequestParam("id") Integer id) {
+
+        return jobService.getLogBlock(id);
     }
 
     @GetMapping("/jobs")
@@ -244,16 +290,24 @@ public class JobController {
         return jobService.restartProgram(projectId, envId);
     }
 
+    @GetMapping("/job/deploy/queue")
+    @ApiOperation(value = "获取部署队列")
+    public DeployQueueOutput getDeployQueue() {
+
+        return jobService.getDeployQueue();
+    }
+
+    @PostMapping("/job/program/batch")
+    @ApiOperation(value = "批量控制程序")
+    public Map<Integer, Map<String, String>> batchControlProgram(@RequestBody BatchProgramInput batchProgramInput) {
+
+        return programControlService.batchControlProgram(batchProgramInput);
+    }
+
     @PostMapping("/job/jenkins/notification")
     @ApiOperation(value = "Jenkins消息回调")
     public void postJenkinsNotification(@RequestBody JenkinsNotification data) {
-        log.info("Jenkins 回调数据：{}", data);
-        if (data.isQueued()) {
-            jobService.buildJobQueued(data.getName(), data.getBuild().getQueue_id(), data.getBuild().getNumber(), data.getBuild().getFull_url(), data.getBuild().getScm().getBranch(), data.getBuild().getScm().getCommit());
-        } else if (data.isStarted()) {
-            jobService.buildJobStarted(data.getName(), data.getBuild().getQueue_id());
-        } else if (data.isFinalized()) {
-            jobService.buildJobFinalized(data.getName(), data.getBuild().getQueue_id(), data.getBuild().getStatus(), data.getBuild().getLog());
-        }
+        log.info("Jenkins 回调数据：{} {} {}", data.getName(), data.getBuild().getQueue_id(), data.getBuild().getPhase());
+        jenkinsNotificationService.accept(data);
     }
 }
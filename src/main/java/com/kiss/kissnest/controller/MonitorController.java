@@ -2,14 +2,15 @@ package com.kiss.kissnest.controller;
 
 import com.kiss.kissnest.input.MonitorProgramInput;
 import com.kiss.kissnest.input.MonitorServerInput;
+import com.kiss.kissnest.output.MetricSeriesOutput;
 import com.kiss.kissnest.service.MonitorService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
 
 @RestController
 @Api(tags = "Monitor", description = "监控相关接口")
@@ -32,4 +33,32 @@ public class MonitorController {
     public void programMonitor(@RequestBody MonitorProgramInput monitorProgramInput) {
         log.info("{}", monitorProgramInput);
     }
+
+    @GetMapping("/monitor/server/history")
+    @ApiOperation(value = "服务器历史监控数据")
+    public List<MetricSeriesOutput> getServerHistory(@RequestParam("serverId") Integer serverId,
+                                                     @RequestParam(value = "metrics", required = false) List<String> metrics,
+                                                     @RequestParam(value = "from", required = false) Long from,
+                                                     @RequestParam(value = "to", required = false) Long to,
+                                                     @RequestParam(value = "points", defaultValue = "300") Integer points) {
+
+        long end = to == null ? System.currentTimeMillis() : to;
+        long start = from == null ? end - 3600 * 1000 : from;
+
+        return monitorService.getServerHistory(serverId, metrics, start, end, points);
+    }
+
+    @GetMapping("/monitor/server/rollups")
+    @ApiOperation(value = "服务器监控汇总数据")
+    public List<MetricSeriesOutput> getServerRollups(@RequestParam("serverId") Integer serverId,
+                                                     @RequestParam(value = "metrics", required = false) List<String> metrics,
+                                                     @RequestParam(value = "resolution", required = false) Integer resolution,
+                                                     @RequestParam(value = "from", required = false) Long from,
+                                                     @RequestParam(value = "to", required = false) Long to) {
+
+        long end = to == null ? System.currentTimeMillis() : to;
+        long start = from == null ? end - 7 * 86400 * 1000L : from;
+
+        return monitorService.getServerRollups(serverId, metrics, resolution, start, end);
+    }
 }
@@ -7,6 +7,7 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
 
 
@@ -29,16 +30,15 @@ public class TrackController {
     @PostMapping("/track")
     @ApiOperation(value = "接收动态信息")
     public String note(HttpServletRequest request, HttpServletResponse response) throws IOException {
-        StringBuilder builder = new StringBuilder();
-        String aux = "";
 
-        while ((aux = request.getReader().readLine()) != null) {
-            builder.append(aux);
+        byte[] payload = StreamUtils.copyToByteArray(request.getInputStream());
+
+        if (!trackService.enqueue(payload)) {
+            log.warn("webhook 队列已满,丢弃{}字节的请求", payload.length);
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return "busy";
         }
 
-        String text = builder.toString();
-        log.info(text);
-        trackService.createTrack(text);
         return "success";
     }
 
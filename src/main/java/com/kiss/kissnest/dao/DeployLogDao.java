@@ -22,4 +22,32 @@ public interface DeployLogDao {
     String getDeployLogOutputTextById(Integer id);
 
     Integer incrementDeployLogSuccessTasks(Integer id);
+
+    Integer updateDeployLogStatus(DeployLog deployLog);
+
+    Integer updateDeployLogsStatusByOwner(String owner, Integer fromStatus, Integer status, String statusText);
+
+    Integer updateDeployLogStatusByStatus(Integer id, Integer fromStatus, Integer status, String statusText);
+
+    Integer claimDeployLog(Integer id, Integer fromStatus, Integer status, String owner, Long leaseAt);
+
+    Integer pauseDeployLog(DeployLog deployLog);
+
+    List<DeployLog> getDeployLogsByStatusAndLeaseBefore(Integer status, Long before);
+
+    Integer renewDeployLogs(String owner, Integer status, Long leaseAt);
+
+    Integer updateDeployLogsStatusByLease(Integer fromStatus, Long before, Integer status, String statusText);
+
+    List<DeployLog> getDeployLogsByProjectIdAndEnvIdAndStatus(Integer projectId, Integer envId, Integer status);
+
+    Integer getDeployLogsCountByProjectIdAndEnvId(Integer projectId, Integer envId, List<Integer> statuses);
+
+    Integer getDeployLogsCountByEnvId(Integer envId, Integer status);
+
+    Integer getDeployLogsCountBySaltHost(String saltHost, Integer status);
+
+    Integer createDeployLock(String name);
+
+    String lockDeployLock(String name);
 }
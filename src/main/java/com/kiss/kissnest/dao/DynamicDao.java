@@ -8,6 +8,8 @@ public interface DynamicDao {
 
     Integer createDynamic(Dynamic dynamic);
 
+    Integer createDynamics(List<Dynamic> dynamics);
+
     List<Dynamic> getDynamics(Integer teamId, Integer start, Integer size, Integer groupId, Integer projectId);
 
     Integer getDynamicsCount(Dynamic dynamic);
@@ -0,0 +1,24 @@
+package com.kiss.kissnest.dao;
+
+import com.kiss.kissnest.entity.JenkinsNotificationEvent;
+
+import java.util.List;
+
+public interface JenkinsNotificationEventDao {
+
+    Integer createJenkinsNotificationEvent(JenkinsNotificationEvent jenkinsNotificationEvent);
+
+    Integer claimJenkinsNotificationEvents(String owner, Integer size);
+
+    List<JenkinsNotificationEvent> getClaimedJenkinsNotificationEvents(String owner);
+
+    Integer releaseStaleJenkinsNotificationEvents(Long claimedBefore);
+
+    Integer releaseJenkinsNotificationEventsByOwner(String owner);
+
+    Integer updateJenkinsNotificationEventsStatus(List<Integer> ids, Integer status);
+
+    Integer retryJenkinsNotificationEvents(List<Integer> ids, Long retryAt, Integer maxAttempts);
+
+    Integer deleteFinishedJenkinsNotificationEvents(Integer retentionDays, Integer limit);
+}
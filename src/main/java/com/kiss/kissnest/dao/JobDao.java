@@ -36,4 +36,8 @@ public interface JobDao {
     Job getDeployJobByProjectIdAndEnvId(Integer projectId, Integer envId);
 
     Job getBuildJobByProjectId(Integer projectId);
+
+    List<Job> getDeployJobsByEnvId(Integer envId);
+
+    List<Job> getBuildJobsByProjectIds(List<Integer> projectIds);
 }
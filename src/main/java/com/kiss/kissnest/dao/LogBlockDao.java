@@ -0,0 +1,16 @@
+package com.kiss.kissnest.dao;
+
+import com.kiss.kissnest.entity.LogBlock;
+
+import java.util.List;
+
+public interface LogBlockDao {
+
+    Integer createLogBlocks(List<LogBlock> logBlocks);
+
+    List<LogBlock> getLogBlocks(Integer type, Integer logId);
+
+    LogBlock getLastLogBlock(Integer type, Integer logId);
+
+    LogBlock getLogBlockById(Integer id);
+}
@@ -34,6 +34,8 @@ public interface ServerDao {
 
     String getServerIpsByIds(List<Integer> ids);
 
+    List<Server> getServersByIds(List<Integer> ids);
+
     Server getServerByEnvIdAndInnerIp(Integer envId, String innerIp);
 
 }
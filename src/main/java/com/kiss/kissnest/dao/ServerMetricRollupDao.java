@@ -0,0 +1,14 @@
+package com.kiss.kissnest.dao;
+
+import com.kiss.kissnest.entity.ServerMetricRollup;
+
+import java.util.List;
+
+public interface ServerMetricRollupDao {
+
+    Integer createServerMetricRollups(List<ServerMetricRollup> serverMetricRollups);
+
+    List<ServerMetricRollup> getServerMetricRollups(Integer serverId, Integer resolution, List<String> metrics, Long from, Long to);
+
+    Integer deleteServerMetricRollups(Integer resolution, Long before, Integer limit);
+}
@@ -8,5 +8,7 @@ public interface TrackDao {
 
     Integer createTrack(Track track);
 
+    Integer createTracks(List<Track> tracks);
+
     List<Track> getTracksByTeamId(Integer teamId);
 }
@@ -61,4 +61,88 @@ public class DeployLogDaoImpl implements DeployLogDao {
     public Integer incrementDeployLogSuccessTasks(Integer id) {
         return deployLogMapper.incrementDeployLogSuccessTasks(id);
     }
+
+    @Override
+    public Integer updateDeployLogStatus(DeployLog deployLog) {
+
+        return deployLogMapper.updateDeployLogStatus(deployLog);
+    }
+
+    @Override
+    public Integer updateDeployLogsStatusByOwner(String owner, Integer fromStatus, Integer status, String statusText) {
+
+        return deployLogMapper.updateDeployLogsStatusByOwner(owner, fromStatus, status, statusText);
+    }
+
+    @Override
+    public Integer updateDeployLogStatusByStatus(Integer id, Integer fromStatus, Integer status, String statusText) {
+
+        return deployLogMapper.updateDeployLogStatusByStatus(id, fromStatus, status, statusText);
+    }
+
+    @Override
+    public Integer claimDeployLog(Integer id, Integer fromStatus, Integer status, String owner, Long leaseAt) {
+
+        return deployLogMapper.claimDeployLog(id, fromStatus, status, owner, leaseAt);
+    }
+
+    @Override
+    public Integer pauseDeployLog(DeployLog deployLog) {
+
+        return deployLogMapper.pauseDeployLog(deployLog);
+    }
+
+    @Override
+    public List<DeployLog> getDeployLogsByStatusAndLeaseBefore(Integer status, Long before) {
+
+        return deployLogMapper.getDeployLogsByStatusAndLeaseBefore(status, before);
+    }
+
+    @Override
+    public Integer renewDeployLogs(String owner, Integer status, Long leaseAt) {
+
+        return deployLogMapper.renewDeployLogs(owner, status, leaseAt);
+    }
+
+    @Override
+    public Integer updateDeployLogsStatusByLease(Integer fromStatus, Long before, Integer status, String statusText) {
+
+        return deployLogMapper.updateDeployLogsStatusByLease(fromStatus, before, status, statusText);
+    }
+
+    @Override
+    public List<DeployLog> getDeployLogsByProjectIdAndEnvIdAndStatus(Integer projectId, Integer envId, Integer status) {
+
+        return deployLogMapper.getDeployLogsByProjectIdAndEnvIdAndStatus(projectId, envId, status);
+    }
+
+    @Override
+    public Integer getDeployLogsCountByProjectIdAndEnvId(Integer projectId, Integer envId, List<Integer> statuses) {
+
+        return deployLogMapper.getDeployLogsCountByProjectIdAndEnvId(projectId, envId, statuses);
+    }
+
+    @Override
+    public Integer getDeployLogsCountByEnvId(Integer envId, Integer status) {
+
+        return deployLogMapper.getDeployLogsCountByEnvId(envId, status);
+    }
+
+    @Override
+    public Integer getDeployLogsCountBySaltHost(String saltHost, Integer status) {
+
+        return deployLogMapper.getDeployLogsCountBySaltHost(saltHost, status);
+    }
+
+    @Override
+    public Integer createDeployLock(String name) {
+
+        return deployLogMapper.createDeployLock(name);
+    }
+
+    @Override
+    public String lockDeployLock(String name) {
+
+        return deployLogMapper.lockDeployLock(name);
+    }
 }
@@ -22,6 +22,12 @@ public class DynamicDaoImpl implements DynamicDao {
         return dynamicMapper.createDynamic(dynamic);
     }
 
+    @Override
+    public Integer createDynamics(List<Dynamic> dynamics) {
+
+        return dynamicMapper.createDynamics(dynamics);
+    }
+
     @Override
     public List<Dynamic> getDynamics(Integer teamId, Integer start, Integer size, Integer groupId, Integer projectId) {
 
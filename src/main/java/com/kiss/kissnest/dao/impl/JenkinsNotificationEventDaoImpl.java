@@ -0,0 +1,71 @@
+package com.kiss.kissnest.dao.impl;
+
+import com.kiss.kissnest.dao.JenkinsNotificationEventDao;
+import com.kiss.kissnest.entity.JenkinsNotificationEvent;
+import com.kiss.kissnest.enums.JenkinsNotificationStatusEnums;
+import com.kiss.kissnest.mapper.JenkinsNotificationEventMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+@Component
+public class JenkinsNotificationEventDaoImpl implements JenkinsNotificationEventDao {
+
+    @Autowired
+    private JenkinsNotificationEventMapper jenkinsNotificationEventMapper;
+
+    @Override
+    public Integer createJenkinsNotificationEvent(JenkinsNotificationEvent jenkinsNotificationEvent) {
+
+        return jenkinsNotificationEventMapper.createJenkinsNotificationEvent(jenkinsNotificationEvent);
+    }
+
+    @Override
+    public Integer claimJenkinsNotificationEvents(String owner, Integer size) {
+
+        return jenkinsNotificationEventMapper.claimJenkinsNotificationEvents(owner, System.currentTimeMillis(), size,
+                JenkinsNotificationStatusEnums.PENDING.value(), JenkinsNotificationStatusEnums.CLAIMED.value());
+    }
+
+    @Override
+    public List<JenkinsNotificationEvent> getClaimedJenkinsNotificationEvents(String owner) {
+
+        return jenkinsNotificationEventMapper.getJenkinsNotificationEventsByOwner(JenkinsNotificationStatusEnums.CLAIMED.value(), owner);
+    }
+
+    @Override
+    public Integer releaseStaleJenkinsNotificationEvents(Long claimedBefore) {
+
+        return jenkinsNotificationEventMapper.releaseStaleJenkinsNotificationEvents(claimedBefore,
+                JenkinsNotificationStatusEnums.PENDING.value(), JenkinsNotificationStatusEnums.CLAIMED.value());
+    }
+
+    @Override
+    public Integer releaseJenkinsNotificationEventsByOwner(String owner) {
+
+        return jenkinsNotificationEventMapper.releaseJenkinsNotificationEventsByOwner(owner,
+                JenkinsNotificationStatusEnums.PENDING.value(), JenkinsNotificationStatusEnums.CLAIMED.value());
+    }
+
+    @Override
+    public Integer updateJenkinsNotificationEventsStatus(List<Integer> ids, Integer status) {
+
+        return jenkinsNotificationEventMapper.updateJenkinsNotificationEventsStatus(ids, status, JenkinsNotificationStatusEnums.PROCESSED.value().equals(status));
+    }
+
+    @Override
+    public Integer retryJenkinsNotificationEvents(List<Integer> ids, Long retryAt, Integer maxAttempts) {
+
+        return jenkinsNotificationEventMapper.retryJenkinsNotificationEvents(ids, retryAt, maxAttempts,
+                JenkinsNotificationStatusEnums.PENDING.value(), JenkinsNotificationStatusEnums.FAILED.value());
+    }
+
+    @Override
+    public Integer deleteFinishedJenkinsNotificationEvents(Integer retentionDays, Integer limit) {
+
+        return jenkinsNotificationEventMapper.deleteJenkinsNotificationEvents(
+                Arrays.asList(JenkinsNotificationStatusEnums.PROCESSED.value(), JenkinsNotificationStatusEnums.FAILED.value()), retentionDays, limit);
+    }
+}
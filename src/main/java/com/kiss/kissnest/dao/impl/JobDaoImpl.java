@@ -130,4 +130,14 @@ public class JobDaoImpl implements JobDao {
         List<Job> jobs = jobMapper.getJobByProjectIdAndType(projectId, null, JobTypeEnums.BUILD.value());
         return jobs.size() > 0 ? jobs.get(0) : null;
     }
+
+    @Override
+    public List<Job> getDeployJobsByEnvId(Integer envId) {
+        return jobMapper.getJobsByEnvIdAndType(envId, JobTypeEnums.DEPLOY.value());
+    }
+
+    @Override
+    public List<Job> getBuildJobsByProjectIds(List<Integer> projectIds) {
+        return jobMapper.getJobsByProjectIdsAndType(projectIds, JobTypeEnums.BUILD.value());
+    }
 }
@@ -0,0 +1,40 @@
+package com.kiss.kissnest.dao.impl;
+
+import com.kiss.kissnest.dao.LogBlockDao;
+import com.kiss.kissnest.entity.LogBlock;
+import com.kiss.kissnest.mapper.LogBlockMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public class LogBlockDaoImpl implements LogBlockDao {
+
+    @Autowired
+    private LogBlockMapper logBlockMapper;
+
+    @Override
+    public Integer createLogBlocks(List<LogBlock> logBlocks) {
+
+        return logBlockMapper.createLogBlocks(logBlocks);
+    }
+
+    @Override
+    public List<LogBlock> getLogBlocks(Integer type, Integer logId) {
+
+        return logBlockMapper.getLogBlocks(type, logId);
+    }
+
+    @Override
+    public LogBlock getLastLogBlock(Integer type, Integer logId) {
+
+        return logBlockMapper.getLastLogBlock(type, logId);
+    }
+
+    @Override
+    public LogBlock getLogBlockById(Integer id) {
+
+        return logBlockMapper.getLogBlockById(id);
+    }
+}
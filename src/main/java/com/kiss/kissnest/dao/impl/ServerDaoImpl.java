@@ -115,6 +115,12 @@ public class ServerDaoImpl implements ServerDao {
         return serverMapper.getServerIpsByIds(ids);
     }
 
+    @Override
+    public List<Server> getServersByIds(List<Integer> ids) {
+
+        return serverMapper.getServersByIds(ids);
+    }
+
     @Override
     public Server getServerByEnvIdAndInnerIp(Integer envId, String innerIp) {
 
@@ -0,0 +1,34 @@
+package com.kiss.kissnest.dao.impl;
+
+import com.kiss.kissnest.dao.ServerMetricRollupDao;
+import com.kiss.kissnest.entity.ServerMetricRollup;
+import com.kiss.kissnest.mapper.ServerMetricRollupMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public class ServerMetricRollupDaoImpl implements ServerMetricRollupDao {
+
+    @Autowired
+    private ServerMetricRollupMapper serverMetricRollupMapper;
+
+    @Override
+    public Integer createServerMetricRollups(List<ServerMetricRollup> serverMetricRollups) {
+
+        return serverMetricRollupMapper.createServerMetricRollups(serverMetricRollups);
+    }
+
+    @Override
+    public List<ServerMetricRollup> getServerMetricRollups(Integer serverId, Integer resolution, List<String> metrics, Long from, Long to) {
+
+        return serverMetricRollupMapper.getServerMetricRollups(serverId, resolution, metrics, from, to);
+    }
+
+    @Override
+    public Integer deleteServerMetricRollups(Integer resolution, Long before, Integer limit) {
+
+        return serverMetricRollupMapper.deleteServerMetricRollups(resolution, before, limit);
+    }
+}
@@ -20,6 +20,12 @@ public class TrackDaoImpl implements TrackDao {
         return trackMapper.createTrack(track);
     }
 
+    @Override
+    public Integer createTracks(List<Track> tracks) {
+
+        return trackMapper.createTracks(tracks);
+    }
+
     @Override
     public List<Track> getTracksByTeamId(Integer teamId) {
 
@@ -39,6 +39,21 @@ public class DeployLog {
 
     private String operatorName;
 
+    /**
+     * 提交部署的实例，排队和执行都在该实例上
+     */
+    private String owner;
+
+    /**
+     * 执行中的部署由所属实例定期续租，过期说明实例已退出
+     */
+    private Long leaseAt;
+
+    /**
+     * 金丝雀暂停时保存的剩余部署计划（JSON），任一实例都可以据此继续或中止
+     */
+    private String rollout;
+
     private Date createdAt;
 
     private Date updatedAt;
@@ -0,0 +1,18 @@
+package com.kiss.kissnest.entity;
+
+import lombok.Data;
+
+@Data
+public class JenkinsNotificationEvent {
+    private Integer id;
+    private String jobName;
+    private Integer queueId;
+    private String phase;
+    private String payload;
+    private Integer status;
+    private Integer attempts;
+    private Long retryAt;
+    private String owner;
+    private Long claimedAt;
+    private Long createdAt;
+}
@@ -27,6 +27,16 @@ public class Job {
 
     private String conf;
 
+    private Integer strategy;
+
+    private Integer batchSize;
+
+    private Integer batchPercent;
+
+    private Integer maxUnavailable;
+
+    private Boolean canary;
+
     private Integer status;
 
     private Integer number;
@@ -0,0 +1,18 @@
+package com.kiss.kissnest.entity;
+
+import lombok.Data;
+
+@Data
+public class LogBlock {
+    private Integer id;
+    private Integer type;
+    private Integer logId;
+    private Integer segment;
+    private Long position;
+    private Integer compressedSize;
+    private Long rawOffset;
+    private Integer rawSize;
+    private Long lineOffset;
+    private Integer lineCount;
+    private String node;
+}
@@ -0,0 +1,19 @@
+package com.kiss.kissnest.entity;
+
+import lombok.Data;
+
+@Data
+public class ServerMetricRollup {
+    private Integer id;
+    private Integer teamId;
+    private Integer envId;
+    private Integer serverId;
+    private Integer resolution;
+    private String metric;
+    private Long bucketAt;
+    private Float minValue;
+    private Float maxValue;
+    private Float avgValue;
+    private Float lastValue;
+    private Integer sampleCount;
+}
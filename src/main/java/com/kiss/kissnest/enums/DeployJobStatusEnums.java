@@ -0,0 +1,21 @@
+package com.kiss.kissnest.enums;
+
+public enum DeployJobStatusEnums {
+
+    FAILED(0, "失败"),
+    SUCCESS(1, "成功"),
+    DEPLOYING(2, "部署中"),
+    PAUSED(3, "等待继续"),
+    QUEUED(4, "排队中"),
+    CANCELED(5, "已取消");
+
+    private Integer value;
+
+    DeployJobStatusEnums(Integer value, String description) {
+        this.value = value;
+    }
+
+    public Integer value() {
+        return value;
+    }
+}
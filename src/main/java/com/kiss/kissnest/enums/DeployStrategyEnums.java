@@ -0,0 +1,19 @@
+package com.kiss.kissnest.enums;
+
+public enum DeployStrategyEnums {
+
+    ALL(0, "全部并行"),
+    FIXED_BATCH(1, "固定批次"),
+    PERCENT_BATCH(2, "百分比批次"),
+    MAX_UNAVAILABLE(3, "最大不可用数");
+
+    private Integer value;
+
+    DeployStrategyEnums(Integer value, String description) {
+        this.value = value;
+    }
+
+    public Integer value() {
+        return value;
+    }
+}
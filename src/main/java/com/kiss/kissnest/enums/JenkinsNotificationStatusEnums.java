@@ -0,0 +1,19 @@
+package com.kiss.kissnest.enums;
+
+public enum JenkinsNotificationStatusEnums {
+
+    PENDING(0, "待处理"),
+    PROCESSED(1, "已处理"),
+    FAILED(2, "处理失败"),
+    CLAIMED(3, "处理中");
+
+    private Integer value;
+
+    JenkinsNotificationStatusEnums(Integer value, String description) {
+        this.value = value;
+    }
+
+    public Integer value() {
+        return value;
+    }
+}
@@ -0,0 +1,17 @@
+package com.kiss.kissnest.enums;
+
+public enum LogTypeEnums {
+
+    BUILD(1, "构建日志"),
+    DEPLOY(2, "部署日志");
+
+    private Integer value;
+
+    LogTypeEnums(Integer value, String description) {
+        this.value = value;
+    }
+
+    public Integer value() {
+        return value;
+    }
+}
@@ -0,0 +1,32 @@
+package com.kiss.kissnest.enums;
+
+/**
+ * 监控数据汇总粒度，单位为秒
+ */
+public enum RollupResolutionEnums {
+
+    MINUTE(60),
+    QUARTER(900),
+    HOUR(3600);
+
+    private Integer value;
+
+    RollupResolutionEnums(Integer value) {
+        this.value = value;
+    }
+
+    public Integer value() {
+        return value;
+    }
+
+    public static RollupResolutionEnums getEnumByValue(Integer value) {
+
+        for (RollupResolutionEnums resolution : values()) {
+            if (resolution.value.equals(value)) {
+                return resolution;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,43 @@
+package com.kiss.kissnest.enums;
+
+/**
+ * 服务器监控指标，counter 为 true 的指标上报的是累计值，保存时换算为每秒的速率
+ */
+public enum ServerMetricEnums {
+
+    CPU_USED("cpuUsed", false),
+    MEM_USAGE("memUsage", false),
+    MEM_FREE("memFree", false),
+    HD_USAGE("hdUsage", false),
+    HD_FREE("hdFree", false),
+    NETWORK_RECEIVE("networkReceive", true),
+    NETWORK_SENT("networkSent", true);
+
+    private String value;
+
+    private boolean counter;
+
+    ServerMetricEnums(String value, boolean counter) {
+        this.value = value;
+        this.counter = counter;
+    }
+
+    public String value() {
+        return value;
+    }
+
+    public boolean counter() {
+        return counter;
+    }
+
+    public static ServerMetricEnums getEnumByValue(String value) {
+
+        for (ServerMetricEnums metric : values()) {
+            if (metric.value.equals(value)) {
+                return metric;
+            }
+        }
+
+        return null;
+    }
+}
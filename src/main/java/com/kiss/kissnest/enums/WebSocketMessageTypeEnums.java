@@ -3,13 +3,18 @@ package com.kiss.kissnest.enums;
 public enum WebSocketMessageTypeEnums {
 
     BUILD_PROJECT_PENDING("buildProjectPending"),
+    BUILD_PROJECT_PENDING_BATCH("buildProjectPendingBatch"),
     BUILD_PROJECT_QUEUEING("buildProjectQueueing"),
     BUILD_PROJECT_START("buildProjectStart"),
     BUILD_PROJECT_END("buildProjectEnd"),
+    BUILD_PROJECT_LOG("buildProjectLog"),
     DEPLOY_PROJECT_START("deployProjectStart"),
+    DEPLOY_PROJECT_NODE("deployProjectNode"),
     DEPLOY_PROJECT_END("deployProjectEnd"),
     SERVER_MONITOR_LOG("serverMonitorLog"),
-    PROGRAM_MONITOR_LOG("programMonitorLog");
+    SERVER_MONITOR_BATCH("serverMonitorBatch"),
+    PROGRAM_MONITOR_LOG("programMonitorLog"),
+    RESYNC("resync");
 
     private String value;
 
@@ -0,0 +1,41 @@
+package com.kiss.kissnest.enums;
+
+/**
+ * WebSocket 订阅主题，主题格式为 前缀:id，例如 project:12、env:3、server:10.0.0.1、type:buildProjectEnd
+ */
+public enum WebSocketTopicEnums {
+
+    PROJECT("project"),
+    ENV("env"),
+    SERVER("server"),
+    TYPE("type");
+
+    private String value;
+
+    WebSocketTopicEnums(String value) {
+        this.value = value;
+    }
+
+    public String value() {
+        return value;
+    }
+
+    public String topic(Object id) {
+        return value + ":" + id;
+    }
+
+    public static boolean isValid(String topic) {
+
+        if (topic == null) {
+            return false;
+        }
+
+        for (WebSocketTopicEnums topicEnum : values()) {
+            if (topic.startsWith(topicEnum.value + ":") && topic.length() > topicEnum.value.length() + 1) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
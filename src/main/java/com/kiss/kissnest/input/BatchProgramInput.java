@@ -0,0 +1,11 @@
+package com.kiss.kissnest.input;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchProgramInput {
+
+    private List<ProgramActionInput> programs;
+}
@@ -22,4 +22,14 @@ public class CreateDeployInput {
     private String script;
 
     private Integer type;
+
+    private Integer strategy;
+
+    private Integer batchSize;
+
+    private Integer batchPercent;
+
+    private Integer maxUnavailable;
+
+    private Boolean canary;
 }
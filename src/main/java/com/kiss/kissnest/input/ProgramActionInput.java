@@ -0,0 +1,13 @@
+package com.kiss.kissnest.input;
+
+import lombok.Data;
+
+@Data
+public class ProgramActionInput {
+
+    private Integer projectId;
+
+    private Integer envId;
+
+    private String action;
+}
@@ -18,4 +18,14 @@ public class UpdateDeployInput {
     private String conf;
 
     private Integer type;
+
+    private Integer strategy;
+
+    private Integer batchSize;
+
+    private Integer batchPercent;
+
+    private Integer maxUnavailable;
+
+    private Boolean canary;
 }
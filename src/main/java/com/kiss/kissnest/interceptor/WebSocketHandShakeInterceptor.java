@@ -1,6 +1,6 @@
 package com.kiss.kissnest.interceptor;
 
-import com.kiss.kissnest.feign.ClientServiceFeign;
+import com.kiss.kissnest.service.ClientTokenService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
@@ -16,7 +16,7 @@ import java.util.Map;
 public class WebSocketHandShakeInterceptor implements HandshakeInterceptor {
 
     @Autowired
-    private ClientServiceFeign clientServiceFeign;
+    private ClientTokenService clientTokenService;
 
     @Override
     public boolean beforeHandshake(ServerHttpRequest serverHttpRequest, ServerHttpResponse serverHttpResponse, WebSocketHandler webSocketHandler, Map<String, Object> map) throws Exception {
@@ -24,7 +24,7 @@ public class WebSocketHandShakeInterceptor implements HandshakeInterceptor {
         HttpServletRequest servletRequest = ((ServletServerHttpRequest) serverHttpRequest).getServletRequest();
         String teamId = servletRequest.getParameter("teamId");
         String token = servletRequest.getParameter("token");
-        Boolean effective = clientServiceFeign.validateClientToken(token);
+        boolean effective = clientTokenService.validate(token);
 
         if (!effective) {
             return false;
@@ -25,4 +25,32 @@ public interface DeployLogMapper {
     String getDeployLogOutputTextById(Integer id);
 
     Integer incrementDeployLogSuccessTasks(Integer id);
+
+    Integer updateDeployLogStatus(DeployLog deployLog);
+
+    Integer updateDeployLogsStatusByOwner(@Param("owner") String owner, @Param("fromStatus") Integer fromStatus, @Param("status") Integer status, @Param("statusText") String statusText);
+
+    Integer updateDeployLogStatusByStatus(@Param("id") Integer id, @Param("fromStatus") Integer fromStatus, @Param("status") Integer status, @Param("statusText") String statusText);
+
+    Integer claimDeployLog(@Param("id") Integer id, @Param("fromStatus") Integer fromStatus, @Param("status") Integer status, @Param("owner") String owner, @Param("leaseAt") Long leaseAt);
+
+    Integer pauseDeployLog(DeployLog deployLog);
+
+    List<DeployLog> getDeployLogsByStatusAndLeaseBefore(@Param("status") Integer status, @Param("before") Long before);
+
+    Integer renewDeployLogs(@Param("owner") String owner, @Param("status") Integer status, @Param("leaseAt") Long leaseAt);
+
+    Integer updateDeployLogsStatusByLease(@Param("fromStatus") Integer fromStatus, @Param("before") Long before, @Param("status") Integer status, @Param("statusText") String statusText);
+
+    List<DeployLog> getDeployLogsByProjectIdAndEnvIdAndStatus(@Param("projectId") Integer projectId, @Param("envId") Integer envId, @Param("status") Integer status);
+
+    Integer getDeployLogsCountByProjectIdAndEnvId(@Param("projectId") Integer projectId, @Param("envId") Integer envId, @Param("statuses") List<Integer> statuses);
+
+    Integer getDeployLogsCountByEnvId(@Param("envId") Integer envId, @Param("status") Integer status);
+
+    Integer getDeployLogsCountBySaltHost(@Param("saltHost") String saltHost, @Param("status") Integer status);
+
+    Integer createDeployLock(@Param("name") String name);
+
+    String lockDeployLock(@Param("name") String name);
 }
@@ -11,6 +11,8 @@ public interface DynamicMapper {
 
     Integer createDynamic(Dynamic dynamic);
 
+    Integer createDynamics(List<Dynamic> dynamics);
+
     List<Dynamic> getDynamics(Map params);
 
     Integer getDynamicsCount(Dynamic dynamic);
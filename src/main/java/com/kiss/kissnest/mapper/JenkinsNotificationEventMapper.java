@@ -0,0 +1,29 @@
+package com.kiss.kissnest.mapper;
+
+import com.kiss.kissnest.entity.JenkinsNotificationEvent;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+@Mapper
+public interface JenkinsNotificationEventMapper {
+
+    Integer createJenkinsNotificationEvent(JenkinsNotificationEvent jenkinsNotificationEvent);
+
+    Integer claimJenkinsNotificationEvents(@Param("owner") String owner, @Param("now") Long now, @Param("size") Integer size,
+                                           @Param("pendingStatus") Integer pendingStatus, @Param("claimedStatus") Integer claimedStatus);
+
+    List<JenkinsNotificationEvent> getJenkinsNotificationEventsByOwner(@Param("status") Integer status, @Param("owner") String owner);
+
+    Integer releaseStaleJenkinsNotificationEvents(@Param("claimedBefore") Long claimedBefore, @Param("pendingStatus") Integer pendingStatus, @Param("claimedStatus") Integer claimedStatus);
+
+    Integer releaseJenkinsNotificationEventsByOwner(@Param("owner") String owner, @Param("pendingStatus") Integer pendingStatus, @Param("claimedStatus") Integer claimedStatus);
+
+    Integer updateJenkinsNotificationEventsStatus(@Param("ids") List<Integer> ids, @Param("status") Integer status, @Param("clearPayload") Boolean clearPayload);
+
+    Integer deleteJenkinsNotificationEvents(@Param("statuses") List<Integer> statuses, @Param("retentionDays") Integer retentionDays, @Param("limit") Integer limit);
+
+    Integer retryJenkinsNotificationEvents(@Param("ids") List<Integer> ids, @Param("retryAt") Long retryAt, @Param("maxAttempts") Integer maxAttempts,
+                                           @Param("pendingStatus") Integer pendingStatus, @Param("failedStatus") Integer failedStatus);
+}
@@ -38,4 +38,8 @@ public interface JobMapper {
 //    Job getDeployJobByProjectIdAndEnvId(@Param("projectId") Integer projectId, @Param("envId") Integer envId);
 
     List<Job> getJobByProjectIdAndType(@Param("projectId") Integer projectId, @Param("envId") Integer envId, @Param("type") Integer type);
+
+    List<Job> getJobsByEnvIdAndType(@Param("envId") Integer envId, @Param("type") Integer type);
+
+    List<Job> getJobsByProjectIdsAndType(@Param("projectIds") List<Integer> projectIds, @Param("type") Integer type);
 }
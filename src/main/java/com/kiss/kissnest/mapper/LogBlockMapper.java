@@ -0,0 +1,19 @@
+package com.kiss.kissnest.mapper;
+
+import com.kiss.kissnest.entity.LogBlock;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+@Mapper
+public interface LogBlockMapper {
+
+    Integer createLogBlocks(List<LogBlock> logBlocks);
+
+    List<LogBlock> getLogBlocks(@Param("type") Integer type, @Param("logId") Integer logId);
+
+    LogBlock getLastLogBlock(@Param("type") Integer type, @Param("logId") Integer logId);
+
+    LogBlock getLogBlockById(Integer id);
+}
@@ -37,5 +37,7 @@ public interface ServerMapper {
 
     String getServerIpsByIds(List<Integer> ids);
 
+    List<Server> getServersByIds(List<Integer> ids);
+
     Server getServerByEnvIdAndInnerIp(@Param("envId") Integer envId, @Param("innerIp") String innerIp);
 }
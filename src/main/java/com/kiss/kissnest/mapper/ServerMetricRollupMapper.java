@@ -0,0 +1,17 @@
+package com.kiss.kissnest.mapper;
+
+import com.kiss.kissnest.entity.ServerMetricRollup;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+@Mapper
+public interface ServerMetricRollupMapper {
+
+    Integer createServerMetricRollups(List<ServerMetricRollup> serverMetricRollups);
+
+    List<ServerMetricRollup> getServerMetricRollups(@Param("serverId") Integer serverId, @Param("resolution") Integer resolution, @Param("metrics") List<String> metrics, @Param("from") Long from, @Param("to") Long to);
+
+    Integer deleteServerMetricRollups(@Param("resolution") Integer resolution, @Param("before") Long before, @Param("limit") Integer limit);
+}
@@ -10,5 +10,7 @@ public interface TrackMapper {
 
     Integer createTrack(Track track);
 
+    Integer createTracks(List<Track> tracks);
+
     List<Track> getTracksByTeamId(Integer teamId);
 }
@@ -0,0 +1,15 @@
+package com.kiss.kissnest.output;
+
+import lombok.Data;
+
+@Data
+public class BuildLogChunkOutput {
+
+    private Integer buildLogId;
+
+    private Long offset;
+
+    private String text;
+
+    private Boolean more;
+}
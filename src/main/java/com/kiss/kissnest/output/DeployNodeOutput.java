@@ -0,0 +1,21 @@
+package com.kiss.kissnest.output;
+
+import lombok.Data;
+
+@Data
+public class DeployNodeOutput {
+
+    private Integer deployLogId;
+
+    private Integer teamId;
+
+    private Integer projectId;
+
+    private Integer envId;
+
+    private String nodeId;
+
+    private Integer status;
+
+    private String output;
+}
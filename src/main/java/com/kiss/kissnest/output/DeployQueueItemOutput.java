@@ -0,0 +1,25 @@
+package com.kiss.kissnest.output;
+
+import lombok.Data;
+
+@Data
+public class DeployQueueItemOutput {
+
+    private Integer deployLogId;
+
+    private Integer projectId;
+
+    private Integer envId;
+
+    private String master;
+
+    private String branch;
+
+    private String tag;
+
+    private Integer status;
+
+    private Long queuedAt;
+
+    private Long waitMillis;
+}
@@ -0,0 +1,28 @@
+package com.kiss.kissnest.output;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class DeployQueueOutput {
+
+    private Integer runningCount;
+
+    private Integer pendingCount;
+
+    private Integer coalescedCount;
+
+    private Long longestWaitMillis;
+
+    private Long averageWaitMillis;
+
+    private Map<Integer, Integer> pendingByEnv;
+
+    private Map<String, Integer> pendingByMaster;
+
+    private List<DeployQueueItemOutput> running;
+
+    private List<DeployQueueItemOutput> pending;
+}
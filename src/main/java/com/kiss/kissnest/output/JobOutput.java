@@ -33,6 +33,16 @@ public class JobOutput {
 
     private String conf;
 
+    private Integer strategy;
+
+    private Integer batchSize;
+
+    private Integer batchPercent;
+
+    private Integer maxUnavailable;
+
+    private Boolean canary;
+
     private String workspace;
 
     private Long createdAt;
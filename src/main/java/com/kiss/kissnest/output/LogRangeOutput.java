@@ -0,0 +1,17 @@
+package com.kiss.kissnest.output;
+
+import lombok.Data;
+
+@Data
+public class LogRangeOutput {
+
+    private String output;
+
+    private String unit;
+
+    private Long offset;
+
+    private Long nextOffset;
+
+    private Long total;
+}
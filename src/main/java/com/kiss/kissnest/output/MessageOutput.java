@@ -11,8 +11,19 @@ public class MessageOutput implements Serializable {
 
     private Object data;
 
+    /**
+     * 团队内递增的消息序号，断线重连后用来补发缺失的消息；为 null 表示不可补发
+     */
+    private Long seq;
+
     public MessageOutput(String type, Object data) {
         this.type = type;
         this.data = data;
     }
+
+    public MessageOutput(String type, Object data, Long seq) {
+        this.type = type;
+        this.data = data;
+        this.seq = seq;
+    }
 }
@@ -0,0 +1,17 @@
+package com.kiss.kissnest.output;
+
+import lombok.Data;
+
+@Data
+public class MetricPointOutput {
+
+    private Long time;
+
+    private Float min;
+
+    private Float max;
+
+    private Float avg;
+
+    private Float last;
+}
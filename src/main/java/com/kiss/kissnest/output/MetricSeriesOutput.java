@@ -0,0 +1,13 @@
+package com.kiss.kissnest.output;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class MetricSeriesOutput {
+
+    private String metric;
+
+    private List<MetricPointOutput> points;
+}
@@ -0,0 +1,17 @@
+package com.kiss.kissnest.output;
+
+import com.alibaba.fastjson.JSONObject;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ServerMonitorBatchOutput {
+
+    /**
+     * 为 true 时每台服务器只包含 envPath、innerIp 和与上一帧相比变化的字段
+     */
+    private Boolean delta;
+
+    private List<JSONObject> servers;
+}
@@ -0,0 +1,331 @@
+package com.kiss.kissnest.service;
+
+import com.alibaba.fastjson.JSONObject;
+import com.kiss.kissnest.dao.BuildLogDao;
+import com.kiss.kissnest.dao.MemberDao;
+import com.kiss.kissnest.entity.BuildLog;
+import com.kiss.kissnest.entity.Member;
+import com.kiss.kissnest.enums.WebSocketMessageTypeEnums;
+import com.kiss.kissnest.output.BuildLogChunkOutput;
+import com.kiss.kissnest.output.MessageOutput;
+import com.kiss.kissnest.util.BufferedWebSocketSession;
+import com.kiss.kissnest.util.JenkinsClientManager;
+import com.kiss.kissnest.util.JenkinsUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.TextMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 构建日志实时推送：每个正在查看的构建由一个轮询任务按 progressiveText 的偏移量增量读取，推送给所有订阅的 WebSocket 连接；
+ * 最后一个订阅者离开或构建输出结束时停止轮询。第一次读取时构建可能已经输出了很多日志，只推送最后 tailChars 个字符；
+ * 每条消息不超过 chunkChars 个字符，避免单条消息超过连接的发送缓冲区上限
+ */
+@Service
+@Slf4j
+public class BuildLogStreamService {
+
+    @Autowired
+    private BuildLogDao buildLogDao;
+
+    @Autowired
+    private MemberDao memberDao;
+
+    @Autowired
+    private JenkinsUtil jenkinsUtil;
+
+    @Autowired
+    @Qualifier("consoleLogScheduler")
+    private ThreadPoolTaskScheduler consoleLogScheduler;
+
+    @Value("${jenkins.console.pollMillis:1000}")
+    private Long pollMillis;
+
+    @Value("${jenkins.console.tailChars:65536}")
+    private Integer tailChars;
+
+    @Value("${jenkins.console.chunkChars:16384}")
+    private Integer chunkChars;
+
+    /**
+     * 构建日志 id -> 日志流
+     */
+    private final Map<Integer, BuildLogStream> streams = new ConcurrentHashMap<>();
+
+    /**
+     * 只能订阅本团队的构建日志
+     *
+     * @param teamId 连接所属的团队
+     */
+    public void subscribe(BufferedWebSocketSession session, Integer teamId, Integer buildLogId) {
+
+        BuildLog buildLog = buildLogDao.getBuildLogById(buildLogId);
+
+        if (buildLog == null || !buildLog.getTeamId().equals(teamId)) {
+            log.warn("团队{}订阅构建日志{}被拒绝", teamId, buildLogId);
+            return;
+        }
+
+        BuildLogStream stream = streams.compute(buildLogId, (key, existing) -> {
+            BuildLogStream current = existing == null ? new BuildLogStream(key) : existing;
+            current.viewers.add(session);
+            if (current.future == null) {
+                current.future = consoleLogScheduler.scheduleWithFixedDelay(() -> poll(current), pollMillis);
+            }
+            return current;
+        });
+
+        // 中途加入的订阅者先补发已缓存的尾部日志，偏移量为尾部日志在完整日志中的起始字节
+        String tail;
+        long tailOffset;
+
+        synchronized (stream) {
+            tail = stream.tail.toString();
+            tailOffset = stream.offset - tail.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        for (TextMessage message : toMessages(stream, Math.max(0L, tailOffset), tail, true)) {
+            send(session, message);
+        }
+    }
+
+    public void unsubscribe(BufferedWebSocketSession session, Integer buildLogId) {
+
+        streams.computeIfPresent(buildLogId, (key, stream) -> {
+            stream.viewers.remove(session);
+            return stream.viewers.isEmpty() ? stop(stream) : stream;
+        });
+    }
+
+    public void unsubscribeAll(BufferedWebSocketSession session) {
+
+        for (Integer buildLogId : streams.keySet()) {
+            unsubscribe(session, buildLogId);
+        }
+    }
+
+    private BuildLogStream stop(BuildLogStream stream) {
+
+        if (stream.future != null) {
+            stream.future.cancel(false);
+        }
+
+        return null;
+    }
+
+    private void poll(BuildLogStream stream) {
+
+        try {
+            if (stream.number == null && !resolveBuild(stream)) {
+                return;
+            }
+
+            JenkinsClientManager.JenkinsResponse response = jenkinsUtil.getProgressiveText(stream.jobName, stream.number, stream.offset, stream.account, stream.apiToken);
+
+            if (!response.isSuccessful()) {
+                log.warn("读取构建日志{}失败,状态码{}", stream.buildLogId, response.getStatus());
+                return;
+            }
+
+            String textSize = response.getHeader("X-Text-Size");
+            boolean more = Boolean.parseBoolean(response.getHeader("X-More-Data"));
+            String text = response.getBody() == null ? "" : response.getBody();
+
+            List<TextMessage> messages = new ArrayList<>();
+
+            // 尾部日志和偏移量一起更新，补发尾部日志时两者一致
+            synchronized (stream) {
+                long offset = stream.offset;
+
+                if (!stream.started) {
+                    stream.started = true;
+                    int cut = tailStart(text);
+                    offset += text.substring(0, cut).getBytes(StandardCharsets.UTF_8).length;
+                    text = text.substring(cut);
+                }
+
+                if (!text.isEmpty() || !more) {
+                    messages = toMessages(stream, offset, text, more);
+                    stream.appendTail(text, tailChars);
+                }
+                if (!StringUtils.isEmpty(textSize)) {
+                    stream.offset = Long.parseLong(textSize);
+                }
+            }
+
+            for (TextMessage message : messages) {
+                for (BufferedWebSocketSession session : stream.viewers) {
+                    send(session, message);
+                }
+            }
+
+            if (!more) {
+                streams.remove(stream.buildLogId, stream);
+                stop(stream);
+            }
+        } catch (Exception e) {
+            log.error("读取构建日志{}异常", stream.buildLogId, e);
+        }
+    }
+
+    /**
+     * 构建进入 Jenkins 执行队列后才有构建号，之前每次轮询重新查询构建日志
+     */
+    private boolean resolveBuild(BuildLogStream stream) {
+
+        BuildLog buildLog = buildLogDao.getBuildLogById(stream.buildLogId);
+
+        if (buildLog == null || buildLog.getNumber() == null) {
+            return false;
+        }
+
+        Member member = memberDao.getMemberByAccountId(buildLog.getOperatorId());
+
+        if (member == null) {
+            return false;
+        }
+
+        stream.jobName = buildLog.getJobName();
+        stream.account = member.getUsername();
+        stream.apiToken = member.getApiToken();
+        stream.number = buildLog.getNumber();
+
+        return true;
+    }
+
+    /**
+     * 最后 tailChars 个字符的起始位置，从换行之后开始，不从代理对中间截断
+     */
+    private int tailStart(String text) {
+
+        if (text.length() <= tailChars) {
+            return 0;
+        }
+
+        int cut = text.length() - tailChars;
+        int newline = text.indexOf('\n', cut);
+
+        if (newline >= 0 && newline < text.length() - 1) {
+            return newline + 1;
+        }
+
+        return Character.isLowSurrogate(text.charAt(cut)) ? cut + 1 : cut;
+    }
+
+    /**
+     * 按 chunkChars 切分，每段的偏移量为该段在完整日志中的起始字节，只有最后一段带上 more
+     */
+    private List<TextMessage> toMessages(BuildLogStream stream, long offset, String text, boolean more) {
+
+        List<TextMessage> messages = new ArrayList<>();
+
+        if (text.isEmpty()) {
+            if (!more) {
+                messages.add(toMessage(toChunk(stream, offset, text, false)));
+            }
+            return messages;
+        }
+
+        int start = 0;
+
+        while (start < text.length()) {
+            int end = Math.min(start + chunkChars, text.length());
+
+            if (end < text.length() && Character.isLowSurrogate(text.charAt(end))) {
+                end--;
+            }
+
+            String part = text.substring(start, end);
+            messages.add(toMessage(toChunk(stream, offset, part, end < text.length() || more)));
+            offset += part.getBytes(StandardCharsets.UTF_8).length;
+            start = end;
+        }
+
+        return messages;
+    }
+
+    private BuildLogChunkOutput toChunk(BuildLogStream stream, Long offset, String text, boolean more) {
+
+        BuildLogChunkOutput chunk = new BuildLogChunkOutput();
+        chunk.setBuildLogId(stream.buildLogId);
+        chunk.setOffset(offset);
+        chunk.setText(text);
+        chunk.setMore(more);
+
+        return chunk;
+    }
+
+    private TextMessage toMessage(BuildLogChunkOutput chunk) {
+
+        MessageOutput messageOutput = new MessageOutput(WebSocketMessageTypeEnums.BUILD_PROJECT_LOG.value(), chunk);
+
+        return new TextMessage(JSONObject.toJSONString(messageOutput));
+    }
+
+    /**
+     * 连接跟不上推送被关闭时取消订阅
+     */
+    private void send(BufferedWebSocketSession session, TextMessage message) {
+
+        if (!session.send(message)) {
+            unsubscribeAll(session);
+        }
+    }
+
+    private static class BuildLogStream {
+
+        private final Integer buildLogId;
+
+        private final Set<BufferedWebSocketSession> viewers = ConcurrentHashMap.newKeySet();
+
+        private final StringBuilder tail = new StringBuilder();
+
+        private volatile ScheduledFuture<?> future;
+
+        private String jobName;
+
+        private Integer number;
+
+        private String account;
+
+        private String apiToken;
+
+        private long offset;
+
+        /**
+         * 是否已经读取过，第一次读取只推送尾部
+         */
+        private boolean started;
+
+        BuildLogStream(Integer buildLogId) {
+            this.buildLogId = buildLogId;
+        }
+
+        /**
+         * 只保留最后 tailChars 个字符，供中途加入的订阅者补发；不从代理对中间截断
+         */
+        synchronized void appendTail(String text, int tailChars) {
+
+            tail.append(text);
+
+            if (tail.length() > tailChars) {
+                tail.delete(0, tail.length() - tailChars);
+                if (tail.length() > 0 && Character.isLowSurrogate(tail.charAt(0))) {
+                    tail.deleteCharAt(0);
+                }
+            }
+        }
+    }
+}
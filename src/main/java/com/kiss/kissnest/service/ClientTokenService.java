@@ -0,0 +1,190 @@
+package com.kiss.kissnest.service;
+
+import com.alibaba.fastjson.JSONObject;
+import com.kiss.kissnest.feign.ClientServiceFeign;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端 token 校验缓存：有效的 token 缓存 ttlSeconds，且不超过 token 自身的过期时间，无效的 token 缓存 negativeTtlSeconds；
+ * 有效和无效的 token 分别放在两个按最近使用淘汰的缓存中，大量无效 token 只会挤掉其他无效 token，不影响已缓存的有效 token；
+ * 同一个 token 同时只有一个请求访问 kiss-account，其余请求等待它的结果，避免大量连接同时重连时压垮 kiss-account
+ */
+@Service
+@Slf4j
+public class ClientTokenService {
+
+    @Autowired
+    private ClientServiceFeign clientServiceFeign;
+
+    @Value("${websocket.token.ttlSeconds:300}")
+    private Long ttlSeconds;
+
+    @Value("${websocket.token.negativeTtlSeconds:30}")
+    private Long negativeTtlSeconds;
+
+    @Value("${websocket.token.maxEntries:10000}")
+    private Integer maxEntries;
+
+    @Value("${websocket.token.negativeMaxEntries:1000}")
+    private Integer negativeMaxEntries;
+
+    @Value("${websocket.token.waitMillis:5000}")
+    private Long waitMillis;
+
+    /**
+     * 有效的 token -> 校验结果
+     */
+    private Map<String, CachedValidation> validations;
+
+    /**
+     * 无效的 token -> 校验结果
+     */
+    private Map<String, CachedValidation> rejections;
+
+    /**
+     * token -> 正在进行的校验
+     */
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+
+        validations = newLruCache(maxEntries);
+        rejections = newLruCache(negativeMaxEntries);
+    }
+
+    /**
+     * 访问 kiss-account 失败时返回 false，失败结果不缓存
+     */
+    public boolean validate(String token) {
+
+        if (StringUtils.isEmpty(token)) {
+            return false;
+        }
+
+        CachedValidation cached = getCached(token);
+
+        if (cached != null && cached.expireAt > System.currentTimeMillis()) {
+            return cached.effective;
+        }
+
+        CompletableFuture<Boolean> created = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = inFlight.putIfAbsent(token, created);
+
+        if (existing != null) {
+            try {
+                return existing.get(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                log.warn("等待 token 校验结果失败", e);
+                return false;
+            }
+        }
+
+        try {
+            // 上一次校验可能在判断缓存之后刚刚完成
+            cached = getCached(token);
+            if (cached != null && cached.expireAt > System.currentTimeMillis()) {
+                created.complete(cached.effective);
+                return cached.effective;
+            }
+
+            boolean effective = Boolean.TRUE.equals(clientServiceFeign.validateClientToken(token));
+            cache(token, effective);
+            created.complete(effective);
+            return effective;
+        } catch (Exception e) {
+            log.warn("校验 token 失败", e);
+            created.complete(false);
+            return false;
+        } finally {
+            inFlight.remove(token, created);
+        }
+    }
+
+    private void cache(String token, boolean effective) {
+
+        long now = System.currentTimeMillis();
+        long expireAt = now + (effective ? ttlSeconds : negativeTtlSeconds) * 1000;
+
+        if (effective) {
+            Long tokenExpireAt = getTokenExpireAt(token);
+            if (tokenExpireAt != null) {
+                expireAt = Math.min(expireAt, tokenExpireAt);
+            }
+        }
+
+        if (expireAt <= now) {
+            return;
+        }
+
+        (effective ? validations : rejections).put(token, new CachedValidation(effective, expireAt));
+        (effective ? rejections : validations).remove(token);
+    }
+
+    private CachedValidation getCached(String token) {
+
+        CachedValidation cached = validations.get(token);
+
+        return cached != null ? cached : rejections.get(token);
+    }
+
+    /**
+     * 超过 capacity 时淘汰最久没有访问的 token
+     */
+    private Map<String, CachedValidation> newLruCache(int capacity) {
+
+        return Collections.synchronizedMap(new LinkedHashMap<String, CachedValidation>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedValidation> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    /**
+     * JWT 格式的 token 读取 exp（秒），只用于限制缓存时间，签名由 kiss-account 校验；其他格式返回 null
+     */
+    private Long getTokenExpireAt(String token) {
+
+        String[] parts = token.split("\\.");
+
+        if (parts.length != 3) {
+            return null;
+        }
+
+        try {
+            String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+            Long exp = JSONObject.parseObject(payload).getLong("exp");
+            return exp == null ? null : exp * 1000;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static class CachedValidation {
+
+        private final boolean effective;
+
+        private final long expireAt;
+
+        private CachedValidation(boolean effective, long expireAt) {
+            this.effective = effective;
+            this.expireAt = expireAt;
+        }
+    }
+}
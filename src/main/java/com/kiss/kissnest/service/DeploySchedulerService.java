@@ -0,0 +1,432 @@
+package com.kiss.kissnest.service;
+
+import com.kiss.kissnest.dao.DeployLogDao;
+import com.kiss.kissnest.entity.DeployLog;
+import com.kiss.kissnest.entity.Environment;
+import com.kiss.kissnest.enums.DeployJobStatusEnums;
+import com.kiss.kissnest.enums.WebSocketMessageTypeEnums;
+import com.kiss.kissnest.enums.WebSocketTopicEnums;
+import com.kiss.kissnest.output.DeployLogOutput;
+import com.kiss.kissnest.output.DeployQueueItemOutput;
+import com.kiss.kissnest.output.DeployQueueOutput;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.net.InetAddress;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 部署排队调度：同一项目同一环境同时只有一个部署在执行，排队中的请求只保留最新的一个；
+ * 每个环境、每个 salt master 的并发部署数有上限，超出的请求按提交顺序排队。
+ * 多个实例共用这些限制：开始部署前持有 salt master 在 deploylocks 表中的行锁，按 deploylogs 中所有实例执行中的部署判断并认领；
+ * 排队只保存在提交的实例上，部署日志记录所属实例，执行中的部署由所属实例定期续租，租约过期（实例退出）的部署标记为失败
+ */
+@Service
+@Slf4j
+public class DeploySchedulerService {
+
+    /**
+     * 占用项目与环境的状态，同一项目同一环境存在这些状态的部署时不开始新的部署
+     */
+    private static final List<Integer> ACTIVE_STATUSES = Arrays.asList(DeployJobStatusEnums.DEPLOYING.value(), DeployJobStatusEnums.PAUSED.value());
+
+    @Autowired
+    @Qualifier("deployExecutor")
+    private ThreadPoolTaskExecutor deployExecutor;
+
+    @Autowired
+    @Qualifier("deployScheduler")
+    private ThreadPoolTaskScheduler deployScheduler;
+
+    @Autowired
+    private DeployLogDao deployLogDao;
+
+    @Autowired
+    private WebSocketService webSocketService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${deploy.scheduler.maxPerEnv:5}")
+    private Integer maxPerEnv;
+
+    @Value("${deploy.scheduler.maxPerMaster:10}")
+    private Integer maxPerMaster;
+
+    @Value("${deploy.scheduler.owner:}")
+    private String owner;
+
+    @Value("${deploy.scheduler.dispatchMillis:1000}")
+    private Long dispatchMillis;
+
+    @Value("${deploy.scheduler.leaseMillis:60000}")
+    private Long leaseMillis;
+
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 项目|环境 -> 本实例排队中的部署，LinkedHashMap 保持提交顺序，替换时保留原来的位置
+     */
+    private final LinkedHashMap<String, DeployTask> pending = new LinkedHashMap<>();
+
+    /**
+     * 项目|环境 -> 本实例执行中的部署
+     */
+    private final Map<String, DeployTask> running = new LinkedHashMap<>();
+
+    /**
+     * 同一时间只有一个线程认领部署，认领期间不持有 this，不阻塞提交和统计
+     */
+    private final Object dispatchLock = new Object();
+
+    private long startedCount;
+
+    private long totalWaitMillis;
+
+    private long coalescedCount;
+
+    /**
+     * 排队只保存在内存中，本实例上次运行时留下的排队中的部署不会再执行，启动时回写为已取消；
+     * 执行中的部署随进程退出中断，回写为失败，不必等待租约过期
+     */
+    @PostConstruct
+    public void init() {
+
+        if (StringUtils.isEmpty(owner)) {
+            owner = getHostName();
+        }
+
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        Integer count = deployLogDao.updateDeployLogsStatusByOwner(owner, DeployJobStatusEnums.QUEUED.value(), DeployJobStatusEnums.CANCELED.value(), "服务重启，排队中取消");
+
+        if (count != null && count > 0) {
+            log.info("取消本实例上次运行遗留的{}个排队中的部署", count);
+        }
+
+        count = deployLogDao.updateDeployLogsStatusByOwner(owner, DeployJobStatusEnums.DEPLOYING.value(), DeployJobStatusEnums.FAILED.value(), "服务重启，部署中断");
+
+        if (count != null && count > 0) {
+            log.warn("本实例上次运行遗留的{}个部署中断,标记为失败", count);
+        }
+
+        // 其他实例的部署结束后才空出的名额，由定时认领补上
+        deployScheduler.scheduleWithFixedDelay(this::dispatch, dispatchMillis);
+        deployScheduler.scheduleWithFixedDelay(this::renewLeases, leaseMillis / 3);
+    }
+
+    public String getOwner() {
+
+        return owner;
+    }
+
+    /**
+     * 提交部署，条件满足时立即开始，否则排队；同一项目同一环境已有排队中的部署时（包括其他实例上的），旧的部署被取消
+     *
+     * @param deployLog   已入库、状态为排队中、记录了所属实例的部署日志
+     * @param environment 部署环境
+     * @param starter     开始执行部署，返回的 future 在部署结束或金丝雀暂停后完成
+     */
+    public void submit(DeployLog deployLog, Environment environment, Supplier<CompletableFuture<DeployLog>> starter) {
+
+        DeployTask task = new DeployTask();
+        task.key = deployLog.getProjectId() + "|" + deployLog.getEnvId();
+        task.master = environment.getSaltHost();
+        task.deployLog = deployLog;
+        task.starter = starter;
+        task.queuedAt = System.currentTimeMillis();
+
+        synchronized (this) {
+            pending.put(task.key, task);
+        }
+
+        // 被替换的本实例任务在下次认领时发现已取消，从排队中移除；只取消更早提交的部署，不影响并发提交的更新的部署
+        for (DeployLog queued : deployLogDao.getDeployLogsByProjectIdAndEnvIdAndStatus(deployLog.getProjectId(), deployLog.getEnvId(), DeployJobStatusEnums.QUEUED.value())) {
+            if (queued.getId() < deployLog.getId() && cancelQueued(queued, "被部署 " + deployLog.getId() + " 替换")) {
+                log.info("部署{}被新的部署{}替换", queued.getId(), deployLog.getId());
+                synchronized (this) {
+                    coalescedCount++;
+                }
+            }
+        }
+
+        dispatch();
+    }
+
+    /**
+     * 取消排队中的部署，部署可以在任一实例上排队
+     *
+     * @return 部署不在排队中时返回 false
+     */
+    public boolean cancel(Integer deployLogId) {
+
+        DeployLog deployLog = deployLogDao.getDeployLogById(deployLogId);
+
+        if (deployLog == null || !cancelQueued(deployLog, "排队中取消")) {
+            return false;
+        }
+
+        synchronized (this) {
+            pending.values().removeIf(task -> task.deployLog.getId().equals(deployLogId));
+        }
+
+        return true;
+    }
+
+    /**
+     * 本实例排队中和执行中的部署
+     */
+    public synchronized DeployQueueOutput getQueueStats() {
+
+        long now = System.currentTimeMillis();
+        DeployQueueOutput deployQueueOutput = new DeployQueueOutput();
+        List<DeployQueueItemOutput> pendingItems = new ArrayList<>();
+        List<DeployQueueItemOutput> runningItems = new ArrayList<>();
+        Map<Integer, Integer> pendingByEnv = new TreeMap<>();
+        Map<String, Integer> pendingByMaster = new TreeMap<>();
+        long longestWaitMillis = 0;
+
+        for (DeployTask task : pending.values()) {
+            DeployQueueItemOutput item = toQueueItem(task, now - task.queuedAt);
+            pendingItems.add(item);
+            pendingByEnv.merge(task.deployLog.getEnvId(), 1, Integer::sum);
+            pendingByMaster.merge(task.master, 1, Integer::sum);
+            longestWaitMillis = Math.max(longestWaitMillis, item.getWaitMillis());
+        }
+
+        for (DeployTask task : running.values()) {
+            runningItems.add(toQueueItem(task, task.startedAt - task.queuedAt));
+        }
+
+        deployQueueOutput.setRunningCount(runningItems.size());
+        deployQueueOutput.setPendingCount(pendingItems.size());
+        deployQueueOutput.setCoalescedCount((int) coalescedCount);
+        deployQueueOutput.setLongestWaitMillis(longestWaitMillis);
+        deployQueueOutput.setAverageWaitMillis(startedCount == 0 ? 0 : totalWaitMillis / startedCount);
+        deployQueueOutput.setPendingByEnv(pendingByEnv);
+        deployQueueOutput.setPendingByMaster(pendingByMaster);
+        deployQueueOutput.setRunning(runningItems);
+        deployQueueOutput.setPending(pendingItems);
+
+        return deployQueueOutput;
+    }
+
+    /**
+     * 按提交顺序认领本实例排队中的部署；被并发上限挡住的部署不影响排在后面、属于其他环境的部署
+     */
+    private void dispatch() {
+
+        synchronized (dispatchLock) {
+            List<DeployTask> candidates = new ArrayList<>();
+
+            synchronized (this) {
+                for (DeployTask task : pending.values()) {
+                    if (!running.containsKey(task.key)) {
+                        candidates.add(task);
+                    }
+                }
+            }
+
+            for (DeployTask task : candidates) {
+                ClaimResult result;
+
+                try {
+                    result = claim(task);
+                } catch (Exception e) {
+                    log.error("认领部署{}异常", task.deployLog.getId(), e);
+                    continue;
+                }
+
+                if (result == ClaimResult.BUSY) {
+                    continue;
+                }
+
+                synchronized (this) {
+                    pending.remove(task.key, task);
+
+                    // 已被取消或替换
+                    if (result == ClaimResult.GONE) {
+                        continue;
+                    }
+
+                    task.startedAt = System.currentTimeMillis();
+                    running.put(task.key, task);
+                    startedCount++;
+                    totalWaitMillis += task.startedAt - task.queuedAt;
+                }
+
+                start(task);
+            }
+        }
+    }
+
+    /**
+     * 持有 salt master 的行锁，按所有实例执行中的部署检查限制，满足时把部署日志从排队中改为部署中
+     */
+    private ClaimResult claim(DeployTask task) {
+
+        DeployLog deployLog = task.deployLog;
+        deployLogDao.createDeployLock(task.master);
+
+        return transactionTemplate.execute(status -> {
+            deployLogDao.lockDeployLock(task.master);
+            DeployLog current = deployLogDao.getDeployLogById(deployLog.getId());
+
+            if (current == null || !DeployJobStatusEnums.QUEUED.value().equals(current.getStatus())) {
+                return ClaimResult.GONE;
+            }
+
+            if (deployLogDao.getDeployLogsCountByProjectIdAndEnvId(deployLog.getProjectId(), deployLog.getEnvId(), ACTIVE_STATUSES) > 0
+                    || deployLogDao.getDeployLogsCountByEnvId(deployLog.getEnvId(), DeployJobStatusEnums.DEPLOYING.value()) >= maxPerEnv
+                    || deployLogDao.getDeployLogsCountBySaltHost(task.master, DeployJobStatusEnums.DEPLOYING.value()) >= maxPerMaster) {
+                return ClaimResult.BUSY;
+            }
+
+            int claimed = deployLogDao.claimDeployLog(deployLog.getId(), DeployJobStatusEnums.QUEUED.value(), DeployJobStatusEnums.DEPLOYING.value(), owner, System.currentTimeMillis());
+
+            return claimed > 0 ? ClaimResult.CLAIMED : ClaimResult.GONE;
+        });
+    }
+
+    private void start(DeployTask task) {
+
+        try {
+            CompletableFuture.supplyAsync(task.starter, deployExecutor)
+                    .thenCompose(future -> future)
+                    .whenComplete((deployLog, e) -> {
+                        if (e != null) {
+                            log.error("部署{}执行异常", task.deployLog.getId(), e);
+                            failTask(task);
+                        }
+                        release(task);
+                    });
+        } catch (Exception e) {
+            // 部署线程池已满
+            log.error("部署{}提交失败", task.deployLog.getId(), e);
+            failTask(task);
+            release(task);
+        }
+    }
+
+    private void release(DeployTask task) {
+
+        synchronized (this) {
+            running.remove(task.key, task);
+        }
+
+        dispatch();
+    }
+
+    /**
+     * 续租本实例执行中的部署，租约过期的部署（所属实例已退出）标记为失败，释放占用的名额
+     */
+    private void renewLeases() {
+
+        try {
+            long now = System.currentTimeMillis();
+            deployLogDao.renewDeployLogs(owner, DeployJobStatusEnums.DEPLOYING.value(), now);
+            Integer count = deployLogDao.updateDeployLogsStatusByLease(DeployJobStatusEnums.DEPLOYING.value(), now - leaseMillis, DeployJobStatusEnums.FAILED.value(), "部署实例失联");
+
+            if (count != null && count > 0) {
+                log.warn("{}个部署的实例失联,标记为失败", count);
+            }
+        } catch (Exception e) {
+            log.error("续租部署异常", e);
+        }
+    }
+
+    /**
+     * 只有仍在排队中的部署会被取消，已开始的部署不受影响
+     */
+    private boolean cancelQueued(DeployLog deployLog, String statusText) {
+
+        if (deployLogDao.updateDeployLogStatusByStatus(deployLog.getId(), DeployJobStatusEnums.QUEUED.value(), DeployJobStatusEnums.CANCELED.value(), statusText) == 0) {
+            return false;
+        }
+
+        deployLog.setStatus(DeployJobStatusEnums.CANCELED.value());
+        deployLog.setStatusText(statusText);
+        sendEndMessage(deployLog);
+
+        return true;
+    }
+
+    /**
+     * 开始执行阶段出错时部署日志仍停留在部署中，这里回写为失败
+     */
+    private void failTask(DeployTask task) {
+
+        DeployLog deployLog = deployLogDao.getDeployLogById(task.deployLog.getId());
+
+        if (deployLog != null && (DeployJobStatusEnums.QUEUED.value().equals(deployLog.getStatus()) || DeployJobStatusEnums.DEPLOYING.value().equals(deployLog.getStatus()))) {
+            deployLog = task.deployLog;
+            deployLog.setStatus(DeployJobStatusEnums.FAILED.value());
+            deployLog.setStatusText("部署开始失败");
+            deployLogDao.updateDeployLogStatus(deployLog);
+            sendEndMessage(deployLog);
+        }
+    }
+
+    private void sendEndMessage(DeployLog deployLog) {
+
+        DeployLogOutput deployLogOutput = deployLogDao.getDeployLogOutputById(deployLog.getId());
+        webSocketService.sendMessage(deployLog.getTeamId(), WebSocketMessageTypeEnums.DEPLOY_PROJECT_END.value(), deployLogOutput,
+                WebSocketTopicEnums.PROJECT.topic(deployLog.getProjectId()), WebSocketTopicEnums.ENV.topic(deployLog.getEnvId()));
+    }
+
+    private DeployQueueItemOutput toQueueItem(DeployTask task, long waitMillis) {
+
+        DeployQueueItemOutput item = new DeployQueueItemOutput();
+        item.setDeployLogId(task.deployLog.getId());
+        item.setProjectId(task.deployLog.getProjectId());
+        item.setEnvId(task.deployLog.getEnvId());
+        item.setMaster(task.master);
+        item.setBranch(task.deployLog.getBranch());
+        item.setTag(task.deployLog.getTag());
+        item.setStatus(task.deployLog.getStatus());
+        item.setQueuedAt(task.queuedAt);
+        item.setWaitMillis(waitMillis);
+
+        return item;
+    }
+
+    private static String getHostName() {
+
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+
+    private enum ClaimResult {
+
+        CLAIMED, BUSY, GONE
+    }
+
+    private static class DeployTask {
+
+        private String key;
+
+        private String master;
+
+        private DeployLog deployLog;
+
+        private Supplier<CompletableFuture<DeployLog>> starter;
+
+        private long queuedAt;
+
+        private long startedAt;
+    }
+}
@@ -0,0 +1,638 @@
+package com.kiss.kissnest.service;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.kiss.kissnest.dao.DeployLogDao;
+import com.kiss.kissnest.dao.DeployNodeLogDao;
+import com.kiss.kissnest.dao.EnvironmentDao;
+import com.kiss.kissnest.entity.DeployLog;
+import com.kiss.kissnest.entity.DeployNodeLog;
+import com.kiss.kissnest.entity.Environment;
+import com.kiss.kissnest.entity.Job;
+import com.kiss.kissnest.enums.DeployJobStatusEnums;
+import com.kiss.kissnest.enums.DeployStrategyEnums;
+import com.kiss.kissnest.enums.LogTypeEnums;
+import com.kiss.kissnest.enums.WebSocketMessageTypeEnums;
+import com.kiss.kissnest.enums.WebSocketTopicEnums;
+import com.kiss.kissnest.output.DeployLogOutput;
+import com.kiss.kissnest.status.NestStatusCode;
+import com.kiss.kissnest.util.LogStore;
+import com.kiss.kissnest.util.SaltStackUtil;
+import com.kiss.foundation.exception.StatusException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 部署执行引擎：节点按批次并行执行，全部完成后回写部署日志状态。
+ * 异步模式下通过 local_async 提交并轮询 job 结果，同步模式下每个节点占用一个 deployExecutor 线程。
+ * 金丝雀暂停时剩余的部署计划写入部署日志，任一实例都可以继续或中止，暂停超过 pauseTimeoutMillis 的部署自动中止
+ */
+@Service
+@Slf4j
+public class DeployService {
+
+    @Autowired
+    @Qualifier("deployExecutor")
+    private ThreadPoolTaskExecutor deployExecutor;
+
+    @Autowired
+    private SaltStackUtil saltStackUtil;
+
+    @Autowired
+    private DeployLogDao deployLogDao;
+
+    @Autowired
+    private DeployNodeLogDao deployNodeLogDao;
+
+    @Autowired
+    private SaltJobService saltJobService;
+
+    @Autowired
+    private SaltEventService saltEventService;
+
+    @Autowired
+    private WebSocketService webSocketService;
+
+    @Autowired
+    private ProgramStatusService programStatusService;
+
+    @Autowired
+    private LogStore logStore;
+
+    @Autowired
+    private EnvironmentDao environmentDao;
+
+    @Autowired
+    private DeploySchedulerService deploySchedulerService;
+
+    @Autowired
+    @Qualifier("deployScheduler")
+    private ThreadPoolTaskScheduler deployScheduler;
+
+    @Value("${deploy.async:true}")
+    private Boolean asyncMode;
+
+    @Value("${deploy.pauseTimeoutMillis:3600000}")
+    private Long pauseTimeoutMillis;
+
+    @PostConstruct
+    public void init() {
+
+        deployScheduler.scheduleWithFixedDelay(this::abortExpiredPauses, Math.min(pauseTimeoutMillis, 60000L));
+    }
+
+    /**
+     * 提交部署，立即返回；返回的 future 在所有节点结束并回写状态后、或金丝雀批次完成暂停后完成。
+     * 节点按部署任务的策略分批执行，上一批全部成功后才开始下一批；开启金丝雀时第一批完成后暂停，等待继续。
+     * 最大不可用数策略不分批，同时部署的节点不超过 maxUnavailable 个，任一节点结束后立即开始下一个节点
+     *
+     * @param deployLog    已入库的部署日志
+     * @param environment  部署环境
+     * @param nodeCommands 节点 -> 该节点的执行命令
+     * @param job          部署任务，提供分批策略
+     */
+    public CompletableFuture<DeployLog> deploy(DeployLog deployLog, Environment environment, Map<String, String> nodeCommands, Job job) {
+
+        DeployRollout rollout = new DeployRollout();
+        rollout.deployLog = deployLog;
+        rollout.environment = environment;
+        rollout.nodeCommands = nodeCommands;
+        rollout.waves = splitWaves(new ArrayList<>(nodeCommands.keySet()), job);
+        rollout.canary = Boolean.TRUE.equals(job.getCanary()) && rollout.waves.size() > 1;
+        rollout.windowSize = getWindowSize(job);
+        rollout.result = new CompletableFuture<>();
+
+        if (rollout.waves.isEmpty()) {
+            completeRollout(rollout, 0);
+        } else {
+            runWave(rollout);
+        }
+
+        return rollout.result;
+    }
+
+    /**
+     * 继续已暂停的金丝雀部署，由本实例认领并执行剩余的批次
+     */
+    public void resumeDeploy(Integer deployLogId) {
+
+        DeployLog deployLog = claimPaused(deployLogId);
+        DeployRollout rollout = restoreRollout(deployLog);
+
+        log.info("部署{}继续执行", deployLogId);
+        runWave(rollout);
+    }
+
+    /**
+     * 终止已暂停的金丝雀部署，剩余节点不再部署
+     */
+    public void abortDeploy(Integer deployLogId) {
+
+        DeployLog deployLog = claimPaused(deployLogId);
+        int success = deployLog.getSuccessTasks() == null ? 0 : deployLog.getSuccessTasks();
+
+        finishDeploy(deployLog, success, deployLog.getTotalTasks());
+    }
+
+    /**
+     * 把暂停中的部署改为部署中并记为本实例执行，多个实例同时继续或中止时只有一个成功
+     */
+    private DeployLog claimPaused(Integer deployLogId) {
+
+        DeployLog deployLog = deployLogDao.getDeployLogById(deployLogId);
+
+        if (deployLog == null || !DeployJobStatusEnums.PAUSED.value().equals(deployLog.getStatus()) || StringUtils.isEmpty(deployLog.getRollout())) {
+            throw new StatusException(NestStatusCode.DEPLOY_NOT_PAUSED);
+        }
+
+        if (deployLogDao.claimDeployLog(deployLogId, DeployJobStatusEnums.PAUSED.value(), DeployJobStatusEnums.DEPLOYING.value(), deploySchedulerService.getOwner(), System.currentTimeMillis()) == 0) {
+            throw new StatusException(NestStatusCode.DEPLOY_NOT_PAUSED);
+        }
+
+        deployLog.setStatus(DeployJobStatusEnums.DEPLOYING.value());
+
+        return deployLog;
+    }
+
+    /**
+     * 暂停超时的部署按中止处理，释放项目与环境
+     */
+    private void abortExpiredPauses() {
+
+        try {
+            for (DeployLog deployLog : deployLogDao.getDeployLogsByStatusAndLeaseBefore(DeployJobStatusEnums.PAUSED.value(), System.currentTimeMillis() - pauseTimeoutMillis)) {
+                try {
+                    abortDeploy(deployLog.getId());
+                    log.warn("部署{}暂停超时,已中止", deployLog.getId());
+                } catch (StatusException e) {
+                    // 已被其他实例继续或中止
+                }
+            }
+        } catch (Exception e) {
+            log.error("中止暂停超时的部署异常", e);
+        }
+    }
+
+    private String toRolloutState(DeployRollout rollout) {
+
+        JSONObject state = new JSONObject(true);
+        state.put("nodeCommands", rollout.nodeCommands);
+        state.put("waves", rollout.waves);
+        state.put("nextWave", rollout.nextWave);
+        state.put("deployed", rollout.deployed);
+        state.put("windowSize", rollout.windowSize);
+
+        return state.toJSONString();
+    }
+
+    private DeployRollout restoreRollout(DeployLog deployLog) {
+
+        JSONObject state = JSONObject.parseObject(deployLog.getRollout());
+        JSONObject nodeCommands = state.getJSONObject("nodeCommands");
+        JSONArray waves = state.getJSONArray("waves");
+
+        DeployRollout rollout = new DeployRollout();
+        rollout.deployLog = deployLog;
+        rollout.environment = environmentDao.getEnvironmentById(deployLog.getEnvId());
+        rollout.nodeCommands = new LinkedHashMap<>();
+        rollout.waves = new ArrayList<>();
+        rollout.canary = true;
+        rollout.nextWave = state.getIntValue("nextWave");
+        rollout.deployed = state.getIntValue("deployed");
+        rollout.windowSize = state.getIntValue("windowSize");
+        rollout.result = new CompletableFuture<>();
+
+        for (String deployNode : nodeCommands.keySet()) {
+            rollout.nodeCommands.put(deployNode, nodeCommands.getString(deployNode));
+        }
+
+        for (int i = 0; i < waves.size(); i++) {
+            rollout.waves.add(waves.getJSONArray(i).toJavaList(String.class));
+        }
+
+        return rollout;
+    }
+
+    private List<List<String>> splitWaves(List<String> nodes, Job job) {
+
+        int total = nodes.size();
+        Integer strategy = job.getStrategy() == null ? DeployStrategyEnums.ALL.value() : job.getStrategy();
+        int waveSize = total;
+
+        if (strategy.equals(DeployStrategyEnums.FIXED_BATCH.value()) && job.getBatchSize() != null) {
+            waveSize = job.getBatchSize();
+        } else if (strategy.equals(DeployStrategyEnums.PERCENT_BATCH.value()) && job.getBatchPercent() != null) {
+            waveSize = (int) Math.ceil(total * job.getBatchPercent() / 100.0);
+        }
+
+        waveSize = Math.max(1, Math.min(waveSize, Math.max(total, 1)));
+        List<List<String>> waves = new ArrayList<>();
+        int start = 0;
+
+        // 金丝雀批次固定为一个节点
+        if (Boolean.TRUE.equals(job.getCanary()) && total > 1) {
+            waves.add(new ArrayList<>(nodes.subList(0, 1)));
+            start = 1;
+        }
+
+        for (int i = start; i < total; i += waveSize) {
+            waves.add(new ArrayList<>(nodes.subList(i, Math.min(i + waveSize, total))));
+        }
+
+        return waves;
+    }
+
+    /**
+     * 最大不可用数策略的窗口大小，其他策略返回 0
+     */
+    private int getWindowSize(Job job) {
+
+        if (!DeployStrategyEnums.MAX_UNAVAILABLE.value().equals(job.getStrategy()) || job.getMaxUnavailable() == null) {
+            return 0;
+        }
+
+        return Math.max(1, job.getMaxUnavailable());
+    }
+
+    private void runWave(DeployRollout rollout) {
+
+        // 金丝雀批次之后的节点按滑动窗口部署
+        if (rollout.windowSize > 0 && !(rollout.canary && rollout.nextWave == 0)) {
+            runWindow(rollout);
+            return;
+        }
+
+        List<String> wave = rollout.waves.get(rollout.nextWave++);
+        Map<String, String> waveCommands = new LinkedHashMap<>();
+
+        for (String deployNode : wave) {
+            waveCommands.put(deployNode, rollout.nodeCommands.get(deployNode));
+        }
+
+        log.info("部署{}开始第{}/{}批,节点{}", rollout.deployLog.getId(), rollout.nextWave, rollout.waves.size(), wave);
+        rollout.deployed += wave.size();
+
+        List<CompletableFuture<Boolean>> tasks = asyncMode ? submitAsync(rollout.deployLog, rollout.environment, waveCommands) : submitSync(rollout.deployLog, rollout.environment, waveCommands);
+
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]))
+                .thenRun(() -> afterWave(rollout))
+                .exceptionally(e -> {
+                    log.error("部署{}分批执行异常", rollout.deployLog.getId(), e);
+                    completeRollout(rollout, 0);
+                    return null;
+                });
+    }
+
+    /**
+     * 滑动窗口：最多 windowSize 个节点同时部署，任一节点结束后补充下一个节点；
+     * 出现失败节点后不再开始新的节点，已开始的节点全部结束后回写结果
+     */
+    private void runWindow(DeployRollout rollout) {
+
+        List<String> wave = rollout.waves.get(rollout.nextWave++);
+        rollout.pendingNodes = new ArrayDeque<>(wave);
+        rollout.window = new Semaphore(rollout.windowSize);
+
+        log.info("部署{}开始滑动窗口部署,窗口大小{},节点{}", rollout.deployLog.getId(), rollout.windowSize, wave);
+
+        fillWindow(rollout);
+    }
+
+    private void fillWindow(DeployRollout rollout) {
+
+        while (rollout.window.tryAcquire()) {
+            String deployNode;
+
+            synchronized (rollout) {
+                deployNode = rollout.halted ? null : rollout.pendingNodes.poll();
+                if (deployNode != null) {
+                    rollout.deployed++;
+                    rollout.inFlight++;
+                }
+            }
+
+            if (deployNode == null) {
+                rollout.window.release();
+                return;
+            }
+
+            Map<String, String> nodeCommand = Collections.singletonMap(deployNode, rollout.nodeCommands.get(deployNode));
+            List<CompletableFuture<Boolean>> tasks = asyncMode ? submitAsync(rollout.deployLog, rollout.environment, nodeCommand) : submitSync(rollout.deployLog, rollout.environment, nodeCommand);
+
+            tasks.get(0).whenComplete((success, e) -> afterNode(rollout, deployNode, Boolean.TRUE.equals(success)));
+        }
+    }
+
+    private void afterNode(DeployRollout rollout, String deployNode, boolean success) {
+
+        boolean finished;
+
+        synchronized (rollout) {
+            rollout.inFlight--;
+            if (!success && !rollout.halted) {
+                log.warn("部署{}节点{}失败,不再开始新的节点", rollout.deployLog.getId(), deployNode);
+                rollout.halted = true;
+            }
+            finished = rollout.inFlight == 0 && (rollout.halted || rollout.pendingNodes.isEmpty());
+        }
+
+        rollout.window.release();
+
+        if (!finished) {
+            fillWindow(rollout);
+            return;
+        }
+
+        try {
+            afterWave(rollout);
+        } catch (Exception e) {
+            log.error("部署{}滑动窗口执行异常", rollout.deployLog.getId(), e);
+            completeRollout(rollout, 0);
+        }
+    }
+
+    /**
+     * 以部署日志中的成功数作为下一批的准入条件：已部署节点必须全部成功
+     */
+    private void afterWave(DeployRollout rollout) {
+
+        DeployLog current = deployLogDao.getDeployLogById(rollout.deployLog.getId());
+        int success = current.getSuccessTasks() == null ? 0 : current.getSuccessTasks();
+
+        if (success < rollout.deployed) {
+            log.warn("部署{}第{}批存在失败节点,停止后续批次", rollout.deployLog.getId(), rollout.nextWave);
+            completeRollout(rollout, success);
+            return;
+        }
+
+        if (rollout.nextWave >= rollout.waves.size()) {
+            completeRollout(rollout, success);
+            return;
+        }
+
+        // 暂停后部署不再属于本实例，本次执行结束
+        if (rollout.canary && rollout.nextWave == 1) {
+            rollout.deployLog.setStatus(DeployJobStatusEnums.PAUSED.value());
+            rollout.deployLog.setStatusText(success + "/" + rollout.nodeCommands.size());
+            rollout.deployLog.setRollout(toRolloutState(rollout));
+            rollout.deployLog.setLeaseAt(System.currentTimeMillis());
+            deployLogDao.pauseDeployLog(rollout.deployLog);
+            log.info("部署{}金丝雀批次完成,等待继续", rollout.deployLog.getId());
+            rollout.result.complete(rollout.deployLog);
+            return;
+        }
+
+        runWave(rollout);
+    }
+
+    private void completeRollout(DeployRollout rollout, int success) {
+
+        rollout.result.complete(finishDeploy(rollout.deployLog, success, rollout.nodeCommands.size()));
+    }
+
+    /**
+     * 同步模式：每个节点一个 client: local 请求，占用一个 deployExecutor 线程直到命令结束
+     */
+    private List<CompletableFuture<Boolean>> submitSync(DeployLog deployLog, Environment environment, Map<String, String> nodeCommands) {
+
+        List<CompletableFuture<Boolean>> tasks = new ArrayList<>();
+
+        for (Map.Entry<String, String> entry : nodeCommands.entrySet()) {
+            String deployNode = entry.getKey();
+            String runCommand = entry.getValue();
+            CompletableFuture<Boolean> task;
+
+            try {
+                task = CompletableFuture
+                        .supplyAsync(() -> execDeployCommand(deployLog, environment, deployNode, runCommand), deployExecutor)
+                        .exceptionally(e -> {
+                            log.error("节点{}部署异常", deployNode, e);
+                            return false;
+                        });
+            } catch (Exception e) {
+                log.error("节点{}部署提交失败", deployNode, e);
+                task = CompletableFuture.completedFuture(recordNodeResult(deployLog, deployNode, null));
+            }
+
+            tasks.add(task);
+        }
+
+        return tasks;
+    }
+
+    /**
+     * 异步模式：相同命令的节点合并为一个 local_async job，由 SaltJobService 轮询结果，节点返回时即写入节点日志
+     */
+    private List<CompletableFuture<Boolean>> submitAsync(DeployLog deployLog, Environment environment, Map<String, String> nodeCommands) {
+
+        Map<String, CompletableFuture<Boolean>> nodeTasks = new LinkedHashMap<>();
+        Map<String, List<String>> commandNodes = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> entry : nodeCommands.entrySet()) {
+            nodeTasks.put(entry.getKey(), new CompletableFuture<>());
+            commandNodes.computeIfAbsent(entry.getValue(), key -> new ArrayList<>()).add(entry.getKey());
+        }
+
+        for (Map.Entry<String, List<String>> entry : commandNodes.entrySet()) {
+            String runCommand = entry.getKey();
+            List<String> deployNodes = entry.getValue();
+
+            Runnable submit = () -> {
+                String jid;
+
+                // 提交期间保持事件流连接，并暂存 jid 注册前到达的返回事件
+                saltEventService.beginSubmit(environment);
+
+                try {
+                    jid = saltStackUtil.callLocalAsync(environment, "cmd.run", String.join(",", deployNodes), runCommand);
+                    log.info("部署{}提交 salt job {},节点{}", deployLog.getId(), jid, deployNodes);
+
+                    if (jid != null) {
+                        saltEventService.watch(environment, jid, deployLog);
+                    }
+                } finally {
+                    saltEventService.endSubmit(environment);
+                }
+
+                if (jid == null) {
+                    for (String deployNode : deployNodes) {
+                        nodeTasks.get(deployNode).complete(recordNodeResult(deployLog, deployNode, null));
+                    }
+                    return;
+                }
+
+                saltJobService.track(environment, jid, deployNodes, (deployNode, output) -> {
+                    String response = output == null ? null : toLocalResponse(deployNode, output);
+                    nodeTasks.get(deployNode).complete(recordNodeResult(deployLog, deployNode, response));
+                });
+            };
+
+            try {
+                CompletableFuture.runAsync(submit, deployExecutor).exceptionally(e -> {
+                    log.error("部署{}提交 salt job 异常", deployLog.getId(), e);
+                    for (String deployNode : deployNodes) {
+                        nodeTasks.get(deployNode).complete(false);
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                log.error("部署{}提交 salt job 失败", deployLog.getId(), e);
+                for (String deployNode : deployNodes) {
+                    nodeTasks.get(deployNode).complete(recordNodeResult(deployLog, deployNode, null));
+                }
+            }
+        }
+
+        return new ArrayList<>(nodeTasks.values());
+    }
+
+    private boolean execDeployCommand(DeployLog deployLog, Environment environment, String deployNode, String runCommand) {
+
+        String response = saltStackUtil.callLocalSync(environment, "cmd.run", deployNode, runCommand);
+
+        return recordNodeResult(deployLog, deployNode, response);
+    }
+
+    /**
+     * 写入节点部署日志，返回节点是否部署成功
+     *
+     * @param response client: local 格式的返回，即 {"return":[{node: output}]}
+     */
+    private boolean recordNodeResult(DeployLog deployLog, String deployNode, String response) {
+
+        log.info("部署日志:{}", response);
+
+        boolean success = isDeploySuccess(response, deployNode);
+
+        DeployNodeLog deployNodeLog = new DeployNodeLog();
+        deployNodeLog.setTeamId(deployLog.getTeamId());
+        deployNodeLog.setEnvId(deployLog.getEnvId());
+        deployNodeLog.setJobId(deployLog.getJobId());
+        deployNodeLog.setDeployLogId(deployLog.getId());
+        deployNodeLog.setNodeId(deployNode);
+        deployNodeLog.setStatus(success ? DeployJobStatusEnums.SUCCESS.value() : DeployJobStatusEnums.FAILED.value());
+        deployNodeLogDao.createDeployNodeLog(deployNodeLog);
+
+        if (success) {
+            deployLogDao.incrementDeployLogSuccessTasks(deployLog.getId());
+        }
+
+        // 节点输出只写入日志存储，按节点顺序追加到部署日志；写入失败不影响节点的部署结果
+        String output = nodeOutput(response, deployNode);
+
+        try {
+            logStore.append(LogTypeEnums.DEPLOY.value(), deployLog.getId(), "[" + deployNode + "] " + (success ? "SUCCESS" : "FAILED") + "\n" + (output == null ? "" : output));
+        } catch (Exception e) {
+            log.error("部署{}节点{}的输出写入日志失败", deployLog.getId(), deployNode, e);
+        }
+
+        return success;
+    }
+
+    private String nodeOutput(String response, String deployNode) {
+
+        if (StringUtils.isEmpty(response)) {
+            return null;
+        }
+
+        try {
+            JSONArray returnArray = JSONObject.parseObject(response).getJSONArray("return");
+            return returnArray == null || returnArray.isEmpty() ? response : returnArray.getJSONObject(0).getString(deployNode);
+        } catch (Exception e) {
+            return response;
+        }
+    }
+
+    private String toLocalResponse(String deployNode, String output) {
+
+        JSONObject node = new JSONObject();
+        node.put(deployNode, output);
+        JSONObject response = new JSONObject();
+        response.put("return", Collections.singletonList(node));
+
+        return response.toJSONString();
+    }
+
+    private boolean isDeploySuccess(String response, String deployNode) {
+
+        if (StringUtils.isEmpty(response)) {
+            return false;
+        }
+
+        JSONObject returnJson = JSONObject.parseObject(response);
+        JSONArray returnArray = returnJson.getJSONArray("return");
+
+        if (returnArray == null || returnArray.isEmpty()) {
+            return false;
+        }
+
+        String message = returnArray.getJSONObject(0).getString(deployNode);
+
+        if (message == null) {
+            log.warn("节点{}没有返回部署信息", deployNode);
+            return false;
+        }
+
+        return SaltStackUtil.isCommandSuccess(message);
+    }
+
+    private DeployLog finishDeploy(DeployLog deployLog, int success, int total) {
+
+        deployLog.setSuccessTasks(success);
+        deployLog.setStatus(success == total ? DeployJobStatusEnums.SUCCESS.value() : DeployJobStatusEnums.FAILED.value());
+        deployLog.setStatusText(success + "/" + total);
+        deployLogDao.updateDeployLogStatus(deployLog);
+        log.info("部署{}结束,成功{}/{}", deployLog.getId(), success, total);
+
+        saltEventService.release(deployLog.getId());
+        programStatusService.invalidate(deployLog.getEnvId());
+        DeployLogOutput deployLogOutput = deployLogDao.getDeployLogOutputById(deployLog.getId());
+        webSocketService.sendMessage(deployLog.getTeamId(), WebSocketMessageTypeEnums.DEPLOY_PROJECT_END.value(), deployLogOutput,
+                WebSocketTopicEnums.PROJECT.topic(deployLog.getProjectId()), WebSocketTopicEnums.ENV.topic(deployLog.getEnvId()));
+
+        return deployLog;
+    }
+
+    private static class DeployRollout {
+
+        private DeployLog deployLog;
+
+        private Environment environment;
+
+        private Map<String, String> nodeCommands;
+
+        private List<List<String>> waves;
+
+        private boolean canary;
+
+        private int nextWave;
+
+        private int deployed;
+
+        /**
+         * 滑动窗口大小，0 表示按批次部署
+         */
+        private int windowSize;
+
+        private Semaphore window;
+
+        private Deque<String> pendingNodes;
+
+        private int inFlight;
+
+        private boolean halted;
+
+        private CompletableFuture<DeployLog> result;
+    }
+}
@@ -0,0 +1,444 @@
+package com.kiss.kissnest.service;
+
+import com.alibaba.fastjson.JSONObject;
+import com.kiss.kissnest.dao.BuildLogDao;
+import com.kiss.kissnest.dao.JenkinsNotificationEventDao;
+import com.kiss.kissnest.dao.ProjectDao;
+import com.kiss.kissnest.entity.BuildLog;
+import com.kiss.kissnest.entity.JenkinsNotificationEvent;
+import com.kiss.kissnest.enums.BuildJobStatusEnums;
+import com.kiss.kissnest.enums.JenkinsNotificationStatusEnums;
+import com.kiss.kissnest.enums.LogTypeEnums;
+import com.kiss.kissnest.enums.WebSocketMessageTypeEnums;
+import com.kiss.kissnest.enums.WebSocketTopicEnums;
+import com.kiss.kissnest.input.JenkinsNotification;
+import com.kiss.kissnest.input.JenkinsNotificationBuild;
+import com.kiss.kissnest.output.BuildLogOutput;
+import com.kiss.kissnest.util.LogStore;
+import com.kiss.kissnest.util.OutputUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Jenkins 通知收件箱：回调只负责把通知写入 jenkinsnotifications 表，按 (jobName, queueId, phase) 去重后立即返回；
+ * 后台线程批量取出待处理的通知，按任务分组并行处理，同一任务内按到达顺序处理，同一次构建的多个阶段合并为一次写入。
+ * 找不到构建日志（通知早于构建日志写入）或处理异常的通知保持待处理，延迟后重试，超过 maxAttempts 次后标记为处理失败。
+ * 多个实例共用收件箱，每个实例先把一批待处理的通知认领为处理中再处理，认领超过 claimTimeoutMillis 未完成的通知退回待处理。
+ * 已处理的通知清空 payload，只保留去重所需的字段；已处理和处理失败的通知保留 retentionDays 天后分批删除
+ */
+@Service
+@Slf4j
+public class JenkinsNotificationService {
+
+    @Autowired
+    private JenkinsNotificationEventDao jenkinsNotificationEventDao;
+
+    @Autowired
+    private BuildLogDao buildLogDao;
+
+    @Autowired
+    private ProjectDao projectDao;
+
+    @Autowired
+    private PackageRepositoryService packageRepositoryService;
+
+    @Autowired
+    private WebSocketService webSocketService;
+
+    @Autowired
+    private OutputUtil outputUtil;
+
+    @Autowired
+    private LogStore logStore;
+
+    @Autowired
+    @Qualifier("notificationExecutor")
+    private ThreadPoolTaskExecutor notificationExecutor;
+
+    @Value("${jenkins.notification.batchSize:200}")
+    private Integer batchSize;
+
+    @Value("${jenkins.notification.pollMillis:1000}")
+    private Long pollMillis;
+
+    @Value("${jenkins.notification.maxAttempts:10}")
+    private Integer maxAttempts;
+
+    @Value("${jenkins.notification.retryMillis:5000}")
+    private Long retryMillis;
+
+    @Value("${jenkins.notification.claimTimeoutMillis:300000}")
+    private Long claimTimeoutMillis;
+
+    @Value("${jenkins.notification.retentionDays:7}")
+    private Integer retentionDays;
+
+    @Value("${jenkins.notification.purgeMillis:3600000}")
+    private Long purgeMillis;
+
+    @Value("${jenkins.notification.purgeBatchSize:10000}")
+    private Integer purgeBatchSize;
+
+    /**
+     * 本实例认领通知时使用的标识，每次启动不同
+     */
+    private final String owner = getHostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+
+    private long lastReleaseAt;
+
+    private long lastPurgeAt;
+
+    private final Object signal = new Object();
+
+    private volatile boolean running = true;
+
+    private Thread dispatcher;
+
+    @PostConstruct
+    public void start() {
+
+        dispatcher = new Thread(this::dispatch, "nest-jenkins-notification");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+
+        running = false;
+        dispatcher.interrupt();
+
+        try {
+            dispatcher.join(pollMillis);
+            jenkinsNotificationEventDao.releaseJenkinsNotificationEventsByOwner(owner);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("退回本实例认领的 Jenkins 通知失败", e);
+        }
+    }
+
+    /**
+     * 写入收件箱，重复的通知返回 false
+     */
+    public boolean accept(JenkinsNotification data) {
+
+        JenkinsNotificationEvent event = new JenkinsNotificationEvent();
+        event.setJobName(data.getName());
+        event.setQueueId(data.getBuild().getQueue_id());
+        event.setPhase(data.getBuild().getPhase());
+        event.setPayload(JSONObject.toJSONString(data));
+        event.setStatus(JenkinsNotificationStatusEnums.PENDING.value());
+        event.setAttempts(0);
+        event.setRetryAt(0L);
+
+        if (jenkinsNotificationEventDao.createJenkinsNotificationEvent(event) == 0) {
+            log.info("Jenkins 重复通知 {} {} {}", event.getJobName(), event.getQueueId(), event.getPhase());
+            return false;
+        }
+
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+
+        return true;
+    }
+
+    private void dispatch() {
+
+        while (running) {
+            try {
+                releaseStaleClaims();
+                purge();
+                List<JenkinsNotificationEvent> events = claim();
+
+                if (events.isEmpty()) {
+                    synchronized (signal) {
+                        signal.wait(pollMillis);
+                    }
+                    continue;
+                }
+
+                process(events);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("处理 Jenkins 通知异常", e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    /**
+     * 先以一条 update 认领一批待处理的通知，再读取本实例认领的通知，多个实例不会取到同一条通知
+     */
+    private List<JenkinsNotificationEvent> claim() {
+
+        if (jenkinsNotificationEventDao.claimJenkinsNotificationEvents(owner, batchSize) == 0) {
+            return new ArrayList<>();
+        }
+
+        return jenkinsNotificationEventDao.getClaimedJenkinsNotificationEvents(owner);
+    }
+
+    /**
+     * 认领后没有在 claimTimeoutMillis 内完成的通知（实例退出或卡住）退回待处理
+     */
+    private void releaseStaleClaims() {
+
+        long now = System.currentTimeMillis();
+
+        if (now - lastReleaseAt < claimTimeoutMillis / 2) {
+            return;
+        }
+
+        lastReleaseAt = now;
+        Integer count = jenkinsNotificationEventDao.releaseStaleJenkinsNotificationEvents(now - claimTimeoutMillis);
+
+        if (count != null && count > 0) {
+            log.warn("退回{}条认领超时的 Jenkins 通知", count);
+        }
+    }
+
+    /**
+     * 每隔 purgeMillis 分批删除超过保留天数的已处理和处理失败的通知，多个实例同时删除互不影响
+     */
+    private void purge() {
+
+        long now = System.currentTimeMillis();
+
+        if (now - lastPurgeAt < purgeMillis) {
+            return;
+        }
+
+        lastPurgeAt = now;
+
+        try {
+            int deleted;
+            int total = 0;
+
+            do {
+                deleted = jenkinsNotificationEventDao.deleteFinishedJenkinsNotificationEvents(retentionDays, purgeBatchSize);
+                total += deleted;
+            } while (deleted >= purgeBatchSize && running);
+
+            if (total > 0) {
+                log.info("清理 Jenkins 通知{}条", total);
+            }
+        } catch (Exception e) {
+            log.error("清理 Jenkins 通知异常", e);
+        }
+    }
+
+    /**
+     * 不同任务并行处理，全部完成后一次回写这一批通知的状态：已应用的标记为已处理，其余的进入重试
+     */
+    private void process(List<JenkinsNotificationEvent> events) {
+
+        Map<String, List<JenkinsNotificationEvent>> jobEvents = new LinkedHashMap<>();
+
+        for (JenkinsNotificationEvent event : events) {
+            jobEvents.computeIfAbsent(event.getJobName(), key -> new ArrayList<>()).add(event);
+        }
+
+        List<CompletableFuture<Set<Integer>>> tasks = new ArrayList<>();
+        List<List<JenkinsNotificationEvent>> groups = new ArrayList<>(jobEvents.values());
+
+        for (List<JenkinsNotificationEvent> group : groups) {
+            tasks.add(CompletableFuture.supplyAsync(() -> processJob(group), notificationExecutor));
+        }
+
+        List<Integer> processedIds = new ArrayList<>();
+        List<Integer> retryIds = new ArrayList<>();
+
+        for (int i = 0; i < groups.size(); i++) {
+            Set<Integer> unappliedQueueIds = tasks.get(i).join();
+            for (JenkinsNotificationEvent event : groups.get(i)) {
+                if (!unappliedQueueIds.contains(event.getQueueId())) {
+                    processedIds.add(event.getId());
+                    continue;
+                }
+                retryIds.add(event.getId());
+                if (event.getAttempts() + 1 >= maxAttempts) {
+                    log.error("Jenkins 通知 {} {} {} 重试{}次后仍未处理,标记为失败", event.getJobName(), event.getQueueId(), event.getPhase(), maxAttempts);
+                }
+            }
+        }
+
+        if (!processedIds.isEmpty()) {
+            jenkinsNotificationEventDao.updateJenkinsNotificationEventsStatus(processedIds, JenkinsNotificationStatusEnums.PROCESSED.value());
+        }
+
+        if (!retryIds.isEmpty()) {
+            jenkinsNotificationEventDao.retryJenkinsNotificationEvents(retryIds, System.currentTimeMillis() + retryMillis, maxAttempts);
+        }
+    }
+
+    /**
+     * 同一任务的各次构建互不影响，一次构建处理失败不影响后面的构建
+     *
+     * @return 没有应用的构建的 queueId
+     */
+    private Set<Integer> processJob(List<JenkinsNotificationEvent> events) {
+
+        String jobName = events.get(0).getJobName();
+        Map<Integer, List<JenkinsNotification>> builds = new LinkedHashMap<>();
+        Set<Integer> unappliedQueueIds = new HashSet<>();
+
+        for (JenkinsNotificationEvent event : events) {
+            builds.computeIfAbsent(event.getQueueId(), key -> new ArrayList<>()).add(JSONObject.parseObject(event.getPayload(), JenkinsNotification.class));
+        }
+
+        for (Map.Entry<Integer, List<JenkinsNotification>> entry : builds.entrySet()) {
+            try {
+                if (!processBuild(jobName, entry.getKey(), entry.getValue())) {
+                    log.info("任务{}的构建{}还没有构建日志,稍后重试", jobName, entry.getKey());
+                    unappliedQueueIds.add(entry.getKey());
+                }
+            } catch (Exception e) {
+                log.error("处理任务{}构建{}的 Jenkins 通知异常", jobName, entry.getKey(), e);
+                unappliedQueueIds.add(entry.getKey());
+            }
+        }
+
+        return unappliedQueueIds;
+    }
+
+    /**
+     * 依次应用同一次构建的各阶段通知，只写一次构建日志，只推送最后一个阶段的消息；
+     * 重试的通知可能晚于后面的阶段被处理，构建状态只前进不后退
+     *
+     * @return 构建日志不存在时返回 false
+     */
+    private boolean processBuild(String jobName, Integer queueId, List<JenkinsNotification> notifications) {
+
+        BuildLog buildLog = buildLogDao.getBuildLogByJobNameAndQueueId(jobName, queueId);
+
+        if (buildLog == null) {
+            return false;
+        }
+
+        int stage = getStage(buildLog.getStatus());
+        boolean changed = false;
+        String messageType = null;
+        String output = null;
+        boolean success = false;
+
+        for (JenkinsNotification notification : notifications) {
+            JenkinsNotificationBuild build = notification.getBuild();
+
+            if (notification.isQueued()) {
+                buildLog.setLogUrl(build.getFull_url() + "console");
+                buildLog.setNumber(build.getNumber());
+                buildLog.setVersion(build.getScm().getCommit());
+                changed = true;
+                if (stage < 1) {
+                    stage = 1;
+                    buildLog.setStatus(BuildJobStatusEnums.QUEUEING.value());
+                    messageType = WebSocketMessageTypeEnums.BUILD_PROJECT_QUEUEING.value();
+                }
+            } else if (notification.isStarted() && stage < 2) {
+                stage = 2;
+                changed = true;
+                buildLog.setStatus(BuildJobStatusEnums.BUILDING.value());
+                buildLog.setBuildAt(System.currentTimeMillis() / 1000);
+                messageType = WebSocketMessageTypeEnums.BUILD_PROJECT_START.value();
+            } else if (notification.isFinalized() && stage < 3) {
+                stage = 3;
+                changed = true;
+                if (buildLog.getBuildAt() != null) {
+                    buildLog.setDuration(System.currentTimeMillis() / 1000 - buildLog.getBuildAt());
+                }
+                output = build.getLog();
+                success = build.getStatus() != null && build.getStatus().equals("SUCCESS");
+                if (success) {
+                    buildLog.setStatus(BuildJobStatusEnums.SUCCESS.value());
+                    buildLog.setTarName(parseTarName(build.getLog()));
+                    if (buildLog.getTarName() == null || buildLog.getTarName().isEmpty()) {
+                        buildLog.setStatus(BuildJobStatusEnums.PACKAGE_MISS.value());
+                    }
+                } else {
+                    buildLog.setStatus(BuildJobStatusEnums.FAILED.value());
+                }
+                messageType = WebSocketMessageTypeEnums.BUILD_PROJECT_END.value();
+            }
+        }
+
+        if (!changed) {
+            return true;
+        }
+
+        // 先写构建输出，写入失败时构建状态不前进；状态更新失败重试时输出已存在，不重复写入
+        if (output != null && !logStore.appendIfAbsent(LogTypeEnums.BUILD.value(), buildLog.getId(), output)) {
+            log.info("构建日志{}的输出已写入,跳过", buildLog.getId());
+        }
+
+        buildLogDao.updateBuildLog(buildLog);
+
+        if (success) {
+            packageRepositoryService.createPackageRepository(buildLog);
+            projectDao.updateLastBuild(buildLog.getProjectId(), buildLog.getVersion());
+        }
+
+        if (messageType != null) {
+            BuildLogOutput buildLogOutput = outputUtil.toBuildLogOutput(buildLog);
+            webSocketService.sendMessage(buildLog.getTeamId(), messageType, buildLogOutput, WebSocketTopicEnums.PROJECT.topic(buildLog.getProjectId()));
+        }
+
+        return true;
+    }
+
+    /**
+     * 构建日志状态对应的阶段：0 初始化，1 排队中，2 构建中，3 已结束
+     */
+    private int getStage(Integer status) {
+
+        if (BuildJobStatusEnums.QUEUEING.value().equals(status)) {
+            return 1;
+        } else if (BuildJobStatusEnums.BUILDING.value().equals(status)) {
+            return 2;
+        } else if (BuildJobStatusEnums.SUCCESS.value().equals(status) || BuildJobStatusEnums.FAILED.value().equals(status) || BuildJobStatusEnums.PACKAGE_MISS.value().equals(status)) {
+            return 3;
+        }
+
+        return 0;
+    }
+
+    private String parseTarName(String log) {
+
+        if (log == null || !log.contains("tarNameStart") || !log.contains("tarNameEnd")) {
+            return null;
+        }
+
+        return log.substring(log.indexOf("tarNameStart") + 13, log.indexOf("tarNameEnd") - 1);
+    }
+
+    private static String getHostName() {
+
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+
+    private void sleepQuietly() {
+
+        try {
+            Thread.sleep(pollMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -6,14 +6,18 @@ import com.alibaba.fastjson.JSONObject;
 import com.kiss.kissnest.dao.*;
 import com.kiss.kissnest.entity.*;
 import com.kiss.kissnest.enums.BuildJobStatusEnums;
+import com.kiss.kissnest.enums.DeployJobStatusEnums;
+import com.kiss.kissnest.enums.LogTypeEnums;
 import com.kiss.kissnest.enums.OperationTargetType;
 import com.kiss.kissnest.enums.WebSocketMessageTypeEnums;
+import com.kiss.kissnest.enums.WebSocketTopicEnums;
 import com.kiss.kissnest.exception.TransactionalException;
 import com.kiss.kissnest.input.*;
 import com.kiss.kissnest.output.*;
 import com.kiss.kissnest.status.NestStatusCode;
 import com.kiss.kissnest.util.JenkinsUtil;
 import com.kiss.kissnest.util.LangUtil;
+import com.kiss.kissnest.util.LogStore;
 import com.kiss.kissnest.util.OutputUtil;
 import com.kiss.kissnest.util.SaltStackUtil;
 import com.kiss.foundation.entity.Guest;
@@ -25,9 +29,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.AsyncResult;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
@@ -35,7 +39,7 @@ import org.springframework.util.StringUtils;
 import java.io.IOException;
 
 import java.util.*;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -115,9 +119,6 @@ public class JobService {
     @Autowired
     private PackageRepositoryDao packageRepositoryDao;
 
-    @Autowired
-    private DeployNodeLogDao deployNodeLogDao;
-
     @Autowired
     private SaltStackUtil saltStackUtil;
 
@@ -127,6 +128,22 @@ public class JobService {
     @Autowired
     private OutputUtil outputUtil;
 
+    @Autowired
+    private DeployService deployService;
+
+    @Autowired
+    private ProgramStatusService programStatusService;
+
+    @Autowired
+    private DeploySchedulerService deploySchedulerService;
+
+    @Autowired
+    private LogStore logStore;
+
+    @Autowired
+    @Qualifier("jenkinsExecutor")
+    private ThreadPoolTaskExecutor jenkinsExecutor;
+
     public JobOutput createBuildJob(CreateJobInput createJobInput) {
 
         Integer projectId = createJobInput.getProjectId();
@@ -208,6 +225,11 @@ public class JobService {
         job.setEnvId(createDeployInput.getEnvId());
         job.setScript(createDeployInput.getScript());
         job.setServerIds(serverIdList == null ? null : JSON.toJSONString(serverIdList));
+        job.setStrategy(createDeployInput.getStrategy());
+        job.setBatchSize(createDeployInput.getBatchSize());
+        job.setBatchPercent(createDeployInput.getBatchPercent());
+        job.setMaxUnavailable(createDeployInput.getMaxUnavailable());
+        job.setCanary(createDeployInput.getCanary());
         job.setType(2);
         jobDao.createJob(job);
         Integer id = job.getId();
@@ -240,13 +262,7 @@ public class JobService {
             throw new TransactionalException(NestStatusCode.BUILD_JENKINS_JOB_ERROR);
         }
 
-        Pattern queueIdPattern = Pattern.compile(".*/queue/item/([0-9]+)");
-        Matcher queueIdMatcher = queueIdPattern.matcher(location);
-        Long queueId = null;
-
-        if (queueIdMatcher.find() && queueIdMatcher.group(1) != null) {
-            queueId = Long.parseLong(queueIdMatcher.group(1));
-        }
+        Long queueId = parseQueueId(location);
 
         BuildLog buildLog = saveBuildLog(job.getTeamId(), jobName, buildJobInput.getType(), buildJobInput.getBranch(), buildJobInput.getProjectId(), guest, queueId, BuildJobStatusEnums.PENDING.value());
 
@@ -261,105 +277,150 @@ public class JobService {
         return buildLog;
     }
 
+    /**
+     * 批量触发构建：构建任务一次查出，Jenkins 请求在 jenkinsExecutor 上并发发出，每个构建触发成功后立即写入构建日志并重新读取
+     *
+     * @return 触发成功的构建日志
+     */
+    public List<BuildLogOutput> batchBuildJob(BatchBuildJobInput batchBuildJobInput) {
 
-    public HashMap checkProgram(Integer projectId, Integer envId) {
+        List<BuildJobInput> builds = batchBuildJobInput.getBuilds();
 
-        Job job = jobDao.getDeployJobByProjectIdAndEnvId(projectId, envId);
-        Environment environment = environmentDao.getEnvironmentById(job.getEnvId());
-        List<Integer> serverIds = JSONObject.parseArray(job.getServerIds(), Integer.class);
+        if (builds == null || builds.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-        String targetIps = serverDao.getServerIpsByIds(serverIds);
+        List<Integer> projectIds = new ArrayList<>();
 
-        String command = String.format("supervisorctl status %s", job.getJobName());
+        for (BuildJobInput buildJobInput : builds) {
+            projectIds.add(buildJobInput.getProjectId());
+        }
 
-        String response = saltStackUtil.callLocalSync(environment.getSaltHost(), environment.getSaltUser(), environment.getSaltPassword(), environment.getSaltVersion(), "cmd.run", targetIps, command);
+        Map<Integer, Job> projectJobs = new HashMap<>();
 
-        JSONObject returnJson = JSONObject.parseObject(response);
-        JSONArray states = returnJson.getJSONArray("return");
-        HashMap<String, String> result = new HashMap<>();
+        for (Job job : jobDao.getBuildJobsByProjectIds(projectIds)) {
+            projectJobs.putIfAbsent(job.getProjectId(), job);
+        }
 
-        for (int i = 0; i < states.size(); i++) {
-            JSONObject state = states.getJSONObject(i);
-            for (String key : state.keySet()) {
+        for (Integer projectId : projectIds) {
+            if (!projectJobs.containsKey(projectId)) {
+                throw new StatusException(NestStatusCode.JOB_NOT_EXIST);
+            }
+        }
 
-                if (state.getString(key).contains("no such process")) {
-                    result.put(key, "NONE");
-                } else if (state.getString(key).contains("STOPPED")) {
-                    result.put(key, "STOPPED");
-                } else if (state.getString(key).contains("RUNNING")) {
-                    result.put(key, "RUNNING");
+        Guest guest = ThreadLocalUtil.getGuest();
+        Member member = memberDao.getMemberByAccountId(guest.getId());
+        List<CompletableFuture<BuildLog>> triggers = new ArrayList<>();
+
+        // 每个构建触发成功后立即写入构建日志，Jenkins 的排队通知可能在其他构建触发完成之前到达
+        for (BuildJobInput buildJobInput : builds) {
+            Job job = projectJobs.get(buildJobInput.getProjectId());
+            triggers.add(CompletableFuture.supplyAsync(() -> {
+                String location = jenkinsUtil.buildJob(job.getJobName(), buildJobInput.getBranch(), guest.getUsername(), member.getApiToken());
+
+                if (location == null) {
+                    log.warn("触发构建{}失败,分支{}", job.getJobName(), buildJobInput.getBranch());
+                    return null;
+                }
+
+                BuildLog buildLog = saveBuildLog(job.getTeamId(), job.getJobName(), buildJobInput.getType(), buildJobInput.getBranch(), buildJobInput.getProjectId(), guest, parseQueueId(location), BuildJobStatusEnums.PENDING.value());
+
+                if (buildLog == null) {
+                    log.error("构建{}已触发,写入构建日志失败,分支{}", job.getJobName(), buildJobInput.getBranch());
                 }
+
+                return buildLog;
+            }, jenkinsExecutor).exceptionally(e -> {
+                log.error("触发构建{}异常,分支{}", job.getJobName(), buildJobInput.getBranch(), e);
+                return null;
+            }));
+        }
+
+        List<BuildLog> buildLogs = new ArrayList<>();
+        List<Job> builtJobs = new ArrayList<>();
+
+        for (int i = 0; i < builds.size(); i++) {
+            BuildLog buildLog = triggers.get(i).join();
+
+            if (buildLog != null) {
+                buildLogs.add(buildLog);
+                builtJobs.add(projectJobs.get(builds.get(i).getProjectId()));
             }
         }
 
-        return result;
-    }
+        if (buildLogs.isEmpty()) {
+            throw new StatusException(NestStatusCode.BUILD_JENKINS_JOB_ERROR);
+        }
 
-    public HashMap startProgram(Integer projectId, Integer envId) {
+        List<BuildLogOutput> buildLogOutputs = new ArrayList<>();
 
-        Job job = jobDao.getDeployJobByProjectIdAndEnvId(projectId, envId);
-        Environment environment = environmentDao.getEnvironmentById(job.getEnvId());
-        List<Integer> serverIds = JSONObject.parseArray(job.getServerIds(), Integer.class);
-        String targetIps = serverDao.getServerIpsByIds(serverIds);
+        for (int i = 0; i < buildLogs.size(); i++) {
+            Job job = builtJobs.get(i);
+            operationLogService.saveOperationLog(job.getTeamId(), guest, job, null, "id", OperationTargetType.TYPE__BUILD_JOB);
+            operationLogService.saveDynamic(guest, job.getTeamId(), null, job.getProjectId(), OperationTargetType.TYPE__BUILD_JOB, job);
+            buildLogOutputs.add(outputUtil.toBuildLogOutput(buildLogs.get(i)));
+        }
 
-        String command = String.format("supervisorctl start %s", job.getJobName());
+        Map<Integer, List<BuildLogOutput>> teamBuildLogOutputs = new HashMap<>();
 
-        String response = saltStackUtil.callLocalSync(environment.getSaltHost(), environment.getSaltUser(), environment.getSaltPassword(), environment.getSaltVersion(), "cmd.run", targetIps, command);
-        JSONObject returnJson = JSONObject.parseObject(response);
-        JSONArray states = returnJson.getJSONArray("return");
-        HashMap<String, String> result = new HashMap<>();
+        for (BuildLogOutput buildLogOutput : buildLogOutputs) {
+            teamBuildLogOutputs.computeIfAbsent(buildLogOutput.getTeamId(), key -> new ArrayList<>()).add(buildLogOutput);
+        }
 
-        for (int i = 0; i < states.size(); i++) {
-            JSONObject state = states.getJSONObject(i);
-            for (String key : state.keySet()) {
+        teamBuildLogOutputs.forEach((teamId, outputs) -> {
+            String[] topics = outputs.stream().map(output -> WebSocketTopicEnums.PROJECT.topic(output.getProjectId())).distinct().toArray(String[]::new);
+            webSocketService.sendMessage(teamId, WebSocketMessageTypeEnums.BUILD_PROJECT_PENDING_BATCH.value(), outputs, topics);
+        });
 
-                if (state.getString(key).contains("no such process")) {
-                    result.put(key, "NONE");
-                } else if (state.getString(key).contains("STOPPED")) {
-                    result.put(key, "STOPPED");
-                }
-            }
+        return buildLogOutputs;
+    }
+
+    private Long parseQueueId(String location) {
+
+        Pattern queueIdPattern = Pattern.compile(".*/queue/item/([0-9]+)");
+        Matcher queueIdMatcher = queueIdPattern.matcher(location);
+
+        if (queueIdMatcher.find() && queueIdMatcher.group(1) != null) {
+            return Long.parseLong(queueIdMatcher.group(1));
         }
 
-        return result;
+        return null;
     }
 
-    public HashMap restartProgram(Integer projectId, Integer envId) {
+    public HashMap checkProgram(Integer projectId, Integer envId) {
+
         Job job = jobDao.getDeployJobByProjectIdAndEnvId(projectId, envId);
-        Environment environment = environmentDao.getEnvironmentById(job.getEnvId());
-        List<Integer> serverIds = JSONObject.parseArray(job.getServerIds(), Integer.class);
-        String targetIps = serverDao.getServerIpsByIds(serverIds);
 
-        String command = String.format("supervisorctl restart %s", job.getJobName());
+        return programStatusService.getProgramStatus(job);
+    }
 
-        String response = saltStackUtil.callLocalSync(environment.getSaltHost(), environment.getSaltUser(), environment.getSaltPassword(), environment.getSaltVersion(), "cmd.run", targetIps, command);
-        JSONObject returnJson = JSONObject.parseObject(response);
-        JSONArray states = returnJson.getJSONArray("return");
-        HashMap<String, String> result = new HashMap<>();
+    public HashMap startProgram(Integer projectId, Integer envId) {
 
-        for (int i = 0; i < states.size(); i++) {
-            JSONObject state = states.getJSONObject(i);
-            for (String key : state.keySet()) {
+        return controlProgram(projectId, envId, "start");
+    }
 
-                if (state.getString(key).contains("no such process")) {
-                    result.put(key, "NONE");
-                } else if (state.getString(key).contains("STOPPED")) {
-                    result.put(key, "STOPPED");
-                }
-            }
-        }
-        return result;
+    public HashMap restartProgram(Integer projectId, Integer envId) {
+
+        return controlProgram(projectId, envId, "restart");
     }
 
     public HashMap stopProgram(Integer projectId, Integer envId) {
+
+        return controlProgram(projectId, envId, "stop");
+    }
+
+    private HashMap controlProgram(Integer projectId, Integer envId, String action) {
+
         Job job = jobDao.getDeployJobByProjectIdAndEnvId(projectId, envId);
         Environment environment = environmentDao.getEnvironmentById(job.getEnvId());
         List<Integer> serverIds = JSONObject.parseArray(job.getServerIds(), Integer.class);
         String targetIps = serverDao.getServerIpsByIds(serverIds);
 
-        String command = String.format("supervisorctl stop %s", job.getJobName());
+        String command = String.format("supervisorctl %s %s", action, job.getJobName());
+
+        String response = saltStackUtil.callLocalSync(environment, "cmd.run", targetIps, command);
+        programStatusService.invalidate(job.getEnvId());
 
-        String response = saltStackUtil.callLocalSync(environment.getSaltHost(), environment.getSaltUser(), environment.getSaltPassword(), environment.getSaltVersion(), "cmd.run", targetIps, command);
         JSONObject returnJson = JSONObject.parseObject(response);
         JSONArray states = returnJson.getJSONArray("return");
         HashMap<String, String> result = new HashMap<>();
@@ -369,12 +430,13 @@ public class JobService {
             for (String key : state.keySet()) {
 
                 if (state.getString(key).contains("no such process")) {
-                    result.put(key, "NONE");
+                    result.put(key, ProgramStatusService.STATE_NONE);
                 } else if (state.getString(key).contains("STOPPED")) {
-                    result.put(key, "STOPPED");
+                    result.put(key, ProgramStatusService.STATE_STOPPED);
                 }
             }
         }
+
         return result;
     }
 
@@ -443,10 +505,6 @@ public class JobService {
 
         log.info("操作{},目标{},conf{}", command, targetIps, conf);
 
-        HashMap programStates = checkProgram(deployJobInput.getProjectId(), deployJobInput.getEnvId());
-        String runCommand;
-        List<Future<String>> tasks = new ArrayList<>();
-
         DeployLog deployLog = new DeployLog();
         deployLog.setTeamId(job.getTeamId());
         deployLog.setJobId(job.getId());
@@ -456,128 +514,82 @@ public class JobService {
         deployLog.setVersion(version);
         deployLog.setProjectId(job.getProjectId());
         deployLog.setRemark(deployJobInput.getRemark());
-        deployLog.setStatus(1);
+        deployLog.setStatus(DeployJobStatusEnums.QUEUED.value());
         deployLog.setOperatorId(GuestUtil.getGuestId());
         deployLog.setOperatorName(GuestUtil.getName());
-        deployLog.setTotalTasks(tasks.size());
+        deployLog.setTotalTasks(deployNodes.length);
+        deployLog.setOwner(deploySchedulerService.getOwner());
         deployLogDao.createDeployLog(deployLog);
 
-        for (String deployNode : deployNodes) {
-            String nodeStatus = (String) programStates.get(deployNode);
-            if (nodeStatus == null || nodeStatus.equals("STOPPED")) {
-                runCommand = command + "&& supervisorctl reread && supervisorctl start " + slug;
-            } else if (nodeStatus.equals("NONE")) {
-                runCommand = command + "&& supervisorctl reread && supervisorctl update " + slug;
-            } else {
-                runCommand = command + "&& supervisorctl reread && supervisorctl restart " + slug;
-            }
-            runCommand = runCommand + " && echo $? ";
-            tasks.add(execDeployCommand(deployLog, environment, deployNode, runCommand));
-        }
-
-        while (true) {
-            Integer count = 0;
-            for (Future<String> task : tasks) {
-                if (task.isDone()) {
-                    count++;
+        String deployCommand = command;
+
+        // 程序状态在真正开始部署时再查询，排队期间可能有其他部署改变了程序状态
+        deploySchedulerService.submit(deployLog, environment, () -> {
+            HashMap programStates = checkProgram(job.getProjectId(), job.getEnvId());
+            Map<String, String> nodeCommands = new LinkedHashMap<>();
+
+            for (String deployNode : deployNodes) {
+                String nodeStatus = (String) programStates.get(deployNode);
+                String runCommand;
+                if (nodeStatus == null || nodeStatus.equals("STOPPED")) {
+                    runCommand = deployCommand + "&& supervisorctl reread && supervisorctl start " + slug;
+                } else if (nodeStatus.equals("NONE")) {
+                    runCommand = deployCommand + "&& supervisorctl reread && supervisorctl update " + slug;
+                } else {
+                    runCommand = deployCommand + "&& supervisorctl reread && supervisorctl restart " + slug;
                 }
+                nodeCommands.put(deployNode, runCommand + " && echo $? ");
             }
-            if (count.equals(tasks.size())) {
-                break;
-            }
-        }
 
-        log.info("结束了");
-//        log.info("部署日志:{}", response);
-//
-//        Integer success = 0;
-//        Integer total = 0;
-//
-//        if (!StringUtils.isEmpty(response)) {
-//            JSONObject returnJson = JSONObject.parseObject(response);
-//            JSONArray returnArray = returnJson.getJSONArray("return");
-//            JSONObject node = returnArray.getJSONObject(0);
-//            String[] target = targetIps.split(",");
-//
-//            for (int i = 0; i < target.length; i++) {
-//                String message = node.getString(target[i]);
-//                System.out.println(message);
-//                System.out.println(message.lastIndexOf("\n"));
-//                String status = message.substring(message.lastIndexOf("\n") + 1);
-//                log.info("status:{}", status);
-//
-//                if (status.equals("0")) {
-//                    success++;
-//                }
-//
-//                total++;
-//            }
-//        }
-//
-
-//        deployLog.setTeamId(job.getTeamId());
-//        deployLog.setJobId(job.getId());
-//        deployLog.setEnvId(environment.getId());
-//        deployLog.setBranch(deployJobInput.getBranch());
-//        deployLog.setTag(deployJobInput.getTag());
-//        deployLog.setVersion(version);
-//        deployLog.setProjectId(job.getProjectId());
-//        deployLog.setRemark(deployJobInput.getRemark());
-//        deployLog.setStatus(1);
-//        deployLog.setStatusText(success + "/" + total);
-//        deployLog.setOutput(response);
-//        deployLog.setOperatorId(GuestUtil.getGuestId());
-//        deployLog.setOperatorName(GuestUtil.getName());
-//        deployLogDao.createDeployLog(deployLog);
-
-        DeployLogOutput deployLogOutput = deployLogDao.getDeployLogOutputById(deployLog.getId());
-        String commitPath = gitlabUrl + String.format(gitlabCommitPath, deployLogOutput.getCommitPath() == null ? "" : deployLogOutput.getCommitPath(), deployLogOutput.getVersion());
-        String branchPath = gitlabUrl + String.format(gitlabBranchPath, deployLogOutput.getCommitPath() == null ? "" : deployLogOutput.getCommitPath(), deployLogOutput.getBranch());
+            deployLog.setStatus(DeployJobStatusEnums.DEPLOYING.value());
+            deployLogDao.updateDeployLogStatus(deployLog);
+            // 排队中的部署可能被替换或取消，开始执行时才记为项目的最近部署
+            updateProjectLastDeploy(deployLog.getProjectId(), deployLog.getBranch(), deployLog.getTag(), deployLog.getVersion());
+            webSocketService.sendMessage(deployLog.getTeamId(), WebSocketMessageTypeEnums.DEPLOY_PROJECT_START.value(), toDeployLogOutput(deployLog.getId(), targetIps),
+                    WebSocketTopicEnums.PROJECT.topic(deployLog.getProjectId()), WebSocketTopicEnums.ENV.topic(deployLog.getEnvId()));
 
-        deployLogOutput.setCommitPath(commitPath);
-        deployLogOutput.setBranchPath(branchPath);
-        deployLogOutput.setServerIds("[" + targetIps + "]");
+            return deployService.deploy(deployLog, environment, nodeCommands, job);
+        });
+
+        DeployLogOutput deployLogOutput = toDeployLogOutput(deployLog.getId(), targetIps);
 
         operationLogService.saveOperationLog(job.getTeamId(), ThreadLocalUtil.getGuest(), null, deployLog, "id", OperationTargetType.TYPE__DEPLOY_JOB);
         operationLogService.saveDynamic(ThreadLocalUtil.getGuest(), job.getTeamId(), null, job.getProjectId(), OperationTargetType.TYPE__DEPLOY_JOB, deployLogOutput);
 
-        updateProjectLastDeploy(job.getProjectId(), deployJobInput.getBranch(), deployJobInput.getTag(), version);
-        return new DeployLogOutput();
+        return deployLogOutput;
     }
 
-    @Async
-    public Future<String> execDeployCommand(DeployLog deployLog, Environment environment, String deployNode, String runCommand) {
+    private DeployLogOutput toDeployLogOutput(Integer deployLogId, String targetIps) {
 
+        DeployLogOutput deployLogOutput = deployLogDao.getDeployLogOutputById(deployLogId);
+        String commitPath = gitlabUrl + String.format(gitlabCommitPath, deployLogOutput.getCommitPath() == null ? "" : deployLogOutput.getCommitPath(), deployLogOutput.getVersion());
+        String branchPath = gitlabUrl + String.format(gitlabBranchPath, deployLogOutput.getCommitPath() == null ? "" : deployLogOutput.getCommitPath(), deployLogOutput.getBranch());
 
-        String response = saltStackUtil.callLocalSync(environment.getSaltHost(), environment.getSaltUser(), environment.getSaltPassword(), environment.getSaltVersion(), "cmd.run", deployNode, runCommand);
-        log.info("部署日志:{}", response);
-        DeployNodeLog deployNodeLog = new DeployNodeLog();
-        deployNodeLog.setDeployLogId(deployLog.getId());
-        deployNodeLog.setOutput(response);
-        deployNodeLogDao.createDeployNodeLog(deployNodeLog);
+        deployLogOutput.setCommitPath(commitPath);
+        deployLogOutput.setBranchPath(branchPath);
+        deployLogOutput.setServerIds("[" + targetIps + "]");
 
-        if (!StringUtils.isEmpty(response)) {
-            JSONObject returnJson = JSONObject.parseObject(response);
-            JSONArray returnArray = returnJson.getJSONArray("return");
-            JSONObject node = returnArray.getJSONObject(0);
+        return deployLogOutput;
+    }
 
-            String message = node.getString(deployNode);
-            if (message == null) {
-                throw new StatusException(NestStatusCode.DEPLOY_MESSAGE_IS_EMPTY);
-            }
-            System.out.println(message);
-            System.out.println(message.lastIndexOf("\n"));
-            String status = message.substring(message.lastIndexOf("\n") + 1);
-            log.info("status:{}", status);
+    public void resumeDeploy(Integer deployLogId) {
 
-            if (status.equals("0")) {
-                deployLogDao.incrementDeployLogSuccessTasks(deployLog.getId());
-            }
+        deployService.resumeDeploy(deployLogId);
+    }
+
+    public void abortDeploy(Integer deployLogId) {
+
+        if (deploySchedulerService.cancel(deployLogId)) {
+            return;
         }
 
-        return new AsyncResult<>("done");
+        deployService.abortDeploy(deployLogId);
     }
 
+    public DeployQueueOutput getDeployQueue() {
+
+        return deploySchedulerService.getQueueStats();
+    }
 
     public Map<String, Boolean> validateJobExist(Integer projectId, Integer type) {
 
@@ -617,13 +629,9 @@ public class JobService {
         return buildLogOutputs;
     }
 
-    public Map<String, Object> getDeployLogOutputTextById(Integer id) {
-
-        String output = buildLogDao.getDeployLogOutputTextById(id);
-        Map<String, Object> result = new HashMap<>();
-        result.put("output", output);
+    public LogRangeOutput getDeployLogOutputTextById(Integer id, String unit, Long offset, Integer limit, Boolean tail) {
 
-        return result;
+        return logStore.read(LogTypeEnums.BUILD.value(), id, unit, offset, limit, tail, buildLogDao.getDeployLogOutputTextById(id));
     }
 
     public BuildLogOutput getBuildRecentLog(Integer id) {
@@ -729,13 +737,14 @@ public class JobService {
         return getDeployLogOutput;
     }
 
-    public Map<String, Object> getDeployLogOutputText(Integer id) {
+    public LogRangeOutput getDeployLogOutputText(Integer id, String unit, Long offset, Integer limit, Boolean tail) {
 
-        String output = deployLogDao.getDeployLogOutputTextById(id);
-        Map<String, Object> result = new HashMap<>();
-        result.put("output", output);
+        return logStore.read(LogTypeEnums.DEPLOY.value(), id, unit, offset, limit, tail, deployLogDao.getDeployLogOutputTextById(id));
+    }
 
-        return result;
+    public byte[] getLogBlock(Integer id) {
+
+        return logStore.readCompressedBlock(id);
     }
 
 
@@ -858,73 +867,6 @@ public class JobService {
     }
 
 
-    public void buildJobQueued(String jobName, Integer queueId, Integer number, String jobUrl, String branch, String version) {
-
-        BuildLog buildLog = buildLogDao.getBuildLogByJobNameAndQueueId(jobName, queueId);
-
-        if (buildLog != null) {
-            buildLog.setLogUrl(jobUrl + "console");
-            buildLog.setStatus(BuildJobStatusEnums.QUEUEING.value());
-            buildLog.setNumber(number);
-            buildLog.setVersion(version);
-            buildLogDao.updateBuildLog(buildLog);
-
-            BuildLogOutput buildLogOutput = outputUtil.toBuildLogOutput(buildLog);
-            webSocketService.sendMessage(WebSocketMessageTypeEnums.BUILD_PROJECT_QUEUEING.value(), buildLogOutput);
-        }
-    }
-
-    public void buildJobStarted(String jobName, Integer queueId) {
-        BuildLog buildLog = buildLogDao.getBuildLogByJobNameAndQueueId(jobName, queueId);
-        if (buildLog != null) {
-            buildLog.setStatus(BuildJobStatusEnums.BUILDING.value());
-            buildLog.setBuildAt(System.currentTimeMillis() / 1000);
-            buildLogDao.updateBuildLog(buildLog);
-            BuildLogOutput buildLogOutput = outputUtil.toBuildLogOutput(buildLog);
-            webSocketService.sendMessage(WebSocketMessageTypeEnums.BUILD_PROJECT_START.value(), buildLogOutput);
-        }
-    }
-
-    public void buildJobFinalized(String jobName, Integer queueId, String status, String log) {
-
-        BuildLog buildLog = buildLogDao.getBuildLogByJobNameAndQueueId(jobName, queueId);
-
-        if (buildLog != null) {
-            buildLog.setDuration(System.currentTimeMillis() / 1000 - buildLog.getBuildAt());
-            if (status != null && status.equals("SUCCESS")) {
-                buildLog.setStatus(BuildJobStatusEnums.SUCCESS.value());
-                buildJobSuccess(buildLog, log);
-            } else {
-                buildLog.setStatus(BuildJobStatusEnums.FAILED.value());
-                buildLogDao.updateBuildLog(buildLog);
-            }
-            BuildLogOutput buildLogOutput = outputUtil.toBuildLogOutput(buildLog);
-            webSocketService.sendMessage(WebSocketMessageTypeEnums.BUILD_PROJECT_END.value(), buildLogOutput);
-        }
-    }
-
-    private void buildJobSuccess(BuildLog buildLog, String log) {
-
-
-        String tarName = log.substring(log.indexOf("tarNameStart") + 13, log.indexOf("tarNameEnd") - 1);
-        buildLog.setTarName(tarName);
-
-        if (buildLog.getTarName() == null || buildLog.getTarName().isEmpty()) {
-            buildLog.setStatus(BuildJobStatusEnums.PACKAGE_MISS.value());
-        }
-
-        buildLogDao.updateBuildLog(buildLog);
-        packageRepositoryService.createPackageRepository(buildLog);
-
-        updateProjectLastBuild(buildLog.getProjectId(), buildLog.getVersion());
-
-    }
-
-    private void updateProjectLastBuild(Integer projectId, String lastBuild) {
-
-        projectDao.updateLastBuild(projectId, lastBuild);
-    }
-
     private void updateProjectLastDeploy(Integer projectId, String branch, String tag, String version) {
 
         String lastDeploy = "";
@@ -366,9 +366,7 @@ public class MemberService {
         Team team = teamDao.getTeamById(createMemberTeamInput.getTeamId());
         Member operator = memberDao.getMemberByAccountId(guest.getId());
 
-        for (Map.Entry<String, Integer> entry : gitlabMember.entrySet()) {
-            gitlabApiUtil.addMember(team.getRepositoryId(), operator.getAccessToken(), entry.getKey(), entry.getValue(), RepositoryType.Group, memberName.get(entry.getKey()));
-        }
+        gitlabApiUtil.addMembers(team.getRepositoryId(), operator.getAccessToken(), gitlabMember, RepositoryType.Group, memberName);
 
         return memberOutputs;
     }
@@ -421,9 +419,7 @@ public class MemberService {
         Group group = groupDao.getGroupById(bindMemberGroupInput.getGroupId());
         Member operator = memberDao.getMemberByAccountId(guest.getId());
 
-        for (Map.Entry<String, Integer> entry : gitlabGroup.entrySet()) {
-            gitlabApiUtil.addMember(group.getRepositoryId(), operator.getAccessToken(), entry.getKey(), entry.getValue(), RepositoryType.SubGroup, null);
-        }
+        gitlabApiUtil.addMembers(group.getRepositoryId(), operator.getAccessToken(), gitlabGroup, RepositoryType.SubGroup, null);
     }
 
     @Transactional
@@ -473,10 +469,7 @@ public class MemberService {
         ProjectRepository projectRepository = projectRepositoryDao.getProjectRepositoryByProjectId(bindMemberProjectInput.getProjectId());
         Member operator = memberDao.getMemberByAccountId(guest.getId());
 
-        for (Map.Entry<String, Integer> entry : gitlabProject.entrySet()) {
-            gitlabApiUtil.addMember(projectRepository.getRepositoryId(), operator.getAccessToken(), entry.getKey(), entry.getValue(), RepositoryType.Project, null);
-        }
-
+        gitlabApiUtil.addMembers(projectRepository.getRepositoryId(), operator.getAccessToken(), gitlabProject, RepositoryType.Project, null);
     }
 
     public List<MemberRoleOutput> getMemberRoles(Integer type) {
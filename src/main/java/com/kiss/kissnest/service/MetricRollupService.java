@@ -0,0 +1,464 @@
+package com.kiss.kissnest.service;
+
+import com.kiss.kissnest.dao.EnvironmentDao;
+import com.kiss.kissnest.dao.ServerDao;
+import com.kiss.kissnest.dao.ServerMetricRollupDao;
+import com.kiss.kissnest.entity.Environment;
+import com.kiss.kissnest.entity.Server;
+import com.kiss.kissnest.entity.ServerMetricRollup;
+import com.kiss.kissnest.enums.RollupResolutionEnums;
+import com.kiss.kissnest.enums.ServerMetricEnums;
+import com.kiss.kissnest.output.MetricPointOutput;
+import com.kiss.kissnest.output.MetricSeriesOutput;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 监控数据汇总：上报的数据在内存中按 1 分钟、15 分钟、1 小时汇总为 min/max/avg/last，
+ * 时间段结束后每隔 flushMillis 批量写入 servermetricrollups 表，原始数据不入库，写入失败的时间段留到下次写入，停止时写入未结束的时间段；
+ * 各粒度的数据按各自的保留天数由后台任务分批删除
+ */
+@Service
+@Slf4j
+public class MetricRollupService {
+
+    private static final ServerMetricEnums[] METRICS = ServerMetricEnums.values();
+
+    private static final RollupResolutionEnums[] RESOLUTIONS = RollupResolutionEnums.values();
+
+    @Autowired
+    private ServerMetricRollupDao serverMetricRollupDao;
+
+    @Autowired
+    private EnvironmentDao environmentDao;
+
+    @Autowired
+    private ServerDao serverDao;
+
+    @Autowired
+    @Qualifier("monitorScheduler")
+    private ThreadPoolTaskScheduler monitorScheduler;
+
+    @Value("${monitor.rollup.flushMillis:60000}")
+    private Long flushMillis;
+
+    @Value("${monitor.rollup.batchSize:500}")
+    private Integer batchSize;
+
+    @Value("${monitor.rollup.purgeMillis:3600000}")
+    private Long purgeMillis;
+
+    @Value("${monitor.rollup.purgeBatchSize:10000}")
+    private Integer purgeBatchSize;
+
+    @Value("${monitor.rollup.retentionDays.minute:7}")
+    private Integer minuteRetentionDays;
+
+    @Value("${monitor.rollup.retentionDays.quarter:30}")
+    private Integer quarterRetentionDays;
+
+    @Value("${monitor.rollup.retentionDays.hour:365}")
+    private Integer hourRetentionDays;
+
+    @Value("${monitor.rollup.serverCacheSeconds:600}")
+    private Long serverCacheSeconds;
+
+    /**
+     * 环境路径 + 内网 ip -> 各粒度当前时间段的汇总，只在 compute 内修改
+     */
+    private final Map<String, ServerRollup> rollups = new ConcurrentHashMap<>();
+
+    /**
+     * 已结束、等待写入的时间段
+     */
+    private final Queue<ClosedBucket> closed = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 环境路径 + 内网 ip -> 服务器，找不到的服务器也缓存，避免每次写入都查询
+     */
+    private final Map<String, CachedServer> servers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+
+        monitorScheduler.scheduleWithFixedDelay(this::flush, flushMillis);
+        monitorScheduler.scheduleWithFixedDelay(this::purge, purgeMillis);
+    }
+
+    /**
+     * 未结束的时间段也一并写入，其他实例或重启后写入的同一时间段按唯一键合并
+     */
+    @PreDestroy
+    public void destroy() {
+
+        for (String key : new ArrayList<>(rollups.keySet())) {
+            rollups.computeIfPresent(key, (value, rollup) -> {
+                rollup.closeExpired(Long.MAX_VALUE, closed);
+                return null;
+            });
+        }
+
+        writeClosed();
+    }
+
+    /**
+     * @param sample 各指标的值，按 ServerMetricEnums 的顺序，NaN 表示缺失
+     */
+    public void add(String envPath, String innerIp, long time, float[] sample) {
+
+        rollups.compute(key(envPath, innerIp), (key, rollup) -> {
+            ServerRollup current = rollup == null ? new ServerRollup(envPath, innerIp) : rollup;
+            current.add(time, sample, closed);
+            return current;
+        });
+    }
+
+    /**
+     * 按 bucketAt 排列的汇总数据，每个指标一组
+     */
+    public List<MetricSeriesOutput> query(Integer serverId, RollupResolutionEnums resolution, List<ServerMetricEnums> metrics, long from, long to) {
+
+        Map<String, MetricSeriesOutput> metricSeriesOutputs = new LinkedHashMap<>();
+        List<String> metricValues = new ArrayList<>();
+
+        for (ServerMetricEnums metric : metrics) {
+            MetricSeriesOutput metricSeriesOutput = new MetricSeriesOutput();
+            metricSeriesOutput.setMetric(metric.value());
+            metricSeriesOutput.setPoints(new ArrayList<>());
+            metricSeriesOutputs.put(metric.value(), metricSeriesOutput);
+            metricValues.add(metric.value());
+        }
+
+        for (ServerMetricRollup rollup : serverMetricRollupDao.getServerMetricRollups(serverId, resolution.value(), metricValues, from, to)) {
+            MetricPointOutput metricPointOutput = new MetricPointOutput();
+            metricPointOutput.setTime(rollup.getBucketAt());
+            metricPointOutput.setMin(rollup.getMinValue());
+            metricPointOutput.setMax(rollup.getMaxValue());
+            metricPointOutput.setAvg(rollup.getAvgValue());
+            metricPointOutput.setLast(rollup.getLastValue());
+            metricSeriesOutputs.get(rollup.getMetric()).getPoints().add(metricPointOutput);
+        }
+
+        return new ArrayList<>(metricSeriesOutputs.values());
+    }
+
+    /**
+     * 结束已过期的时间段，已不再上报的服务器随之移除，然后分批写入
+     */
+    private void flush() {
+
+        long now = System.currentTimeMillis();
+
+        for (String key : new ArrayList<>(rollups.keySet())) {
+            rollups.computeIfPresent(key, (value, rollup) -> {
+                rollup.closeExpired(now, closed);
+                return rollup.isEmpty() ? null : rollup;
+            });
+        }
+
+        writeClosed();
+    }
+
+    /**
+     * 每批数据一条 insert 语句，写入失败时该批的时间段放回队列，下次写入时重试
+     */
+    private void writeClosed() {
+
+        List<ClosedBucket> buckets = new ArrayList<>();
+        List<ServerMetricRollup> rows = new ArrayList<>();
+
+        try {
+            ClosedBucket bucket;
+
+            while ((bucket = closed.poll()) != null) {
+                buckets.add(bucket);
+                Server server = getServer(bucket.envPath, bucket.innerIp);
+
+                if (server == null) {
+                    continue;
+                }
+
+                toRows(server, bucket, rows);
+
+                if (rows.size() >= batchSize) {
+                    serverMetricRollupDao.createServerMetricRollups(rows);
+                    buckets.clear();
+                    rows = new ArrayList<>();
+                }
+            }
+
+            if (!rows.isEmpty()) {
+                serverMetricRollupDao.createServerMetricRollups(rows);
+            }
+        } catch (Exception e) {
+            closed.addAll(buckets);
+            log.error("写入监控汇总数据异常,{}个时间段等待下次写入", buckets.size(), e);
+        }
+    }
+
+    private void purge() {
+
+        for (RollupResolutionEnums resolution : RESOLUTIONS) {
+            long before = System.currentTimeMillis() - getRetentionDays(resolution) * 86400000L;
+
+            try {
+                int deleted;
+                int total = 0;
+
+                do {
+                    deleted = serverMetricRollupDao.deleteServerMetricRollups(resolution.value(), before, purgeBatchSize);
+                    total += deleted;
+                } while (deleted >= purgeBatchSize);
+
+                if (total > 0) {
+                    log.info("清理{}秒粒度的监控汇总数据{}条", resolution.value(), total);
+                }
+            } catch (Exception e) {
+                log.error("清理{}秒粒度的监控汇总数据异常", resolution.value(), e);
+            }
+        }
+    }
+
+    private int getRetentionDays(RollupResolutionEnums resolution) {
+
+        switch (resolution) {
+            case MINUTE:
+                return minuteRetentionDays;
+            case QUARTER:
+                return quarterRetentionDays;
+            default:
+                return hourRetentionDays;
+        }
+    }
+
+    private void toRows(Server server, ClosedBucket bucket, List<ServerMetricRollup> rows) {
+
+        for (int i = 0; i < METRICS.length; i++) {
+            if (bucket.counts[i] == 0) {
+                continue;
+            }
+
+            ServerMetricRollup row = new ServerMetricRollup();
+            row.setTeamId(server.getTeamId());
+            row.setEnvId(server.getEnvId());
+            row.setServerId(server.getId());
+            row.setResolution(bucket.resolution.value());
+            row.setMetric(METRICS[i].value());
+            row.setBucketAt(bucket.start);
+            row.setMinValue(bucket.mins[i]);
+            row.setMaxValue(bucket.maxs[i]);
+            row.setAvgValue((float) (bucket.sums[i] / bucket.counts[i]));
+            row.setLastValue(bucket.lasts[i]);
+            row.setSampleCount(bucket.counts[i]);
+            rows.add(row);
+        }
+    }
+
+    private Server getServer(String envPath, String innerIp) {
+
+        String key = key(envPath, innerIp);
+        CachedServer cached = servers.get(key);
+        long now = System.currentTimeMillis();
+
+        if (cached != null && cached.expireAt > now) {
+            return cached.server;
+        }
+
+        Environment environment = environmentDao.getEnvironmentByPath(envPath);
+        Server server = environment == null ? null : serverDao.getServerByEnvIdAndInnerIp(environment.getId(), innerIp);
+
+        if (server == null) {
+            log.info("环境{}中没有服务器{},忽略其监控汇总数据", envPath, innerIp);
+        }
+
+        servers.put(key, new CachedServer(server, now + serverCacheSeconds * 1000));
+
+        return server;
+    }
+
+    private String key(String envPath, String innerIp) {
+
+        return envPath + "|" + innerIp;
+    }
+
+    private static class ServerRollup {
+
+        private final String envPath;
+
+        private final String innerIp;
+
+        private final Bucket[] buckets = new Bucket[RESOLUTIONS.length];
+
+        private ServerRollup(String envPath, String innerIp) {
+
+            this.envPath = envPath;
+            this.innerIp = innerIp;
+
+            for (int i = 0; i < RESOLUTIONS.length; i++) {
+                buckets[i] = new Bucket(RESOLUTIONS[i]);
+            }
+        }
+
+        private void add(long time, float[] sample, Queue<ClosedBucket> closed) {
+
+            for (Bucket bucket : buckets) {
+                long start = time - time % (bucket.resolution.value() * 1000L);
+
+                if (bucket.start != start) {
+                    if (bucket.hasData()) {
+                        closed.add(bucket.close(envPath, innerIp));
+                    }
+                    bucket.start = start;
+                }
+
+                bucket.add(sample);
+            }
+        }
+
+        private void closeExpired(long now, Queue<ClosedBucket> closed) {
+
+            for (Bucket bucket : buckets) {
+                if (bucket.hasData() && bucket.start + bucket.resolution.value() * 1000L <= now) {
+                    closed.add(bucket.close(envPath, innerIp));
+                }
+            }
+        }
+
+        private boolean isEmpty() {
+
+            for (Bucket bucket : buckets) {
+                if (bucket.hasData()) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * 一个粒度当前时间段的汇总，各指标的值保存在基本类型数组中
+     */
+    private static class Bucket {
+
+        private final RollupResolutionEnums resolution;
+
+        private long start = -1;
+
+        private float[] mins = new float[METRICS.length];
+
+        private float[] maxs = new float[METRICS.length];
+
+        private float[] lasts = new float[METRICS.length];
+
+        private double[] sums = new double[METRICS.length];
+
+        private int[] counts = new int[METRICS.length];
+
+        private int samples;
+
+        private Bucket(RollupResolutionEnums resolution) {
+            this.resolution = resolution;
+        }
+
+        private boolean hasData() {
+            return samples > 0;
+        }
+
+        private void add(float[] sample) {
+
+            for (int i = 0; i < METRICS.length; i++) {
+                float value = sample[i];
+
+                if (Float.isNaN(value)) {
+                    continue;
+                }
+
+                if (counts[i] == 0) {
+                    mins[i] = value;
+                    maxs[i] = value;
+                } else {
+                    mins[i] = Math.min(mins[i], value);
+                    maxs[i] = Math.max(maxs[i], value);
+                }
+
+                lasts[i] = value;
+                sums[i] += value;
+                counts[i]++;
+            }
+
+            samples++;
+        }
+
+        /**
+         * 交出当前的数组，换上新的数组继续汇总
+         */
+        private ClosedBucket close(String envPath, String innerIp) {
+
+            ClosedBucket closedBucket = new ClosedBucket(envPath, innerIp, resolution, start, mins, maxs, lasts, sums, counts);
+            mins = new float[METRICS.length];
+            maxs = new float[METRICS.length];
+            lasts = new float[METRICS.length];
+            sums = new double[METRICS.length];
+            counts = new int[METRICS.length];
+            samples = 0;
+
+            return closedBucket;
+        }
+    }
+
+    private static class ClosedBucket {
+
+        private final String envPath;
+
+        private final String innerIp;
+
+        private final RollupResolutionEnums resolution;
+
+        private final long start;
+
+        private final float[] mins;
+
+        private final float[] maxs;
+
+        private final float[] lasts;
+
+        private final double[] sums;
+
+        private final int[] counts;
+
+        private ClosedBucket(String envPath, String innerIp, RollupResolutionEnums resolution, long start, float[] mins, float[] maxs, float[] lasts, double[] sums, int[] counts) {
+            this.envPath = envPath;
+            this.innerIp = innerIp;
+            this.resolution = resolution;
+            this.start = start;
+            this.mins = mins;
+            this.maxs = maxs;
+            this.lasts = lasts;
+            this.sums = sums;
+            this.counts = counts;
+        }
+    }
+
+    private static class CachedServer {
+
+        private final Server server;
+
+        private final long expireAt;
+
+        private CachedServer(Server server, long expireAt) {
+            this.server = server;
+            this.expireAt = expireAt;
+        }
+    }
+}
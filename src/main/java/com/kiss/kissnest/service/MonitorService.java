@@ -2,17 +2,72 @@ package com.kiss.kissnest.service;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.kiss.foundation.exception.StatusException;
 import com.kiss.foundation.utils.CryptUtil;
+import com.kiss.kissnest.dao.EnvironmentDao;
+import com.kiss.kissnest.dao.ServerDao;
+import com.kiss.kissnest.entity.Environment;
+import com.kiss.kissnest.entity.Server;
+import com.kiss.kissnest.enums.RollupResolutionEnums;
+import com.kiss.kissnest.enums.ServerMetricEnums;
 import com.kiss.kissnest.enums.WebSocketMessageTypeEnums;
+import com.kiss.kissnest.enums.WebSocketTopicEnums;
 import com.kiss.kissnest.input.MonitorServerInput;
+import com.kiss.kissnest.output.MetricSeriesOutput;
+import com.kiss.kissnest.output.ServerMonitorBatchOutput;
 import com.kiss.kissnest.rabbitmq.RabbitAgent;
+import com.kiss.kissnest.status.NestStatusCode;
+import com.kiss.kissnest.util.MetricStore;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务器监控数据：每台服务器只保留两次推送之间的最新一份，按环境每隔 flushMillis 合并推送一帧，
+ * 只包含与上一帧相比有变化的服务器，开启 delta 时只推送变化的字段；
+ * 每一帧带上环境和其中各服务器的主题，只推送给订阅了这些主题的连接；
+ * 同时写入内存时序存储和汇总，用于查询服务器的历史监控数据。
+ * 上报可能到达任一实例：最新数据和有变化的服务器记录在 Redis，每个环境由持有 Redis 租约的一个实例推送，
+ * 与上一帧比较的基线只在该实例上，换实例推送时基线清空，第一帧推送完整数据
+ */
 @Service
+@Slf4j
 public class MonitorService {
 
+    private static final String FIELD_ENV_PATH = "envPath";
+
+    private static final String FIELD_INNER_IP = "innerIp";
+
+    /**
+     * 环境路径 -> 有新数据的服务器
+     */
+    private static final String DIRTY_PREFIX = "nest:monitor:dirty:";
+
+    /**
+     * 有上报的环境，score 为最近一次上报时间
+     */
+    private static final String ENVS_KEY = "nest:monitor:envs";
+
+    /**
+     * 环境路径 -> 负责推送的实例
+     */
+    private static final String OWNER_PREFIX = "nest:monitor:owner:";
+
     @Autowired
     private RedisTemplate<String, String> redisTemplate;
 
@@ -22,10 +77,357 @@ public class MonitorService {
     @Autowired
     private RabbitAgent rabbitAgent;
 
+    @Autowired
+    private EnvironmentDao environmentDao;
+
+    @Autowired
+    private ServerDao serverDao;
+
+    @Autowired
+    private MetricStore metricStore;
+
+    @Autowired
+    private MetricRollupService metricRollupService;
+
+    @Autowired
+    @Qualifier("monitorScheduler")
+    private ThreadPoolTaskScheduler monitorScheduler;
+
+    @Autowired
+    @Qualifier("webSocketScheduler")
+    private ThreadPoolTaskScheduler webSocketScheduler;
+
+    @Value("${monitor.websocket.flushMillis:2000}")
+    private Long flushMillis;
+
+    @Value("${monitor.websocket.delta:false}")
+    private Boolean delta;
+
+    @Value("${monitor.websocket.ownerLeaseMillis:10000}")
+    private Long ownerLeaseMillis;
+
+    @Value("${monitor.store.sweepMillis:600000}")
+    private Long sweepMillis;
+
+    @Value("${monitor.store.idleSeconds:86400}")
+    private Long idleSeconds;
+
+    @Value("${monitor.history.maxPoints:1000}")
+    private Integer maxPoints;
+
+    /**
+     * 环境路径 -> 环境
+     */
+    private final Map<String, Environment> environments = new ConcurrentHashMap<>();
+
+    /**
+     * 环境路径 -> (服务器 -> 本实例上一次推送的监控数据)，只包含本实例负责推送的环境
+     */
+    private final Map<String, Map<String, SentServer>> lastSent = new ConcurrentHashMap<>();
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @PostConstruct
+    public void init() {
+
+        webSocketScheduler.scheduleWithFixedDelay(this::flush, flushMillis);
+        monitorScheduler.scheduleWithFixedDelay(this::sweep, sweepMillis);
+    }
+
     public void cacheServerMonitorData(MonitorServerInput monitorServerInput) {
         String key = CryptUtil.md5(monitorServerInput.getEnvPath() + monitorServerInput.getInnerIp());
-        redisTemplate.opsForValue().set(key, JSON.toJSONString(monitorServerInput));
-        webSocketService.sendMessage(WebSocketMessageTypeEnums.SERVER_MONITOR_LOG.value(), monitorServerInput);
-        rabbitAgent.monitorLog(JSONObject.toJSONString(monitorServerInput));
+        String snapshot = JSON.toJSONString(monitorServerInput);
+        redisTemplate.opsForValue().set(key, snapshot);
+        long time = System.currentTimeMillis();
+        float[] sample = metricStore.append(monitorServerInput, time);
+
+        if (sample != null) {
+            metricRollupService.add(monitorServerInput.getEnvPath(), monitorServerInput.getInnerIp(), time, sample);
+        }
+
+        Environment environment = getEnvironment(monitorServerInput.getEnvPath());
+
+        if (environment != null) {
+            markDirty(monitorServerInput.getEnvPath(), key, time);
+        }
+
+        rabbitAgent.monitorLog(snapshot);
+    }
+
+    /**
+     * 服务器在 [from, to] 内的监控数据，每个指标最多 points 个点
+     *
+     * @param metrics 为空时返回全部指标
+     */
+    public List<MetricSeriesOutput> getServerHistory(Integer serverId, List<String> metrics, Long from, Long to, Integer points) {
+
+        Server server = serverDao.getServerById(serverId);
+
+        if (server == null) {
+            throw new StatusException(NestStatusCode.SERVER_NOT_EXIST);
+        }
+
+        Environment environment = environmentDao.getEnvironmentById(server.getEnvId());
+
+        if (environment == null) {
+            throw new StatusException(NestStatusCode.SERVER_ENVIRONMENT_NOT_EXIST);
+        }
+
+        return metricStore.query(environment.getPath(), server.getInnerIp(), toMetricEnums(metrics), from, to, Math.max(1, Math.min(points, maxPoints)));
+    }
+
+    /**
+     * 服务器在 [from, to] 内已入库的汇总数据，用于长时间范围的图表
+     *
+     * @param resolution 汇总粒度（秒），为空时选择点数不超过 maxPoints 的最细粒度
+     */
+    public List<MetricSeriesOutput> getServerRollups(Integer serverId, List<String> metrics, Integer resolution, Long from, Long to) {
+
+        if (serverDao.getServerById(serverId) == null) {
+            throw new StatusException(NestStatusCode.SERVER_NOT_EXIST);
+        }
+
+        RollupResolutionEnums resolutionEnum = resolution == null ? chooseResolution(from, to) : RollupResolutionEnums.getEnumByValue(resolution);
+
+        if (resolutionEnum == null) {
+            throw new StatusException(NestStatusCode.SERVER_MONITOR_RESOLUTION_NOT_EXIST);
+        }
+
+        return metricRollupService.query(serverId, resolutionEnum, toMetricEnums(metrics), from, to);
+    }
+
+    private RollupResolutionEnums chooseResolution(long from, long to) {
+
+        for (RollupResolutionEnums resolution : RollupResolutionEnums.values()) {
+            if ((to - from) / (resolution.value() * 1000L) <= maxPoints) {
+                return resolution;
+            }
+        }
+
+        return RollupResolutionEnums.HOUR;
+    }
+
+    /**
+     * 为空时返回全部指标
+     */
+    private List<ServerMetricEnums> toMetricEnums(List<String> metrics) {
+
+        if (metrics == null || metrics.isEmpty()) {
+            return Arrays.asList(ServerMetricEnums.values());
+        }
+
+        List<ServerMetricEnums> metricEnums = new ArrayList<>();
+
+        for (String metric : metrics) {
+            ServerMetricEnums metricEnum = ServerMetricEnums.getEnumByValue(metric);
+            if (metricEnum == null) {
+                throw new StatusException(NestStatusCode.SERVER_MONITOR_METRIC_NOT_EXIST);
+            }
+            metricEnums.add(metricEnum);
+        }
+
+        return metricEnums;
+    }
+
+    /**
+     * 记录有新数据的服务器和环境最近一次上报的时间
+     */
+    private void markDirty(String envPath, String key, long time) {
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+
+                RedisOperations<String, String> stringOperations = (RedisOperations<String, String>) operations;
+                stringOperations.opsForSet().add(DIRTY_PREFIX + envPath, key);
+                stringOperations.opsForZSet().add(ENVS_KEY, envPath, time);
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 每个环境最多推送一帧，帧数不随服务器数量增加；只推送本实例持有租约的环境
+     */
+    private void flush() {
+
+        try {
+            long now = System.currentTimeMillis();
+            Set<String> envPaths = redisTemplate.opsForZSet().rangeByScore(ENVS_KEY, now - idleSeconds * 1000, Double.POSITIVE_INFINITY);
+
+            if (envPaths == null) {
+                return;
+            }
+
+            for (String envPath : envPaths) {
+                Environment environment = getEnvironment(envPath);
+
+                if (environment != null && acquire(envPath)) {
+                    flush(envPath, environment, now);
+                }
+            }
+        } catch (Exception e) {
+            log.error("推送服务器监控数据异常", e);
+        }
+    }
+
+    private void flush(String envPath, Environment environment, long now) {
+
+        List<String> keys = new ArrayList<>(takeDirty(envPath));
+
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        List<String> snapshots = redisTemplate.opsForValue().multiGet(keys);
+        Map<String, SentServer> baseline = lastSent.computeIfAbsent(envPath, key -> new ConcurrentHashMap<>());
+        List<JSONObject> changed = new ArrayList<>();
+        List<String> topics = new ArrayList<>();
+        topics.add(WebSocketTopicEnums.ENV.topic(environment.getId()));
+
+        for (int i = 0; i < keys.size(); i++) {
+            String snapshot = snapshots == null ? null : snapshots.get(i);
+
+            if (snapshot == null) {
+                continue;
+            }
+
+            JSONObject server = JSONObject.parseObject(snapshot);
+            SentServer previous = baseline.put(keys.get(i), new SentServer(server, now));
+
+            if (previous != null && server.equals(previous.server)) {
+                continue;
+            }
+
+            changed.add(delta && previous != null ? diff(previous.server, server) : server);
+            topics.add(WebSocketTopicEnums.SERVER.topic(server.getString(FIELD_INNER_IP)));
+        }
+
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        ServerMonitorBatchOutput serverMonitorBatchOutput = new ServerMonitorBatchOutput();
+        serverMonitorBatchOutput.setDelta(delta);
+        serverMonitorBatchOutput.setServers(changed);
+        webSocketService.sendMessage(environment.getTeamId(), WebSocketMessageTypeEnums.SERVER_MONITOR_BATCH.value(), serverMonitorBatchOutput, topics.toArray(new String[0]));
+    }
+
+    /**
+     * 取走并清空环境中有新数据的服务器
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> takeDirty(String envPath) {
+
+        String key = DIRTY_PREFIX + envPath;
+        List<Object> results = redisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            public <K, V> List<Object> execute(RedisOperations<K, V> operations) {
+
+                RedisOperations<String, String> stringOperations = (RedisOperations<String, String>) operations;
+                stringOperations.multi();
+                stringOperations.opsForSet().members(key);
+                stringOperations.delete(key);
+
+                return stringOperations.exec();
+            }
+        });
+
+        return results == null || results.isEmpty() || results.get(0) == null ? Collections.emptySet() : (Set<String>) results.get(0);
+    }
+
+    /**
+     * 获取或续期环境的推送租约；新获得租约时清空基线，客户端的状态来自之前推送的实例
+     */
+    private boolean acquire(String envPath) {
+
+        String key = OWNER_PREFIX + envPath;
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] rawValue = instanceId.getBytes(StandardCharsets.UTF_8);
+        Boolean acquired = redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.set(rawKey, rawValue, Expiration.milliseconds(ownerLeaseMillis), RedisStringCommands.SetOption.ifAbsent()));
+
+        if (Boolean.TRUE.equals(acquired)) {
+            lastSent.remove(envPath);
+            return true;
+        }
+
+        if (instanceId.equals(redisTemplate.opsForValue().get(key))) {
+            redisTemplate.expire(key, ownerLeaseMillis, TimeUnit.MILLISECONDS);
+            return true;
+        }
+
+        lastSent.remove(envPath);
+
+        return false;
+    }
+
+    /**
+     * 清理时序存储，以及不再上报的环境和服务器的基线、环境缓存
+     */
+    private void sweep() {
+
+        metricStore.sweep();
+
+        try {
+            long before = System.currentTimeMillis() - idleSeconds * 1000;
+            redisTemplate.opsForZSet().removeRangeByScore(ENVS_KEY, Double.NEGATIVE_INFINITY, before);
+            Set<String> envPaths = redisTemplate.opsForZSet().rangeByScore(ENVS_KEY, before, Double.POSITIVE_INFINITY);
+
+            if (envPaths != null) {
+                environments.keySet().retainAll(envPaths);
+                lastSent.keySet().retainAll(envPaths);
+            }
+
+            for (Map<String, SentServer> baseline : lastSent.values()) {
+                baseline.values().removeIf(sent -> sent.sentAt < before);
+            }
+        } catch (Exception e) {
+            log.error("清理服务器监控推送基线异常", e);
+        }
+    }
+
+    /**
+     * 只保留变化的字段，envPath、innerIp 用来定位服务器，始终保留
+     */
+    private JSONObject diff(JSONObject previous, JSONObject server) {
+
+        JSONObject changed = new JSONObject();
+        changed.put(FIELD_ENV_PATH, server.get(FIELD_ENV_PATH));
+        changed.put(FIELD_INNER_IP, server.get(FIELD_INNER_IP));
+
+        for (Map.Entry<String, Object> field : server.entrySet()) {
+            if (!Objects.equals(field.getValue(), previous.get(field.getKey()))) {
+                changed.put(field.getKey(), field.getValue());
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * 环境不会在团队之间移动，路径对应的环境缓存后不再查询
+     */
+    private Environment getEnvironment(String envPath) {
+
+        if (envPath == null) {
+            return null;
+        }
+
+        return environments.computeIfAbsent(envPath, environmentDao::getEnvironmentByPath);
+    }
+
+    private static class SentServer {
+
+        private final JSONObject server;
+
+        private final long sentAt;
+
+        private SentServer(JSONObject server, long sentAt) {
+            this.server = server;
+            this.sentAt = sentAt;
+        }
     }
-}
\ No newline at end of file
+}
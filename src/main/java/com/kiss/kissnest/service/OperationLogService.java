@@ -178,6 +178,37 @@ public class OperationLogService {
         dynamicDao.createDynamic(dynamic);
     }
 
+    /**
+     * 代码推送、合并请求的动态，操作人为提交作者
+     */
+    public Dynamic toTrackDynamic(Track track) {
+
+        Integer targetType = track.getType() != null && track.getType() == 3 ? OperationTargetType.TYPE__MERGE_REQUEST : OperationTargetType.TYPE__PUSH_CODES;
+        String operatorName = track.getAuthorName() == null ? track.getAuthorEmail() : track.getAuthorName();
+
+        Dynamic dynamic = new Dynamic();
+        dynamic.setTeamId(track.getTeamId());
+        dynamic.setTargetType(targetType);
+        Map<String, Object> logMap = new HashMap<>();
+        logMap.put("operatorId", null);
+        logMap.put("operatorName", operatorName);
+        logMap.put("targetType", targetType);
+        logMap.put("name", track.getProjectName());
+        logMap.put("version", track.getHash());
+        logMap.put("createdAt", track.getOperatorAt() == null ? new Date().getTime() : track.getOperatorAt().getTime());
+        dynamic.setLog(JSON.toJSONString(logMap));
+        dynamic.setOperatorName(operatorName);
+
+        return dynamic;
+    }
+
+    public void saveDynamics(List<Dynamic> dynamics) {
+
+        if (!dynamics.isEmpty()) {
+            dynamicDao.createDynamics(dynamics);
+        }
+    }
+
     public List<OperationLogOutput> getOperationLogsByTeamId(Integer teamId) {
 
         List<OperationLog> operationLogs = operationLogDao.getOperationLogsByTeamId(teamId);
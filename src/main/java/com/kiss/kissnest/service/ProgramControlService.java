@@ -0,0 +1,256 @@
+package com.kiss.kissnest.service;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.kiss.foundation.exception.StatusException;
+import com.kiss.kissnest.dao.EnvironmentDao;
+import com.kiss.kissnest.dao.JobDao;
+import com.kiss.kissnest.dao.ServerDao;
+import com.kiss.kissnest.entity.Environment;
+import com.kiss.kissnest.entity.Job;
+import com.kiss.kissnest.entity.Server;
+import com.kiss.kissnest.input.BatchProgramInput;
+import com.kiss.kissnest.input.ProgramActionInput;
+import com.kiss.kissnest.status.NestStatusCode;
+import com.kiss.kissnest.util.SaltStackUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 批量程序控制：按 salt master 分组，同一 minion 上的多个 supervisorctl 命令合并为一条 cmd.run，
+ * 命令完全相同的 minion 再合并为一次调用
+ */
+@Service
+@Slf4j
+public class ProgramControlService {
+
+    private static final List<String> ACTIONS = Arrays.asList("start", "stop", "restart");
+
+    @Autowired
+    private JobDao jobDao;
+
+    @Autowired
+    private ServerDao serverDao;
+
+    @Autowired
+    private EnvironmentDao environmentDao;
+
+    @Autowired
+    private SaltStackUtil saltStackUtil;
+
+    @Autowired
+    private ProgramStatusService programStatusService;
+
+    @Autowired
+    @Qualifier("deployExecutor")
+    private ThreadPoolTaskExecutor deployExecutor;
+
+    /**
+     * @return 服务器 id -> 程序 -> 结果（RUNNING / STOPPED / NONE 或 supervisorctl 原始输出）；
+     * 不同 master 下的 minion id 可能相同，所以结果按服务器 id 返回
+     */
+    public Map<Integer, Map<String, String>> batchControlProgram(BatchProgramInput batchProgramInput) {
+
+        if (batchProgramInput == null || batchProgramInput.getPrograms() == null || batchProgramInput.getPrograms().isEmpty()) {
+            throw new StatusException(NestStatusCode.PROGRAM_LIST_IS_EMPTY);
+        }
+
+        Map<Integer, Environment> environments = new HashMap<>();
+        Map<Integer, List<Job>> envJobs = new HashMap<>();
+        List<ProgramTarget> targets = new ArrayList<>();
+        Set<Integer> serverIds = new HashSet<>();
+
+        for (ProgramActionInput programActionInput : batchProgramInput.getPrograms()) {
+            if (programActionInput == null) {
+                throw new StatusException(NestStatusCode.PROGRAM_LIST_IS_EMPTY);
+            }
+
+            String action = programActionInput.getAction();
+
+            if (!ACTIONS.contains(action)) {
+                throw new StatusException(NestStatusCode.PROGRAM_ACTION_ERROR);
+            }
+
+            Integer envId = programActionInput.getEnvId();
+            Environment environment = environments.computeIfAbsent(envId, key -> environmentDao.getEnvironmentById(key));
+            Job job = envJobs.computeIfAbsent(envId, key -> jobDao.getDeployJobsByEnvId(key)).stream()
+                    .filter(deployJob -> deployJob.getProjectId().equals(programActionInput.getProjectId()))
+                    .findFirst()
+                    .orElseThrow(() -> new StatusException(NestStatusCode.JOB_NOT_EXIST));
+            ProgramTarget target = new ProgramTarget();
+            target.environment = environment;
+            target.job = job;
+            target.action = action;
+            target.serverIds = JSONObject.parseArray(job.getServerIds(), Integer.class);
+
+            targets.add(target);
+            serverIds.addAll(target.serverIds);
+        }
+
+        Map<Integer, String> minions = new HashMap<>();
+
+        if (!serverIds.isEmpty()) {
+            for (Server server : serverDao.getServersByIds(new ArrayList<>(serverIds))) {
+                minions.put(server.getId(), SaltStackUtil.toMinionId(server.getInnerIp()));
+            }
+        }
+
+        // master -> minion -> 操作 -> 程序
+        Map<String, Environment> masters = new LinkedHashMap<>();
+        Map<String, Map<String, Map<String, List<String>>>> masterMinionActions = new LinkedHashMap<>();
+        // master -> minion -> 服务器 id
+        Map<String, Map<String, Set<Integer>>> masterMinionServers = new HashMap<>();
+
+        for (ProgramTarget target : targets) {
+            String masterKey = target.environment.getSaltHost() + "|" + target.environment.getSaltUser();
+            masters.putIfAbsent(masterKey, target.environment);
+
+            for (Integer serverId : target.serverIds) {
+                String minion = minions.get(serverId);
+                if (minion == null) {
+                    continue;
+                }
+                masterMinionActions.computeIfAbsent(masterKey, key -> new LinkedHashMap<>())
+                        .computeIfAbsent(minion, key -> new LinkedHashMap<>())
+                        .computeIfAbsent(target.action, key -> new ArrayList<>())
+                        .add(target.job.getJobName());
+                masterMinionServers.computeIfAbsent(masterKey, key -> new HashMap<>())
+                        .computeIfAbsent(minion, key -> new TreeSet<>())
+                        .add(serverId);
+            }
+        }
+
+        List<CompletableFuture<Map<Integer, Map<String, String>>>> calls = new ArrayList<>();
+
+        for (Map.Entry<String, Map<String, Map<String, List<String>>>> entry : masterMinionActions.entrySet()) {
+            Environment environment = masters.get(entry.getKey());
+            Map<String, Set<Integer>> minionServers = masterMinionServers.get(entry.getKey());
+            Map<String, List<String>> commandMinions = new LinkedHashMap<>();
+
+            for (Map.Entry<String, Map<String, List<String>>> minionActions : entry.getValue().entrySet()) {
+                commandMinions.computeIfAbsent(toCommand(minionActions.getValue()), key -> new ArrayList<>()).add(minionActions.getKey());
+            }
+
+            for (Map.Entry<String, List<String>> commandEntry : commandMinions.entrySet()) {
+                String command = commandEntry.getKey();
+                String nodes = String.join(",", commandEntry.getValue());
+                calls.add(CompletableFuture.supplyAsync(() -> toServerResults(parseResults(saltStackUtil.callLocalSync(environment, "cmd.run", nodes, command)), minionServers), deployExecutor));
+            }
+        }
+
+        Map<Integer, Map<String, String>> results = new TreeMap<>();
+
+        for (CompletableFuture<Map<Integer, Map<String, String>>> call : calls) {
+            call.join().forEach((serverId, programs) -> results.computeIfAbsent(serverId, key -> new TreeMap<>()).putAll(programs));
+        }
+
+        environments.keySet().forEach(programStatusService::invalidate);
+
+        return results;
+    }
+
+    /**
+     * 同一操作的程序合并为一条 supervisorctl，不同操作之间用 ; 分隔，前一条失败不影响后一条
+     */
+    private String toCommand(Map<String, List<String>> actions) {
+
+        List<String> commands = new ArrayList<>();
+
+        for (Map.Entry<String, List<String>> entry : actions.entrySet()) {
+            commands.add("supervisorctl " + entry.getKey() + " " + String.join(" ", entry.getValue()));
+        }
+
+        return String.join("; ", commands);
+    }
+
+    /**
+     * minion id 换算为该 master 下对应的服务器 id
+     */
+    private Map<Integer, Map<String, String>> toServerResults(Map<String, Map<String, String>> minionResults, Map<String, Set<Integer>> minionServers) {
+
+        Map<Integer, Map<String, String>> results = new HashMap<>();
+
+        for (Map.Entry<String, Map<String, String>> entry : minionResults.entrySet()) {
+            Set<Integer> serverIds = minionServers.get(entry.getKey());
+            if (serverIds == null) {
+                log.warn("minion {}不在本次操作的服务器中", entry.getKey());
+                continue;
+            }
+            for (Integer serverId : serverIds) {
+                results.put(serverId, entry.getValue());
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * supervisorctl 每行输出格式为 "程序名: 结果"，同一程序以最后一行为准（restart 会依次输出 stopped、started）
+     */
+    private Map<String, Map<String, String>> parseResults(String response) {
+
+        Map<String, Map<String, String>> results = new HashMap<>();
+
+        if (StringUtils.isEmpty(response)) {
+            return results;
+        }
+
+        JSONArray returnArray = JSONObject.parseObject(response).getJSONArray("return");
+
+        if (returnArray == null || returnArray.isEmpty()) {
+            return results;
+        }
+
+        JSONObject nodes = returnArray.getJSONObject(0);
+
+        for (String node : nodes.keySet()) {
+            Map<String, String> programs = new TreeMap<>();
+            String output = nodes.getString(node);
+
+            if (output != null) {
+                for (String line : output.split("\n")) {
+                    int index = line.indexOf(":");
+                    if (index <= 0) {
+                        continue;
+                    }
+                    programs.put(line.substring(0, index).trim(), toState(line.substring(index + 1).trim()));
+                }
+            }
+
+            results.put(node, programs);
+        }
+
+        return results;
+    }
+
+    private String toState(String message) {
+
+        if (message.contains("no such process")) {
+            return ProgramStatusService.STATE_NONE;
+        } else if (message.contains("started")) {
+            return ProgramStatusService.STATE_RUNNING;
+        } else if (message.contains("stopped") || message.contains("not running")) {
+            return ProgramStatusService.STATE_STOPPED;
+        }
+
+        return message;
+    }
+
+    private static class ProgramTarget {
+
+        private Environment environment;
+
+        private Job job;
+
+        private String action;
+
+        private List<Integer> serverIds;
+    }
+}
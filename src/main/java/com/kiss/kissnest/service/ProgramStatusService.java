@@ -0,0 +1,202 @@
+package com.kiss.kissnest.service;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.kiss.kissnest.dao.EnvironmentDao;
+import com.kiss.kissnest.dao.JobDao;
+import com.kiss.kissnest.dao.ServerDao;
+import com.kiss.kissnest.entity.Environment;
+import com.kiss.kissnest.entity.Job;
+import com.kiss.kissnest.util.SaltStackUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * supervisor 程序状态缓存：每个环境一次 salt 调用（supervisorctl status）取回该环境所有部署任务节点上的全部程序状态，
+ * 短时间内的状态查询直接读内存；启动、停止、重启、部署后使该环境的缓存失效
+ */
+@Service
+@Slf4j
+public class ProgramStatusService {
+
+    public static final String STATE_RUNNING = "RUNNING";
+
+    public static final String STATE_STOPPED = "STOPPED";
+
+    public static final String STATE_NONE = "NONE";
+
+    @Autowired
+    private JobDao jobDao;
+
+    @Autowired
+    private ServerDao serverDao;
+
+    @Autowired
+    private EnvironmentDao environmentDao;
+
+    @Autowired
+    private SaltStackUtil saltStackUtil;
+
+    @Value("${program.status.ttlSeconds:10}")
+    private Long ttlSeconds;
+
+    private final Map<Integer, EnvProgramStatus> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * @return 节点 -> RUNNING / STOPPED / NONE，没有返回结果的节点不包含在内
+     */
+    public HashMap<String, String> getProgramStatus(Job job) {
+
+        Map<String, Map<String, String>> nodes = getSnapshot(job.getEnvId());
+        List<Integer> serverIds = JSONObject.parseArray(job.getServerIds(), Integer.class);
+        String targetIps = serverDao.getServerIpsByIds(serverIds);
+        HashMap<String, String> result = new HashMap<>();
+
+        if (StringUtils.isEmpty(targetIps)) {
+            return result;
+        }
+
+        for (String node : targetIps.split(",")) {
+            Map<String, String> programs = nodes.get(node);
+
+            if (programs == null) {
+                continue;
+            }
+
+            String state = programs.get(job.getJobName());
+
+            if (state == null) {
+                result.put(node, STATE_NONE);
+            } else if (state.equals(STATE_STOPPED) || state.equals(STATE_RUNNING)) {
+                result.put(node, state);
+            }
+        }
+
+        return result;
+    }
+
+    public void invalidate(Integer envId) {
+
+        EnvProgramStatus snapshot = snapshots.get(envId);
+
+        if (snapshot != null) {
+            snapshot.version.incrementAndGet();
+            snapshot.expireAt = 0;
+        }
+    }
+
+    /**
+     * 同一环境的并发查询只会触发一次刷新；salt 调用失败时本次返回空结果，不进入缓存，下一次查询重新调用
+     */
+    private Map<String, Map<String, String>> getSnapshot(Integer envId) {
+
+        EnvProgramStatus snapshot = snapshots.computeIfAbsent(envId, key -> new EnvProgramStatus());
+
+        synchronized (snapshot) {
+            if (System.currentTimeMillis() < snapshot.expireAt) {
+                return snapshot.nodes;
+            }
+
+            int version = snapshot.version.get();
+            Map<String, Map<String, String>> nodes = loadEnvProgramStatus(envId);
+
+            if (nodes == null) {
+                log.warn("查询环境{}的程序状态失败", envId);
+                return Collections.emptyMap();
+            }
+
+            snapshot.nodes = nodes;
+
+            // 刷新期间被失效的结果只使用一次，不进入缓存
+            if (version == snapshot.version.get()) {
+                snapshot.expireAt = System.currentTimeMillis() + ttlSeconds * 1000;
+            }
+
+            return nodes;
+        }
+    }
+
+    /**
+     * salt 调用失败或没有返回结果时返回 null
+     */
+    private Map<String, Map<String, String>> loadEnvProgramStatus(Integer envId) {
+
+        Set<Integer> serverIds = new HashSet<>();
+
+        for (Job job : jobDao.getDeployJobsByEnvId(envId)) {
+            if (!StringUtils.isEmpty(job.getServerIds())) {
+                serverIds.addAll(JSONObject.parseArray(job.getServerIds(), Integer.class));
+            }
+        }
+
+        if (serverIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Environment environment = environmentDao.getEnvironmentById(envId);
+        String targetIps = serverDao.getServerIpsByIds(new ArrayList<>(serverIds));
+        String response = saltStackUtil.callLocalSync(environment, "cmd.run", targetIps, "supervisorctl status");
+
+        return parseSupervisorStatus(response);
+    }
+
+    /**
+     * supervisorctl status 每行格式为：程序名 状态 描述；salt 没有返回任何节点时返回 null
+     */
+    private Map<String, Map<String, String>> parseSupervisorStatus(String response) {
+
+        if (StringUtils.isEmpty(response)) {
+            return null;
+        }
+
+        JSONArray returnArray;
+
+        try {
+            returnArray = JSONObject.parseObject(response).getJSONArray("return");
+        } catch (Exception e) {
+            log.warn("解析程序状态失败:{}", response, e);
+            return null;
+        }
+
+        if (returnArray == null || returnArray.isEmpty() || returnArray.getJSONObject(0) == null || returnArray.getJSONObject(0).isEmpty()) {
+            return null;
+        }
+
+        Map<String, Map<String, String>> nodes = new HashMap<>();
+        JSONObject result = returnArray.getJSONObject(0);
+
+        for (String node : result.keySet()) {
+            Map<String, String> programs = new HashMap<>();
+            String output = result.getString(node);
+
+            if (output != null) {
+                for (String line : output.split("\n")) {
+                    String[] columns = line.trim().split("\\s+");
+                    if (columns.length >= 2) {
+                        programs.put(columns[0], columns[1]);
+                    }
+                }
+            }
+
+            nodes.put(node, programs);
+        }
+
+        return nodes;
+    }
+
+    private static class EnvProgramStatus {
+
+        private volatile Map<String, Map<String, String>> nodes = Collections.emptyMap();
+
+        private volatile long expireAt;
+
+        private final AtomicInteger version = new AtomicInteger();
+    }
+}
@@ -78,6 +78,9 @@ public class ProjectService {
     @Autowired
     private MemberProjectDao memberProjectDao;
 
+    @Autowired
+    private RepositoryRefCacheService repositoryRefCacheService;
+
     public ProjectOutput createProject(CreateProjectInput createProjectInput) {
 
         Project project = BeanCopyUtil.copy(createProjectInput, Project.class);
@@ -235,20 +238,8 @@ public class ProjectService {
         }
 
         String accessToken = memberDao.getAccessTokenByAccountId(ThreadLocalUtil.getGuest().getId());
-        List<GitlabBranch> gitlabBranches = gitlabApiUtil.getBranches(projectRepository.getRepositoryId(), accessToken);
-        List<String> branches = new ArrayList<>();
-
-        if (gitlabBranches != null) {
 
-            for (GitlabBranch gitlabBranch : gitlabBranches) {
-
-                if (!StringUtils.isEmpty(gitlabBranch.getName())) {
-                    branches.add(gitlabBranch.getName());
-                }
-            }
-        }
-
-        return branches;
+        return repositoryRefCacheService.getBranches(projectRepository.getRepositoryId(), accessToken);
     }
 
     public List<TagOutput> getProjectTags(Integer projectId) {
@@ -260,32 +251,8 @@ public class ProjectService {
         }
 
         String accessToken = memberDao.getAccessTokenByAccountId(ThreadLocalUtil.getGuest().getId());
-        List<GitlabTag> gitlabTags = gitlabApiUtil.getTags(projectRepository.getRepositoryId(), accessToken);
-        List<TagOutput> branches = new ArrayList<>();
-
-        if (gitlabTags != null) {
-
-            for (GitlabTag gitlabTag : gitlabTags) {
-
-                if (!StringUtils.isEmpty(gitlabTag.getName())) {
-                    TagOutput tagOutput = new TagOutput();
-                    GitlabBranchCommit gitlabBranchCommit = gitlabTag.getCommit();
-                    // @TODO 为啥打了版本了 Release 还会为 null 呢
-                    // GitlabRelease gitlabRelease = gitlabTag.getRelease();
-
-                    tagOutput.setTagName(gitlabTag.getName());
-                    tagOutput.setDescription(gitlabTag.getMessage());
-                    tagOutput.setMessage(gitlabTag.getMessage());
-                    tagOutput.setCreatedAt(gitlabBranchCommit.getCommittedDate().getTime());
-
-
-                    branches.add(tagOutput);
-                }
-            }
-        }
 
-        log.info("gitlabTags：" + gitlabTags);
-        return branches;
+        return repositoryRefCacheService.getTags(projectRepository.getRepositoryId(), accessToken);
     }
 
     public List<ProjectOutput> getProjectsWithoutBuildJob(Integer teamId) {
@@ -355,6 +322,7 @@ public class ProjectService {
         tagOutput.setDescription(gitlabRelease.getDescription());
         tagOutput.setMessage(gitlabTag.getMessage());
         tagOutput.setCreatedAt(gitlabBranchCommit.getCommittedDate().getTime());
+        repositoryRefCacheService.putTag(repositoryId, tagOutput);
 
         return tagOutput;
     }
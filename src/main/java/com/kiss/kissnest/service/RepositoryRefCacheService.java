@@ -0,0 +1,327 @@
+package com.kiss.kissnest.service;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.kiss.kissnest.output.TagOutput;
+import com.kiss.kissnest.util.GitlabApiUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.gitlab.api.models.GitlabBranch;
+import org.gitlab.api.models.GitlabBranchCommit;
+import org.gitlab.api.models.GitlabTag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 仓库分支、tag 缓存：每个仓库第一次访问时从 GitLab 全量加载，之后根据 push、tag_push 事件增量更新；
+ * 超过 refreshSeconds 未全量加载的仓库在下次访问时重新加载，用来修正丢失的 webhook。
+ * 缓存在每个实例的内存中，webhook 只到达其中一个实例：收到事件的实例在 Redis 频道上发布 ref 的变化（ref、before、after、tag 信息），
+ * 每个实例按同样的方式更新自己的缓存；消息丢失或乱序时由 refreshSeconds 的全量加载修正
+ */
+@Service
+@Slf4j
+public class RepositoryRefCacheService {
+
+    private static final String EMPTY_SHA = "0000000000000000000000000000000000000000";
+
+    private static final String BRANCH_PREFIX = "refs/heads/";
+
+    private static final String TAG_PREFIX = "refs/tags/";
+
+    private static final String CHANNEL = "nest:gitlab:refs";
+
+    @Autowired
+    private GitlabApiUtil gitlabApiUtil;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${gitlab.refCache.refreshSeconds:3600}")
+    private Long refreshSeconds;
+
+    /**
+     * GitLab 仓库 id -> 分支、tag
+     */
+    private final Map<Integer, RepositoryRefs> repositories = new ConcurrentHashMap<>();
+
+    /**
+     * 区分本实例发布的消息，本实例在发布前已经更新过缓存
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @PostConstruct
+    public void init() {
+
+        redisMessageListenerContainer.addMessageListener(this::onDelta, new ChannelTopic(CHANNEL));
+    }
+
+    public List<String> getBranches(Integer repositoryId, String accessToken) {
+
+        RepositoryRefs refs = getRefs(repositoryId);
+
+        synchronized (refs) {
+            if (!loadBranches(refs, repositoryId, accessToken)) {
+                return new ArrayList<>();
+            }
+            return new ArrayList<>(refs.branches);
+        }
+    }
+
+    /**
+     * 分支数量，仓库已加载时不访问 GitLab；加载失败返回 null
+     */
+    public Integer getBranchCount(Integer repositoryId, String accessToken) {
+
+        RepositoryRefs refs = getRefs(repositoryId);
+
+        synchronized (refs) {
+            return loadBranches(refs, repositoryId, accessToken) ? refs.branches.size() : null;
+        }
+    }
+
+    /**
+     * tag 按创建时间倒序
+     */
+    public List<TagOutput> getTags(Integer repositoryId, String accessToken) {
+
+        RepositoryRefs refs = getRefs(repositoryId);
+        List<TagOutput> tagOutputs;
+
+        synchronized (refs) {
+            if (!loadTags(refs, repositoryId, accessToken)) {
+                return new ArrayList<>();
+            }
+            tagOutputs = new ArrayList<>(refs.tags.values());
+        }
+
+        tagOutputs.sort(Comparator.comparing(TagOutput::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder())));
+
+        return tagOutputs;
+    }
+
+    /**
+     * 通过 release 创建的 tag，覆盖缓存中同名的 tag
+     */
+    public void putTag(Integer repositoryId, TagOutput tagOutput) {
+
+        JSONObject delta = new JSONObject();
+        delta.put("repositoryId", repositoryId);
+        delta.put("ref", TAG_PREFIX + tagOutput.getTagName());
+        delta.put("before", EMPTY_SHA);
+        delta.put("message", tagOutput.getMessage());
+        delta.put("description", tagOutput.getDescription());
+        delta.put("createdAt", tagOutput.getCreatedAt());
+        delta.put("replace", true);
+
+        applyDelta(delta);
+        publishDelta(delta);
+    }
+
+    /**
+     * 应用 push、tag_push 事件并发布给其他实例
+     */
+    public void apply(JSONObject hookJson) {
+
+        JSONObject projectJson = hookJson.getJSONObject("project");
+        Integer repositoryId = projectJson == null ? hookJson.getInteger("project_id") : projectJson.getInteger("id");
+        String ref = hookJson.getString("ref");
+
+        if (repositoryId == null || StringUtils.isEmpty(ref)) {
+            return;
+        }
+
+        JSONObject delta = new JSONObject();
+        delta.put("repositoryId", repositoryId);
+        delta.put("ref", ref);
+        delta.put("before", hookJson.getString("before"));
+        delta.put("after", hookJson.getString("after"));
+        delta.put("message", toTagMessage(hookJson));
+        delta.put("createdAt", System.currentTimeMillis());
+        delta.put("replace", false);
+
+        applyDelta(delta);
+        publishDelta(delta);
+    }
+
+    /**
+     * after 为全 0 表示删除；replace 为 false 时已存在的 tag 保留原来的信息。
+     * 仓库还没有加载过时忽略，下次访问时全量加载即可
+     */
+    private void applyDelta(JSONObject delta) {
+
+        Integer repositoryId = delta.getInteger("repositoryId");
+        String ref = delta.getString("ref");
+        RepositoryRefs refs = repositoryId == null || ref == null ? null : repositories.get(repositoryId);
+
+        if (refs == null) {
+            return;
+        }
+
+        boolean deleted = EMPTY_SHA.equals(delta.getString("after"));
+
+        synchronized (refs) {
+            if (ref.startsWith(BRANCH_PREFIX) && refs.branchesLoadedAt > 0) {
+                String branch = ref.substring(BRANCH_PREFIX.length());
+                if (deleted) {
+                    refs.branches.remove(branch);
+                } else {
+                    refs.branches.add(branch);
+                }
+            } else if (ref.startsWith(TAG_PREFIX) && refs.tagsLoadedAt > 0) {
+                String tagName = ref.substring(TAG_PREFIX.length());
+                if (deleted) {
+                    refs.tags.remove(tagName);
+                } else if (delta.getBooleanValue("replace") || !refs.tags.containsKey(tagName)) {
+                    refs.tags.put(tagName, toTagOutput(tagName, delta));
+                }
+            }
+        }
+    }
+
+    /**
+     * 发布失败时其他实例的缓存最迟在 refreshSeconds 后重新加载
+     */
+    private void publishDelta(JSONObject delta) {
+
+        delta.put("instanceId", instanceId);
+
+        try {
+            redisTemplate.convertAndSend(CHANNEL, delta.toJSONString());
+        } catch (Exception e) {
+            log.warn("发布仓库{}的 ref 变化失败", delta.getInteger("repositoryId"), e);
+        }
+    }
+
+    private void onDelta(Message message, byte[] pattern) {
+
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+
+        try {
+            JSONObject delta = JSONObject.parseObject(body);
+            if (delta != null && !instanceId.equals(delta.getString("instanceId"))) {
+                applyDelta(delta);
+            }
+        } catch (Exception e) {
+            log.warn("仓库 ref 变化消息格式错误:{}", body, e);
+        }
+    }
+
+    private RepositoryRefs getRefs(Integer repositoryId) {
+
+        return repositories.computeIfAbsent(repositoryId, key -> new RepositoryRefs());
+    }
+
+    private boolean loadBranches(RepositoryRefs refs, Integer repositoryId, String accessToken) {
+
+        if (!expired(refs.branchesLoadedAt)) {
+            return true;
+        }
+
+        List<GitlabBranch> gitlabBranches = gitlabApiUtil.getBranches(repositoryId, accessToken);
+
+        if (gitlabBranches == null) {
+            return refs.branchesLoadedAt > 0;
+        }
+
+        refs.branches.clear();
+
+        for (GitlabBranch gitlabBranch : gitlabBranches) {
+            if (!StringUtils.isEmpty(gitlabBranch.getName())) {
+                refs.branches.add(gitlabBranch.getName());
+            }
+        }
+
+        refs.branchesLoadedAt = System.currentTimeMillis();
+
+        return true;
+    }
+
+    private boolean loadTags(RepositoryRefs refs, Integer repositoryId, String accessToken) {
+
+        if (!expired(refs.tagsLoadedAt)) {
+            return true;
+        }
+
+        List<GitlabTag> gitlabTags = gitlabApiUtil.getTags(repositoryId, accessToken);
+
+        if (gitlabTags == null) {
+            return refs.tagsLoadedAt > 0;
+        }
+
+        refs.tags.clear();
+
+        for (GitlabTag gitlabTag : gitlabTags) {
+            if (!StringUtils.isEmpty(gitlabTag.getName())) {
+                TagOutput tagOutput = new TagOutput();
+                GitlabBranchCommit gitlabBranchCommit = gitlabTag.getCommit();
+                tagOutput.setTagName(gitlabTag.getName());
+                tagOutput.setDescription(gitlabTag.getMessage());
+                tagOutput.setMessage(gitlabTag.getMessage());
+                tagOutput.setCreatedAt(gitlabBranchCommit == null || gitlabBranchCommit.getCommittedDate() == null ? null : gitlabBranchCommit.getCommittedDate().getTime());
+                refs.tags.put(tagOutput.getTagName(), tagOutput);
+            }
+        }
+
+        refs.tagsLoadedAt = System.currentTimeMillis();
+
+        return true;
+    }
+
+    private boolean expired(long loadedAt) {
+
+        return loadedAt == 0 || System.currentTimeMillis() - loadedAt > refreshSeconds * 1000;
+    }
+
+    /**
+     * tag 的说明，没有时使用第一个提交的说明
+     */
+    private String toTagMessage(JSONObject hookJson) {
+
+        String message = hookJson.getString("message");
+        JSONArray commits = hookJson.getJSONArray("commits");
+
+        if (StringUtils.isEmpty(message) && commits != null && !commits.isEmpty()) {
+            message = commits.getJSONObject(0).getString("message");
+        }
+
+        return message;
+    }
+
+    /**
+     * tag_push 事件中没有 tag 本身的时间，使用事件到达的时间
+     */
+    private TagOutput toTagOutput(String tagName, JSONObject delta) {
+
+        TagOutput tagOutput = new TagOutput();
+        tagOutput.setTagName(tagName);
+        tagOutput.setMessage(delta.getString("message"));
+        tagOutput.setDescription(delta.containsKey("description") ? delta.getString("description") : delta.getString("message"));
+        tagOutput.setCreatedAt(delta.getLong("createdAt"));
+
+        return tagOutput;
+    }
+
+    private static class RepositoryRefs {
+
+        private final Set<String> branches = new TreeSet<>();
+
+        private final Map<String, TagOutput> tags = new HashMap<>();
+
+        private long branchesLoadedAt;
+
+        private long tagsLoadedAt;
+    }
+}
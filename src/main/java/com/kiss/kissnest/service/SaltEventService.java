@@ -0,0 +1,354 @@
+package com.kiss.kissnest.service;
+
+import com.alibaba.fastjson.JSONObject;
+import com.kiss.kissnest.entity.DeployLog;
+import com.kiss.kissnest.entity.Environment;
+import com.kiss.kissnest.enums.DeployJobStatusEnums;
+import com.kiss.kissnest.enums.WebSocketMessageTypeEnums;
+import com.kiss.kissnest.enums.WebSocketTopicEnums;
+import com.kiss.kissnest.output.DeployNodeOutput;
+import com.kiss.kissnest.util.SaltSessionManager;
+import com.kiss.kissnest.util.SaltStackUtil;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 订阅 salt-api 的 /events 事件流，把 Nest 发起的 job 的 salt/job/&lt;jid&gt;/ret/&lt;minion&gt; 事件实时推送给 WebSocket 客户端。
+ * 每个 salt master 一条长连接，只在有在途 job 或正在提交的 job 时保持；
+ * jid 在 local_async 返回后才知道，提交期间收到的未知 jid 的返回事件暂存 bufferMillis，注册 jid 时补发
+ */
+@Service
+@Slf4j
+public class SaltEventService {
+
+    private static final String JOB_RETURN_TAG_PREFIX = "salt/job/";
+
+    private static final String JOB_RETURN_TAG_INFIX = "/ret/";
+
+    @Autowired
+    private SaltSessionManager saltSessionManager;
+
+    @Autowired
+    private WebSocketService webSocketService;
+
+    @Value("${salt.event.reconnectMillis:3000}")
+    private Long reconnectMillis;
+
+    @Value("${salt.event.bufferMillis:30000}")
+    private Long bufferMillis;
+
+    @Value("${salt.event.bufferSize:1000}")
+    private Integer bufferSize;
+
+    @Value("${salt.event.readTimeoutSeconds:60}")
+    private Long readTimeoutSeconds;
+
+    /**
+     * jid -> 部署日志
+     */
+    private final Map<String, DeployLog> watchedJobs = new ConcurrentHashMap<>();
+
+    /**
+     * jid -> saltHost|saltUser
+     */
+    private final Map<String, String> watchedJobMasters = new ConcurrentHashMap<>();
+
+    /**
+     * saltHost|saltUser -> 在途 job 数，与 watchedJobMasters 一起修改
+     */
+    private final Map<String, Integer> watchedCounts = new ConcurrentHashMap<>();
+
+    /**
+     * saltHost|saltUser -> 事件流订阅
+     */
+    private final Map<String, EventSubscriber> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * saltHost|saltUser -> 正在提交的 job 数
+     */
+    private final Map<String, Integer> submitting = new ConcurrentHashMap<>();
+
+    /**
+     * 尚未注册的 jid 的返回事件，按到达顺序，只在持有锁时访问
+     */
+    private final LinkedList<BufferedEvent> unmatchedEvents = new LinkedList<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * 提交 job 前调用，保证提交期间事件流已连接；提交结束后无论成功与否都要调用 endSubmit
+     */
+    public void beginSubmit(Environment environment) {
+
+        submitting.merge(masterKey(environment), 1, Integer::sum);
+        ensureSubscriber(environment);
+    }
+
+    public void endSubmit(Environment environment) {
+
+        submitting.computeIfPresent(masterKey(environment), (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * 注册 jid，并补发提交期间已经到达的返回事件
+     */
+    public void watch(Environment environment, String jid, DeployLog deployLog) {
+
+        List<JSONObject> buffered = new ArrayList<>();
+        String key = masterKey(environment);
+
+        synchronized (unmatchedEvents) {
+            if (watchedJobMasters.put(jid, key) == null) {
+                watchedCounts.merge(key, 1, Integer::sum);
+            }
+            watchedJobs.put(jid, deployLog);
+
+            Iterator<BufferedEvent> iterator = unmatchedEvents.iterator();
+            while (iterator.hasNext()) {
+                BufferedEvent event = iterator.next();
+                if (jid.equals(event.jid)) {
+                    buffered.add(event.body);
+                    iterator.remove();
+                }
+            }
+        }
+
+        ensureSubscriber(environment);
+
+        for (JSONObject body : buffered) {
+            sendNodeMessage(deployLog, body);
+        }
+    }
+
+    private String masterKey(Environment environment) {
+
+        return environment.getSaltHost() + "|" + environment.getSaltUser();
+    }
+
+    private void ensureSubscriber(Environment environment) {
+
+        String key = masterKey(environment);
+
+        subscribers.compute(key, (k, subscriber) -> {
+            if (subscriber != null && subscriber.isAlive()) {
+                return subscriber;
+            }
+            EventSubscriber newSubscriber = new EventSubscriber(k, environment);
+            newSubscriber.start();
+            return newSubscriber;
+        });
+    }
+
+    public void release(Integer deployLogId) {
+
+        watchedJobs.entrySet().removeIf(entry -> {
+            if (entry.getValue().getId().equals(deployLogId)) {
+                String key = watchedJobMasters.remove(entry.getKey());
+                if (key != null) {
+                    watchedCounts.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+                }
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+
+        running = false;
+        subscribers.values().forEach(EventSubscriber::close);
+    }
+
+    private boolean hasWatchedJobs(String key) {
+
+        return submitting.containsKey(key) || watchedCounts.containsKey(key);
+    }
+
+    private void handleEvent(String key, String data) {
+
+        JSONObject event = JSONObject.parseObject(data);
+        String tag = event.getString("tag");
+
+        if (tag == null || !tag.startsWith(JOB_RETURN_TAG_PREFIX) || !tag.contains(JOB_RETURN_TAG_INFIX)) {
+            return;
+        }
+
+        JSONObject body = event.getJSONObject("data");
+
+        if (body == null) {
+            return;
+        }
+
+        String jid = body.getString("jid");
+        DeployLog deployLog;
+
+        synchronized (unmatchedEvents) {
+            deployLog = jid == null ? null : watchedJobs.get(jid);
+
+            if (deployLog == null) {
+                if (jid != null && submitting.containsKey(key)) {
+                    bufferEvent(jid, body);
+                }
+                return;
+            }
+        }
+
+        sendNodeMessage(deployLog, body);
+    }
+
+    /**
+     * 只在持有 unmatchedEvents 锁时调用，丢弃超时和超出数量的事件
+     */
+    private void bufferEvent(String jid, JSONObject body) {
+
+        long now = System.currentTimeMillis();
+
+        while (!unmatchedEvents.isEmpty() && (unmatchedEvents.size() >= bufferSize || unmatchedEvents.getFirst().receivedAt < now - bufferMillis)) {
+            unmatchedEvents.removeFirst();
+        }
+
+        unmatchedEvents.addLast(new BufferedEvent(jid, body, now));
+    }
+
+    private void sendNodeMessage(DeployLog deployLog, JSONObject body) {
+
+        String output = body.getString("return");
+        boolean success = SaltStackUtil.isCommandSuccess(output);
+
+        DeployNodeOutput deployNodeOutput = new DeployNodeOutput();
+        deployNodeOutput.setDeployLogId(deployLog.getId());
+        deployNodeOutput.setTeamId(deployLog.getTeamId());
+        deployNodeOutput.setProjectId(deployLog.getProjectId());
+        deployNodeOutput.setEnvId(deployLog.getEnvId());
+        deployNodeOutput.setNodeId(body.getString("id"));
+        deployNodeOutput.setStatus(success ? DeployJobStatusEnums.SUCCESS.value() : DeployJobStatusEnums.FAILED.value());
+        deployNodeOutput.setOutput(output);
+
+        webSocketService.sendMessage(deployLog.getTeamId(), WebSocketMessageTypeEnums.DEPLOY_PROJECT_NODE.value(), deployNodeOutput,
+                WebSocketTopicEnums.PROJECT.topic(deployLog.getProjectId()), WebSocketTopicEnums.ENV.topic(deployLog.getEnvId()), WebSocketTopicEnums.SERVER.topic(deployNodeOutput.getNodeId()));
+    }
+
+    private class EventSubscriber extends Thread {
+
+        private final String key;
+
+        private final Environment environment;
+
+        private volatile Response response;
+
+        EventSubscriber(String key, Environment environment) {
+            super("nest-salt-event-" + environment.getId());
+            this.key = key;
+            this.environment = environment;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+
+            try {
+                while (running && hasWatchedJobs(key)) {
+                    try {
+                        consume();
+                    } catch (SocketTimeoutException e) {
+                        // 读超时只是一段时间没有事件，仍有在途 job 时立即重连
+                        log.debug("salt 事件流 {} 读超时", key);
+                        continue;
+                    } catch (Exception e) {
+                        log.warn("salt 事件流 {} 中断,{}ms 后重连", key, reconnectMillis, e);
+                    }
+
+                    if (running && hasWatchedJobs(key)) {
+                        Thread.sleep(reconnectMillis);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                subscribers.remove(key, this);
+
+                // 退出检查与新 job 注册之间存在竞争，退出后仍有在途 job 时重新订阅
+                if (running && hasWatchedJobs(key)) {
+                    ensureSubscriber(environment);
+                }
+            }
+        }
+
+        /**
+         * 关闭当前连接，使阻塞在读取上的线程立即退出
+         */
+        private void close() {
+
+            interrupt();
+            Response current = response;
+
+            if (current != null) {
+                current.close();
+            }
+        }
+
+        /**
+         * SSE 格式：以 "data: " 开头的行为事件内容，空行分隔事件；每读到一行都检查是否还有在途 job，没有时主动断开；
+         * 最后一个 job 结束后没有新事件时，由读超时断开
+         */
+        private void consume() throws Exception {
+
+            Request.Builder builder = new Request.Builder()
+                    .url(environment.getSaltHost() + "/events")
+                    .get()
+                    .addHeader("Accept", "text/event-stream");
+
+            try (Response response = saltSessionManager.openStream(environment.getSaltHost(), environment.getSaltUser(), environment.getSaltPassword(), builder, readTimeoutSeconds)) {
+                if (response == null || !response.isSuccessful()) {
+                    log.warn("salt 事件流 {} 连接失败", key);
+                    return;
+                }
+
+                this.response = response;
+
+                BufferedReader reader = new BufferedReader(new InputStreamReader(response.body().byteStream(), StandardCharsets.UTF_8));
+                String line;
+
+                while (running && hasWatchedJobs(key) && (line = reader.readLine()) != null) {
+                    if (line.startsWith("data:")) {
+                        try {
+                            handleEvent(key, line.substring(5).trim());
+                        } catch (Exception e) {
+                            log.warn("salt 事件解析失败 {}", line, e);
+                        }
+                    }
+                }
+            } finally {
+                this.response = null;
+            }
+        }
+    }
+
+    private static class BufferedEvent {
+
+        private final String jid;
+
+        private final JSONObject body;
+
+        private final long receivedAt;
+
+        private BufferedEvent(String jid, JSONObject body, long receivedAt) {
+            this.jid = jid;
+            this.body = body;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
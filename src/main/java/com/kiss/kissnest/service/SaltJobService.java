@@ -0,0 +1,156 @@
+package com.kiss.kissnest.service;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.kiss.kissnest.entity.Environment;
+import com.kiss.kissnest.util.SaltStackUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * 跟踪 local_async 提交的 salt job：按 jid 轮询 /jobs/&lt;jid&gt;，每个 minion 返回时立即回调。
+ * 有新结果时以最小间隔轮询，没有进展时间隔逐步加倍直到上限
+ */
+@Service
+@Slf4j
+public class SaltJobService {
+
+    @Autowired
+    @Qualifier("saltJobScheduler")
+    private ThreadPoolTaskScheduler saltJobScheduler;
+
+    @Autowired
+    private SaltStackUtil saltStackUtil;
+
+    @Value("${salt.job.minPollMillis:1000}")
+    private Long minPollMillis;
+
+    @Value("${salt.job.maxPollMillis:10000}")
+    private Long maxPollMillis;
+
+    @Value("${salt.job.timeoutSeconds:1800}")
+    private Long timeoutSeconds;
+
+    /**
+     * @param minions  期望返回结果的 minion
+     * @param onReturn minion 返回时回调 (minion, 输出)，超时未返回的 minion 输出为 null
+     * @return 所有 minion 返回或超时后完成
+     */
+    public CompletableFuture<Void> track(Environment environment, String jid, Collection<String> minions, BiConsumer<String, String> onReturn) {
+
+        SaltJobPoll poll = new SaltJobPoll();
+        poll.environment = environment;
+        poll.jid = jid;
+        poll.pending = new HashSet<>(minions);
+        poll.onReturn = onReturn;
+        poll.future = new CompletableFuture<>();
+        poll.deadline = System.currentTimeMillis() + timeoutSeconds * 1000;
+        poll.delay = minPollMillis;
+
+        schedule(poll);
+
+        return poll.future;
+    }
+
+    private void schedule(SaltJobPoll poll) {
+
+        saltJobScheduler.schedule(() -> poll(poll), new Date(System.currentTimeMillis() + poll.delay));
+    }
+
+    private void poll(SaltJobPoll poll) {
+
+        boolean progressed = false;
+
+        try {
+            Map<String, String> returns = parseJobReturns(saltStackUtil.lookupJob(poll.environment, poll.jid));
+
+            for (Map.Entry<String, String> entry : returns.entrySet()) {
+                if (poll.pending.remove(entry.getKey())) {
+                    progressed = true;
+                    notifyReturn(poll, entry.getKey(), entry.getValue());
+                }
+            }
+        } catch (Exception e) {
+            log.error("查询 salt job {} 异常", poll.jid, e);
+        }
+
+        if (poll.pending.isEmpty()) {
+            poll.future.complete(null);
+            return;
+        }
+
+        if (System.currentTimeMillis() >= poll.deadline) {
+            log.warn("salt job {} 超时,未返回节点 {}", poll.jid, poll.pending);
+            for (String minion : poll.pending) {
+                notifyReturn(poll, minion, null);
+            }
+            poll.pending.clear();
+            poll.future.complete(null);
+            return;
+        }
+
+        poll.delay = progressed ? minPollMillis : Math.min(poll.delay * 2, maxPollMillis);
+        schedule(poll);
+    }
+
+    private void notifyReturn(SaltJobPoll poll, String minion, String output) {
+
+        try {
+            poll.onReturn.accept(minion, output);
+        } catch (Exception e) {
+            log.error("处理 salt job {} 节点 {} 结果异常", poll.jid, minion, e);
+        }
+    }
+
+    /**
+     * /jobs/&lt;jid&gt; 的 return[0] 为 minion -&gt; 返回值，尚未返回的 minion 不会出现
+     */
+    private Map<String, String> parseJobReturns(String response) {
+
+        Map<String, String> returns = new HashMap<>();
+
+        if (StringUtils.isEmpty(response)) {
+            return returns;
+        }
+
+        JSONArray returnArray = JSONObject.parseObject(response).getJSONArray("return");
+
+        if (returnArray == null || returnArray.isEmpty()) {
+            return returns;
+        }
+
+        JSONObject result = returnArray.getJSONObject(0);
+
+        for (String minion : result.keySet()) {
+            returns.put(minion, result.getString(minion));
+        }
+
+        return returns;
+    }
+
+    private static class SaltJobPoll {
+
+        private Environment environment;
+
+        private String jid;
+
+        private Set<String> pending;
+
+        private BiConsumer<String, String> onReturn;
+
+        private CompletableFuture<Void> future;
+
+        private long deadline;
+
+        private long delay;
+    }
+}
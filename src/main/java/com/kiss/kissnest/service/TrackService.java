@@ -2,30 +2,45 @@ package com.kiss.kissnest.service;
 
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
 import com.kiss.kissnest.dao.ProjectDao;
 import com.kiss.kissnest.dao.ProjectRepositoryDao;
 import com.kiss.kissnest.dao.TrackDao;
-import com.kiss.kissnest.enums.OperationTargetType;
 import com.kiss.kissnest.entity.Project;
 import com.kiss.kissnest.entity.ProjectRepository;
 import com.kiss.kissnest.entity.Track;
 import com.kiss.kissnest.output.TrackOutput;
-import com.kiss.kissnest.util.GitlabApiUtil;
-import com.kiss.foundation.entity.Guest;
 import com.kiss.foundation.utils.BeanCopyUtil;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.gitlab.api.models.GitlabBranch;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-
-
-
-import java.util.ArrayList;
-import java.util.List;
-
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * GitLab webhook：请求线程只把请求体放入内存队列，后台线程批量解析、入库。
+ * 队列按请求体的总字节数限制；一批写入在一个事务中，失败时逐条重试，只丢弃写入失败的那一条
+ */
 @Service
+@Slf4j
 public class TrackService {
 
+    private static final int INSERT_BATCH_SIZE = 500;
+
     @Autowired
     private ProjectDao projectDao;
 
@@ -39,73 +54,323 @@ public class TrackService {
     private OperationLogService operationLogService;
 
     @Autowired
-    private GitlabApiUtil gitlabApiUtil;
+    private RepositoryRefCacheService repositoryRefCacheService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${gitlab.webhook.queueBytes:67108864}")
+    private Long queueBytes;
+
+    @Value("${gitlab.webhook.workers:2}")
+    private Integer workers;
+
+    @Value("${gitlab.webhook.batchSize:50}")
+    private Integer batchSize;
+
+    private final BlockingQueue<byte[]> hooks = new LinkedBlockingQueue<>();
+
+    /**
+     * 队列中请求体的总字节数
+     */
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+    private final List<Thread> workerThreads = new ArrayList<>();
+
+    private TransactionTemplate transactionTemplate;
 
-    public void createTrack(String hook) {
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void start() {
+
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::consume, "nest-webhook-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workerThreads.add(worker);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+
+        running = false;
+        workerThreads.forEach(Thread::interrupt);
+
+        List<byte[]> remaining = new ArrayList<>();
+        hooks.drainTo(remaining);
+        release(remaining);
+
+        if (!remaining.isEmpty()) {
+            createTracks(remaining);
+        }
+    }
+
+    /**
+     * 只把原始请求体放入队列，由后台线程解析入库；队列中的请求体加上本次超过 queueBytes 时返回 false
+     */
+    public boolean enqueue(byte[] payload) {
+
+        if (payload.length == 0) {
+            return true;
+        }
+
+        if (queuedBytes.addAndGet(payload.length) > queueBytes) {
+            queuedBytes.addAndGet(-payload.length);
+            return false;
+        }
+
+        hooks.offer(payload);
+
+        return true;
+    }
+
+    private void release(List<byte[]> payloads) {
+
+        long size = 0;
+
+        for (byte[] payload : payloads) {
+            size += payload.length;
+        }
+
+        queuedBytes.addAndGet(-size);
+    }
+
+    private void consume() {
+
+        while (running) {
+            try {
+                List<byte[]> payloads = new ArrayList<>();
+                payloads.add(hooks.take());
+                hooks.drainTo(payloads, batchSize - 1);
+                release(payloads);
+                createTracks(payloads);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("处理 webhook 异常", e);
+            }
+        }
+    }
+
+    /**
+     * 解析一批 webhook，推送中的每个提交记录为一条动态，动态和 Track 批量写入；
+     * 整批写入失败时逐条重试，写入成功的事件才更新分支缓存和分支数
+     */
+    public void createTracks(List<byte[]> payloads) {
+
+        List<WebHookEvent> events = new ArrayList<>();
+        Map<Integer, Project> projects = new HashMap<>();
+
+        for (byte[] payload : payloads) {
+            WebHookEvent event;
+
+            try {
+                event = parse(payload);
+            } catch (Exception e) {
+                log.warn("解析 webhook 失败,长度{}", payload.length, e);
+                continue;
+            }
+
+            if (event == null) {
+                continue;
+            }
+
+            event.project = event.repositoryId == null ? null : projects.computeIfAbsent(event.repositoryId, projectDao::getProjectByRepositoryId);
+            event.length = payload.length;
+
+            for (Track track : event.tracks) {
+                track.setTeamId(event.project == null ? null : event.project.getTeamId());
+            }
+
+            events.add(event);
+        }
 
-        if (StringUtils.isEmpty(hook)) {
+        if (events.isEmpty()) {
             return;
         }
 
-        Track track = new Track();
+        try {
+            save(events);
+        } catch (Exception e) {
+            if (events.size() == 1) {
+                log.error("写入 webhook 失败,丢弃,仓库{},长度{}", events.get(0).repositoryId, events.get(0).length, e);
+                return;
+            }
 
-        JSONObject hookJson = JSONObject.parseObject(hook);
-        String eventName = hookJson.getString("object_kind");
-
-        if ("push".equals(eventName)) {
-            track.setType(1);
-            push(hookJson, track);
-            projectRepositoryDao.addCount("commit", 1);
-        } else if ("tag_push".equals(eventName)) {
-            track.setType(2);
-            push(hookJson, track);
-            projectRepositoryDao.addCount("commit", 1);
-        } else if ("merge_request".equals(eventName)) {
-            track.setType(3);
-            merge(hookJson, track);
-            projectRepositoryDao.addCount("mergeRequest", 1);
+            log.warn("批量写入{}个 webhook 失败,逐条重试", events.size(), e);
+            events = saveEach(events);
         }
 
-        Project project = projectDao.getProjectByRepositoryId(track.getProjectId());
+        Set<Project> pushedProjects = new LinkedHashSet<>();
 
-        if (project != null) {
-            track.setTeamId(project.getTeamId());
+        for (WebHookEvent event : events) {
+            if (!event.merge) {
+                repositoryRefCacheService.apply(event.summary);
+                if (event.project != null) {
+                    pushedProjects.add(event.project);
+                }
+            }
         }
 
-        updateBranch(project.getTeamId(), project.getId());
-        trackDao.createTrack(track);
-        operationLogService.saveDynamic(new Guest(), track.getTeamId(), null, null, OperationTargetType.TYPE__PUSH_CODES, track);
+        for (Project project : pushedProjects) {
+            updateBranch(project.getTeamId(), project.getId());
+        }
     }
 
-    public void push(JSONObject hookJson, Track track) {
+    /**
+     * @return 写入成功的事件
+     */
+    private List<WebHookEvent> saveEach(List<WebHookEvent> events) {
 
-        track.setRef(hookJson.getString("ref"));
-        JSONObject projectJson = hookJson.getJSONObject("project");
+        List<WebHookEvent> saved = new ArrayList<>();
+
+        for (WebHookEvent event : events) {
+            try {
+                save(Collections.singletonList(event));
+                saved.add(event);
+            } catch (Exception e) {
+                log.error("写入 webhook 失败,丢弃,仓库{},长度{}", event.repositoryId, event.length, e);
+            }
+        }
+
+        return saved;
+    }
+
+    /**
+     * Track、动态和提交、合并请求计数在同一个事务中写入，失败时整体回滚，重试不会重复写入
+     */
+    private void save(List<WebHookEvent> events) {
+
+        List<Track> tracks = new ArrayList<>();
+        int pushCount = 0;
+        int mergeRequestCount = 0;
+
+        for (WebHookEvent event : events) {
+            if (event.merge) {
+                mergeRequestCount++;
+            } else {
+                pushCount++;
+            }
+            tracks.addAll(event.tracks);
+        }
+
+        int commitCount = pushCount;
+        int mergeCount = mergeRequestCount;
+
+        transactionTemplate.execute(status -> {
+            for (int start = 0; start < tracks.size(); start += INSERT_BATCH_SIZE) {
+                List<Track> batch = tracks.subList(start, Math.min(start + INSERT_BATCH_SIZE, tracks.size()));
+                trackDao.createTracks(batch);
+                operationLogService.saveDynamics(batch.stream().map(operationLogService::toTrackDynamic).collect(Collectors.toList()));
+            }
+
+            if (commitCount > 0) {
+                projectRepositoryDao.addCount("commit", commitCount);
+            }
+
+            if (mergeCount > 0) {
+                projectRepositoryDao.addCount("mergeRequest", mergeCount);
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * 流式解析，commits 数组逐个读取并转换为 Track，不构造整个请求体的对象树
+     */
+    private WebHookEvent parse(byte[] payload) throws IOException {
+
+        JSONObject summary = new JSONObject();
+        List<Track> commitTracks = new ArrayList<>();
+        JSONArray firstCommit = new JSONArray();
+
+        try (JSONReader reader = new JSONReader(new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8))) {
+            reader.startObject();
+
+            while (reader.hasNext()) {
+                String key = reader.readString();
+
+                if ("commits".equals(key)) {
+                    reader.startArray();
+                    while (reader.hasNext()) {
+                        JSONObject commit = reader.readObject(JSONObject.class);
+                        if (firstCommit.isEmpty()) {
+                            firstCommit.add(commit);
+                        }
+                        commitTracks.add(toCommitTrack(commit));
+                    }
+                    reader.endArray();
+                } else {
+                    summary.put(key, reader.readObject());
+                }
+            }
 
-        if (projectJson != null) {
-            track.setProjectId(projectJson.getInteger("id"));
-            track.setProjectName(projectJson.getString("name"));
+            reader.endObject();
         }
 
-        JSONArray commitJson = hookJson.getJSONArray("commits");
+        String eventName = summary.getString("object_kind");
+        WebHookEvent event = new WebHookEvent();
+        event.summary = summary;
+
+        if ("push".equals(eventName) || "tag_push".equals(eventName)) {
+            // 新建、删除分支或给已有提交打 tag 时没有提交记录，只记录一条 ref 变更
+            if (commitTracks.isEmpty()) {
+                Track track = new Track();
+                track.setHash(summary.getString("after"));
+                commitTracks.add(track);
+            }
 
-        if (commitJson != null && commitJson.size() != 0) {
-            JSONObject firstCommit = commitJson.getJSONObject(0);
+            JSONObject projectJson = summary.getJSONObject("project");
+            event.repositoryId = projectJson == null ? summary.getInteger("project_id") : projectJson.getInteger("id");
 
-            if (firstCommit != null) {
-                track.setHash(firstCommit.getString("id"));
-                track.setMessage(firstCommit.getString("message"));
-                track.setModified(firstCommit.getString("modified"));
-                track.setOperatorAt(com.kiss.kissnest.util.StringUtils.utcStringToDefaultString(firstCommit.getString("timestamp"), "yyyy-MM-dd'T'HH:mm:ss Z"));
-                JSONObject auth = firstCommit.getJSONObject("author");
-                track.setAuthorName(auth.getString("name"));
-                track.setAuthorEmail(auth.getString("email"));
-            } else if ("0000000000000000000000000000000000000000".equals(hookJson.getString("before")) && track.getType() == 1) {
-                track.setType(3);
-                track.setHash(hookJson.getString("after"));
+            for (Track track : commitTracks) {
+                track.setType("push".equals(eventName) ? 1 : 2);
+                track.setRef(summary.getString("ref"));
+                track.setProjectId(event.repositoryId);
+                track.setProjectName(projectJson == null ? null : projectJson.getString("name"));
             }
+
+            summary.put("commits", firstCommit);
+            event.tracks = commitTracks;
+        } else if ("merge_request".equals(eventName)) {
+            Track track = new Track();
+            track.setType(3);
+            merge(summary, track);
+            event.merge = true;
+            event.repositoryId = track.getProjectId();
+            event.tracks = Collections.singletonList(track);
+        } else {
+            return null;
         }
 
+        return event;
+    }
+
+    private Track toCommitTrack(JSONObject commit) {
+
+        Track track = new Track();
+        track.setHash(commit.getString("id"));
+        track.setMessage(commit.getString("message"));
+        track.setModified(commit.getString("modified"));
+
+        if (commit.getString("timestamp") != null) {
+            track.setOperatorAt(com.kiss.kissnest.util.StringUtils.utcStringToDefaultString(commit.getString("timestamp"), "yyyy-MM-dd'T'HH:mm:ss Z"));
+        }
+
+        JSONObject auth = commit.getJSONObject("author");
+
+        if (auth != null) {
+            track.setAuthorName(auth.getString("name"));
+            track.setAuthorEmail(auth.getString("email"));
+        }
+
+        return track;
     }
 
     public void merge(JSONObject hookJson, Track track) {
@@ -152,9 +417,27 @@ public class TrackService {
         }
 
         ProjectRepository projectRepository = projectRepositoryDao.getProjectRepositoryByProjectId(projectId);
-        List<GitlabBranch> gitlabBranches = gitlabApiUtil.getBranches(projectRepository.getRepositoryId(), accessToken);
-        Integer count = gitlabBranches.size();
+        Integer count = repositoryRefCacheService.getBranchCount(projectRepository.getRepositoryId(), accessToken);
+
+        if (count == null) {
+            return;
+        }
 
         projectRepositoryDao.updateProjectRepositoryBranch(teamId, projectId, count);
     }
+
+    private static class WebHookEvent {
+
+        private Integer repositoryId;
+
+        private boolean merge;
+
+        private JSONObject summary;
+
+        private List<Track> tracks;
+
+        private Project project;
+
+        private int length;
+    }
 }
@@ -0,0 +1,256 @@
+package com.kiss.kissnest.service;
+
+import com.kiss.kissnest.util.WebSocketEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket 消息记录：为每个团队的消息分配递增序号，最近 bufferSize 条保存在内存环形缓冲区，
+ * 集群模式下同时写入 Redis 有序集合，实例重启或本实例缓冲区不完整时从 Redis 补发；
+ * 序号在集群模式下由 Redis 分配，所有实例共用
+ */
+@Service
+@Slf4j
+public class WebSocketEventLogService {
+
+    private static final String SEQUENCE_PREFIX = "nest:ws:seq:";
+
+    private static final String EVENTS_PREFIX = "nest:ws:events:";
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Value("${websocket.cluster.enabled:true}")
+    private Boolean clusterEnabled;
+
+    @Value("${websocket.replay.bufferSize:1000}")
+    private Integer bufferSize;
+
+    @Value("${websocket.replay.redisEnabled:true}")
+    private Boolean redisEnabled;
+
+    @Value("${websocket.replay.redisTtlSeconds:86400}")
+    private Long redisTtlSeconds;
+
+    /**
+     * 团队 id -> 最近的消息
+     */
+    private final Map<Integer, EventRing> rings = new ConcurrentHashMap<>();
+
+    /**
+     * 非集群模式下团队 id -> 当前序号
+     */
+    private final Map<Integer, AtomicLong> localSequences = new ConcurrentHashMap<>();
+
+    /**
+     * 分配失败返回 null，消息照常推送但不能补发
+     */
+    public Long nextSequence(Integer teamId) {
+
+        if (!clusterEnabled) {
+            return localSequences.computeIfAbsent(teamId, key -> new AtomicLong()).incrementAndGet();
+        }
+
+        try {
+            return redisTemplate.opsForValue().increment(SEQUENCE_PREFIX + teamId, 1);
+        } catch (Exception e) {
+            log.warn("分配团队{}的消息序号失败", teamId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 查询失败返回 null
+     */
+    public Long currentSequence(Integer teamId) {
+
+        if (!clusterEnabled) {
+            AtomicLong sequence = localSequences.get(teamId);
+            return sequence == null ? 0L : sequence.get();
+        }
+
+        try {
+            String sequence = redisTemplate.opsForValue().get(SEQUENCE_PREFIX + teamId);
+            return sequence == null ? 0L : Long.valueOf(sequence);
+        } catch (Exception e) {
+            log.warn("查询团队{}的消息序号失败", teamId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 由发布消息的实例写入 Redis（只保留最近 bufferSize 条）并发布到 channel，全部命令在一次 pipeline 中发出；
+     * 只在集群模式下调用，失败时抛出异常，由调用方只推送本实例的连接
+     */
+    public void persistAndPublish(Integer teamId, WebSocketEvent event, String channel) {
+
+        String key = EVENTS_PREFIX + teamId;
+        String encoded = event.encode();
+        boolean persist = redisEnabled && event.getSeq() != null;
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+
+                RedisOperations<String, String> stringOperations = (RedisOperations<String, String>) operations;
+
+                if (persist) {
+                    stringOperations.opsForZSet().add(key, encoded, event.getSeq());
+                    stringOperations.opsForZSet().removeRange(key, 0, -bufferSize - 1);
+                    stringOperations.expire(key, redisTtlSeconds, TimeUnit.SECONDS);
+                }
+
+                stringOperations.convertAndSend(channel, encoded);
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 本实例推送过的消息放入内存缓冲区
+     */
+    public void record(Integer teamId, WebSocketEvent event) {
+
+        if (event.getSeq() == null) {
+            return;
+        }
+
+        rings.computeIfAbsent(teamId, key -> new EventRing(bufferSize)).add(event);
+    }
+
+    /**
+     * 序号大于 seq 的全部消息，按序号排列；优先使用内存缓冲区，不完整时从 Redis 读取，
+     * 都无法补齐（已被淘汰、序号被重置或查询失败）时返回 null，客户端需要重新加载。
+     * 分配了序号但写入 Redis 失败的消息永远不会出现，从 Redis 读取时以已写入的消息为准，这样的空缺不要求客户端重新加载
+     */
+    public List<WebSocketEvent> getEventsAfter(Integer teamId, long seq) {
+
+        Long current = currentSequence(teamId);
+
+        if (current == null || seq > current) {
+            return null;
+        }
+
+        if (seq == current) {
+            return new ArrayList<>();
+        }
+
+        EventRing ring = rings.get(teamId);
+        List<WebSocketEvent> events = ring == null ? new ArrayList<>() : ring.after(seq);
+
+        if (isComplete(events, seq, current)) {
+            return events;
+        }
+
+        if (!clusterEnabled || !redisEnabled) {
+            return null;
+        }
+
+        try {
+            return getPersistedEventsAfter(teamId, seq);
+        } catch (Exception e) {
+            log.warn("读取团队{}序号{}之后的消息失败", teamId, seq, e);
+            return null;
+        }
+    }
+
+    /**
+     * Redis 中只保留最近 bufferSize 条，淘汰的总是序号最小的消息：最早的一条不晚于 seq + 1，或者从未淘汰过（不足 bufferSize 条），
+     * 序号大于 seq 的已写入消息就都还在，其间的空缺是没有写入的序号
+     */
+    private List<WebSocketEvent> getPersistedEventsAfter(Integer teamId, long seq) {
+
+        String key = EVENTS_PREFIX + teamId;
+        Set<ZSetOperations.TypedTuple<String>> first = redisTemplate.opsForZSet().rangeWithScores(key, 0, 0);
+
+        if (first == null || first.isEmpty()) {
+            return null;
+        }
+
+        double firstSeq = first.iterator().next().getScore();
+        Long count = redisTemplate.opsForZSet().zCard(key);
+
+        if (firstSeq > seq + 1 && (count == null || count >= bufferSize)) {
+            return null;
+        }
+
+        Set<String> values = redisTemplate.opsForZSet().rangeByScore(key, seq + 1, Double.POSITIVE_INFINITY);
+        List<WebSocketEvent> events = new ArrayList<>();
+
+        if (values != null) {
+            for (String value : values) {
+                events.add(WebSocketEvent.decode(value));
+            }
+        }
+
+        return events;
+    }
+
+    /**
+     * 序号从 seq + 1 连续到 current
+     */
+    private boolean isComplete(List<WebSocketEvent> events, long seq, long current) {
+
+        long expected = seq + 1;
+
+        for (WebSocketEvent event : events) {
+            if (event.getSeq() > current) {
+                break;
+            }
+            if (event.getSeq() != expected) {
+                return false;
+            }
+            expected++;
+        }
+
+        return expected > current;
+    }
+
+    /**
+     * 固定容量的环形缓冲区，满了之后覆盖最早的消息；多个实例发布的消息到达顺序可能与序号不一致，读取时重新排序
+     */
+    private static class EventRing {
+
+        private final WebSocketEvent[] events;
+
+        private int next;
+
+        private EventRing(int capacity) {
+            this.events = new WebSocketEvent[capacity];
+        }
+
+        private synchronized void add(WebSocketEvent event) {
+
+            events[next] = event;
+            next = (next + 1) % events.length;
+        }
+
+        private synchronized List<WebSocketEvent> after(long seq) {
+
+            List<WebSocketEvent> result = new ArrayList<>();
+
+            for (WebSocketEvent event : events) {
+                if (event != null && event.getSeq() > seq) {
+                    result.add(event);
+                }
+            }
+
+            result.sort(Comparator.comparing(WebSocketEvent::getSeq));
+
+            return result;
+        }
+    }
+}
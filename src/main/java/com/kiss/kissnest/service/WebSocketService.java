@@ -1,74 +1,495 @@
 package com.kiss.kissnest.service;
 
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
+import com.kiss.kissnest.enums.WebSocketMessageTypeEnums;
+import com.kiss.kissnest.enums.WebSocketTopicEnums;
 import com.kiss.kissnest.output.MessageOutput;
+import com.kiss.kissnest.util.BufferedWebSocketSession;
+import com.kiss.kissnest.util.SerialExecutor;
+import com.kiss.kissnest.util.WebSocketEvent;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.socket.*;
 
-import java.util.ArrayList;
-import java.util.List;
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * WebSocket 连接按团队分组保存，消息通过团队的 Redis 频道分发到所有实例，只推送给目标团队的连接，
+ * 订阅过主题的连接只推送其订阅的项目、环境、服务器或消息类型，通过每个连接的发送缓冲区异步写出；
+ * 连接关闭、出错或跟不上推送时立即移除，定时清理没有收到关闭回调的失效连接
+ */
 @Service
 @Slf4j
 @RequestMapping("/ws")
 public class WebSocketService implements WebSocketHandler {
 
-    private Integer teamId;
+    private static final String ACTION_SUBSCRIBE_BUILD_LOG = "subscribeBuildLog";
 
+    private static final String ACTION_UNSUBSCRIBE_BUILD_LOG = "unsubscribeBuildLog";
 
-    private static final List<WebSocketSession> sessionMap = new ArrayList<>();
+    private static final String ATTRIBUTE_TEAM_ID = "teamId";
 
-    public void sendMessage(String type, Object object) {
+    private static final String ATTRIBUTE_BUFFERED_SESSION = "bufferedSession";
 
-        MessageOutput messageOutput = new MessageOutput(type, object);
-        TextMessage textMessage = new TextMessage(JSONObject.toJSONString(messageOutput));
-        broadcastTeamMessage(textMessage);
+    private static final String ACTION_SUBSCRIBE = "subscribe";
+
+    private static final String ACTION_UNSUBSCRIBE = "unsubscribe";
+
+    private static final String ACTION_RESUME = "resume";
+
+    private static final String ATTRIBUTE_TOPICS = "topics";
+
+    private static final String CHANNEL_PREFIX = "nest:ws:team:";
+
+
+    @Autowired
+    private BuildLogStreamService buildLogStreamService;
+
+    @Autowired
+    private WebSocketEventLogService webSocketEventLogService;
+
+    @Autowired
+    @Qualifier("webSocketScheduler")
+    private ThreadPoolTaskScheduler webSocketScheduler;
+
+    @Autowired
+    @Qualifier("webSocketExecutor")
+    private ThreadPoolTaskExecutor webSocketExecutor;
+
+    @Autowired
+    @Qualifier("webSocketCloseExecutor")
+    private ThreadPoolTaskExecutor webSocketCloseExecutor;
+
+    @Autowired
+    @Qualifier("webSocketPublishExecutor")
+    private ThreadPoolTaskExecutor webSocketPublishExecutor;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${websocket.cluster.enabled:true}")
+    private Boolean clusterEnabled;
+
+    @Value("${websocket.sweepMillis:30000}")
+    private Long sweepMillis;
+
+    @Value("${websocket.sendTimeLimitMillis:10000}")
+    private Long sendTimeLimit;
+
+    @Value("${websocket.watchdogMillis:1000}")
+    private Long watchdogMillis;
+
+    @Value("${websocket.bufferSizeLimit:524288}")
+    private Integer bufferSizeLimit;
+
+    @Value("${websocket.maxTopics:256}")
+    private Integer maxTopics;
+
+    @Value("${websocket.publishQueueCapacity:10000}")
+    private Integer publishQueueCapacity;
+
+    /**
+     * 团队 id -> 消息发布执行器，只在 compute 内创建和移除
+     */
+    private final Map<Integer, SerialExecutor> teamPublishers = new ConcurrentHashMap<>();
+
+    /**
+     * 团队 id -> 连接及主题索引，只在 compute 内修改
+     */
+    private final Map<Integer, TeamSessions> teamSessions = new ConcurrentHashMap<>();
+
+    /**
+     * 本实例已订阅的团队
+     */
+    private final Set<Integer> subscribedTeams = new HashSet<>();
+
+    private final MessageListener teamListener = this::onTeamMessage;
+
+    @PostConstruct
+    public void init() {
+
+        webSocketScheduler.scheduleWithFixedDelay(this::sweep, sweepMillis);
+        webSocketScheduler.scheduleWithFixedDelay(this::checkSendTimeouts, watchdogMillis);
     }
 
+    /**
+     * 消息分配团队内的序号后只序列化一次，连同主题发布到团队的 Redis 频道，由持有该团队连接的各个实例（包括本实例）推送；
+     * 发布失败时只推送给本实例的连接。调用线程只复制消息内容，分配序号、写入和发布在团队的串行执行器上完成，团队内保持提交顺序
+     *
+     * @param topics 消息所属的主题，消息类型对应的主题自动加入
+     */
+    public void sendMessage(Integer teamId, String type, Object object, String... topics) {
 
-    public void broadcastTeamMessage(TextMessage message) {
-        for (WebSocketSession session : sessionMap) {
-            System.out.println("session=" + session);
-            if (session.isOpen() && session.getAttributes().get("teamId").equals("1")) {
-                // 发送消息
-                try {
-                    session.sendMessage(message);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+        if (teamId == null) {
+            return;
+        }
+
+        Set<String> messageTopics = new LinkedHashSet<>();
+        messageTopics.add(WebSocketTopicEnums.TYPE.topic(type));
+
+        for (String topic : topics) {
+            if (topic != null) {
+                messageTopics.add(topic);
+            }
+        }
+
+        // 调用方之后可能修改对象，先复制为 JSON 结构
+        Object data = JSON.toJSON(object);
+
+        try {
+            teamPublishers.compute(teamId, (key, publisher) -> {
+                SerialExecutor current = publisher == null ? new SerialExecutor(webSocketPublishExecutor, publishQueueCapacity) : publisher;
+                current.execute(() -> publish(teamId, type, data, messageTopics));
+                return current;
+            });
+        } catch (RejectedExecutionException e) {
+            log.error("团队{}待发布的消息过多,丢弃消息{}", teamId, type);
+        }
+    }
+
+    private void publish(Integer teamId, String type, Object data, Set<String> topics) {
+
+        Long seq = webSocketEventLogService.nextSequence(teamId);
+        MessageOutput messageOutput = new MessageOutput(type, data, seq);
+        WebSocketEvent event = new WebSocketEvent(seq, topics, JSONObject.toJSONString(messageOutput));
+
+        if (clusterEnabled) {
+            try {
+                webSocketEventLogService.persistAndPublish(teamId, event, CHANNEL_PREFIX + teamId);
+                return;
+            } catch (Exception e) {
+                log.warn("发布团队{}的消息失败,只推送本实例的连接", teamId, e);
+            }
+        }
+
+        broadcastTeamMessage(teamId, event);
+    }
+
+    /**
+     * 推送给没有订阅过主题的连接，以及订阅了任一主题的连接，每个连接最多推送一次
+     */
+    public void broadcastTeamMessage(Integer teamId, WebSocketEvent event) {
+
+        webSocketEventLogService.record(teamId, event);
+
+        TeamSessions team = teamSessions.get(teamId);
+
+        if (team == null) {
+            return;
+        }
+
+        TextMessage message = event.getMessage();
+        Set<BufferedWebSocketSession> targets = new HashSet<>(team.unfiltered);
+
+        for (String topic : event.getTopics()) {
+            Set<BufferedWebSocketSession> subscribers = team.topics.get(topic);
+            if (subscribers != null) {
+                targets.addAll(subscribers);
+            }
+        }
+
+        for (BufferedWebSocketSession session : targets) {
+            if (!session.send(message)) {
+                unregister(session.getSession());
             }
         }
     }
 
     @Override
-    public void afterConnectionEstablished(WebSocketSession webSocketSession) {
-        teamId = Integer.parseInt(webSocketSession.getAttributes().get("teamId").toString());
-        sessionMap.add(webSocketSession);
+    public void afterConnectionEstablished(WebSocketSession webSocketSession) throws Exception {
+
+        Integer teamId = getTeamId(webSocketSession);
+
+        if (teamId == null) {
+            webSocketSession.close(CloseStatus.POLICY_VIOLATION);
+            return;
+        }
+
+        BufferedWebSocketSession bufferedSession = new BufferedWebSocketSession(webSocketSession, webSocketExecutor, webSocketCloseExecutor, sendTimeLimit, bufferSizeLimit);
+        webSocketSession.getAttributes().put(ATTRIBUTE_BUFFERED_SESSION, bufferedSession);
+
+        // 注册和移除都在 compute 内完成，避免向刚被移除的空集合中添加连接
+        teamSessions.compute(teamId, (key, team) -> {
+            TeamSessions current = team == null ? new TeamSessions() : team;
+            current.sessions.add(bufferedSession);
+            current.unfiltered.add(bufferedSession);
+            return current;
+        });
+        updateSubscription(teamId);
     }
 
     @Override
     public void handleMessage(WebSocketSession webSocketSession, WebSocketMessage<?> webSocketMessage) throws Exception {
-        System.out.println("hanlerMessage");
+
+        BufferedWebSocketSession bufferedSession = getBufferedSession(webSocketSession);
+
+        if (!(webSocketMessage instanceof TextMessage) || bufferedSession == null) {
+            return;
+        }
+
+        // 客户端消息格式：{"action": "subscribeBuildLog" | "unsubscribeBuildLog", "id": 构建日志 id}
+        // 或 {"action": "subscribe" | "unsubscribe", "topics": ["project:12", "env:3", "server:10.0.0.1", "type:buildProjectEnd"]}
+        // 或 {"action": "resume", "seq": 收到的最后一条消息的序号}，应在 subscribe 之后发送
+        JSONObject message = JSONObject.parseObject(((TextMessage) webSocketMessage).getPayload());
+        String action = message.getString("action");
+        Integer id = message.getInteger("id");
+
+        if (ACTION_SUBSCRIBE_BUILD_LOG.equals(action) && id != null) {
+            buildLogStreamService.subscribe(bufferedSession, getTeamId(webSocketSession), id);
+        } else if (ACTION_UNSUBSCRIBE_BUILD_LOG.equals(action) && id != null) {
+            buildLogStreamService.unsubscribe(bufferedSession, id);
+        } else if (ACTION_SUBSCRIBE.equals(action) || ACTION_UNSUBSCRIBE.equals(action)) {
+            JSONArray topics = message.getJSONArray("topics");
+            if (topics != null) {
+                updateTopics(webSocketSession, bufferedSession, topics.toJavaList(String.class), ACTION_SUBSCRIBE.equals(action));
+            }
+        } else if (ACTION_RESUME.equals(action) && message.getLong("seq") != null) {
+            resume(webSocketSession, bufferedSession, message.getLong("seq"));
+        }
     }
 
     @Override
     public void handleTransportError(WebSocketSession webSocketSession, Throwable throwable) throws Exception {
+
+        unregister(webSocketSession);
+
         if (webSocketSession.isOpen()) {
             webSocketSession.close();
         }
-        sessionMap.remove(webSocketSession);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession webSocketSession, CloseStatus closeStatus) throws Exception {
-        System.out.println("关闭链接");
+
+        unregister(webSocketSession);
     }
 
     @Override
     public boolean supportsPartialMessages() {
         return false;
     }
+
+    private void unregister(WebSocketSession session) {
+
+        Integer teamId = getTeamId(session);
+        BufferedWebSocketSession bufferedSession = getBufferedSession(session);
+
+        if (bufferedSession == null) {
+            return;
+        }
+
+        if (teamId != null) {
+            Set<String> topics = getTopics(session);
+            teamSessions.computeIfPresent(teamId, (key, team) -> {
+                team.sessions.remove(bufferedSession);
+                team.unfiltered.remove(bufferedSession);
+                if (topics != null) {
+                    for (String topic : topics) {
+                        team.removeSubscriber(topic, bufferedSession);
+                    }
+                }
+                return team.sessions.isEmpty() ? null : team;
+            });
+            updateSubscription(teamId);
+        }
+
+        buildLogStreamService.unsubscribeAll(bufferedSession);
+    }
+
+    /**
+     * 第一次订阅后连接只接收订阅的主题，全部取消后不再接收团队消息；主题格式不对的忽略
+     */
+    private void updateTopics(WebSocketSession session, BufferedWebSocketSession bufferedSession, List<String> topics, boolean subscribe) {
+
+        Integer teamId = getTeamId(session);
+
+        if (teamId == null) {
+            return;
+        }
+
+        teamSessions.computeIfPresent(teamId, (key, team) -> {
+            if (!team.sessions.contains(bufferedSession)) {
+                return team;
+            }
+
+            Set<String> sessionTopics = getTopics(session);
+
+            if (sessionTopics == null) {
+                sessionTopics = ConcurrentHashMap.newKeySet();
+                session.getAttributes().put(ATTRIBUTE_TOPICS, sessionTopics);
+            }
+
+            for (String topic : topics) {
+                if (!WebSocketTopicEnums.isValid(topic)) {
+                    log.info("连接{}订阅的主题{}格式不正确", session.getId(), topic);
+                } else if (!subscribe) {
+                    sessionTopics.remove(topic);
+                    team.removeSubscriber(topic, bufferedSession);
+                } else if (sessionTopics.size() >= maxTopics) {
+                    log.info("连接{}订阅的主题超过{}个", session.getId(), maxTopics);
+                    break;
+                } else if (sessionTopics.add(topic)) {
+                    team.topics.computeIfAbsent(topic, value -> ConcurrentHashMap.newKeySet()).add(bufferedSession);
+                }
+            }
+
+            team.unfiltered.remove(bufferedSession);
+            return team;
+        });
+    }
+
+    /**
+     * 补发 seq 之后该连接应收到的消息；补发期间新推送的消息可能先到达，客户端按序号去重、排序。
+     * 无法补齐时推送 resync，客户端重新加载页面数据
+     */
+    private void resume(WebSocketSession session, BufferedWebSocketSession bufferedSession, long seq) {
+
+        Integer teamId = getTeamId(session);
+
+        if (teamId == null) {
+            return;
+        }
+
+        List<WebSocketEvent> events = webSocketEventLogService.getEventsAfter(teamId, seq);
+
+        if (events == null) {
+            JSONObject data = new JSONObject();
+            data.put("seq", webSocketEventLogService.currentSequence(teamId));
+            bufferedSession.send(new TextMessage(JSONObject.toJSONString(new MessageOutput(WebSocketMessageTypeEnums.RESYNC.value(), data))));
+            return;
+        }
+
+        Set<String> sessionTopics = getTopics(session);
+
+        for (WebSocketEvent event : events) {
+            if (sessionTopics != null && Collections.disjoint(sessionTopics, event.getTopics())) {
+                continue;
+            }
+            if (!bufferedSession.send(event.getMessage())) {
+                unregister(session);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 卡在写出上的连接不再有新消息时也会被关闭
+     */
+    private void checkSendTimeouts() {
+
+        for (TeamSessions team : teamSessions.values()) {
+            for (BufferedWebSocketSession session : team.sessions) {
+                session.checkSendTimeout();
+            }
+        }
+    }
+
+    private void sweep() {
+
+        for (Integer teamId : teamPublishers.keySet()) {
+            teamPublishers.computeIfPresent(teamId, (key, publisher) -> publisher.isIdle() ? null : publisher);
+        }
+
+        for (TeamSessions team : teamSessions.values()) {
+            for (BufferedWebSocketSession session : team.sessions) {
+                if (!session.isOpen()) {
+                    log.info("清理已断开的连接{}", session.getId());
+                    unregister(session.getSession());
+                }
+            }
+        }
+    }
+
+    /**
+     * 本实例有该团队的连接时订阅团队频道，没有时取消订阅；按当前连接状态调整，重复调用没有影响
+     */
+    private synchronized void updateSubscription(Integer teamId) {
+
+        if (!clusterEnabled) {
+            return;
+        }
+
+        boolean hasSessions = teamSessions.containsKey(teamId);
+        ChannelTopic topic = new ChannelTopic(CHANNEL_PREFIX + teamId);
+
+        if (hasSessions && subscribedTeams.add(teamId)) {
+            redisMessageListenerContainer.addMessageListener(teamListener, topic);
+        } else if (!hasSessions && subscribedTeams.remove(teamId)) {
+            redisMessageListenerContainer.removeMessageListener(teamListener, topic);
+        }
+    }
+
+    private void onTeamMessage(Message message, byte[] pattern) {
+
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+
+        try {
+            Integer teamId = Integer.valueOf(channel.substring(CHANNEL_PREFIX.length()));
+            broadcastTeamMessage(teamId, WebSocketEvent.decode(new String(message.getBody(), StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            log.warn("处理频道{}的消息失败", channel, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> getTopics(WebSocketSession session) {
+
+        return (Set<String>) session.getAttributes().get(ATTRIBUTE_TOPICS);
+    }
+
+    private BufferedWebSocketSession getBufferedSession(WebSocketSession session) {
+
+        return (BufferedWebSocketSession) session.getAttributes().get(ATTRIBUTE_BUFFERED_SESSION);
+    }
+
+    private Integer getTeamId(WebSocketSession session) {
+
+        Object teamId = session.getAttributes().get(ATTRIBUTE_TEAM_ID);
+
+        try {
+            return teamId == null ? null : Integer.valueOf(teamId.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static class TeamSessions {
+
+        private final Set<BufferedWebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+
+        /**
+         * 没有订阅过主题的连接，接收团队的全部消息
+         */
+        private final Set<BufferedWebSocketSession> unfiltered = ConcurrentHashMap.newKeySet();
+
+        /**
+         * 主题 -> 订阅的连接
+         */
+        private final Map<String, Set<BufferedWebSocketSession>> topics = new ConcurrentHashMap<>();
+
+        private void removeSubscriber(String topic, BufferedWebSocketSession session) {
+
+            topics.computeIfPresent(topic, (key, subscribers) -> {
+                subscribers.remove(session);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+    }
 }
@@ -117,6 +117,15 @@ public class NestStatusCode extends BaseStatusCode {
     public static final Integer DEPLOY_JOB_IS_EXIST = 10019;
     public static final Integer RELATIVE_TARGET_DIR_IS_EMPTY = 10020;
     public static final Integer DEPLOY_MESSAGE_IS_EMPTY = 10021;
+    public static final Integer DEPLOY_NOT_PAUSED = 10022;
+    public static final Integer PROGRAM_ACTION_ERROR = 10023;
+    public static final Integer DEPLOY_EXECUTOR_BUSY = 10024;
+    public static final Integer PROGRAM_LIST_IS_EMPTY = 10025;
+    public static final Integer LOG_WRITE_FAILED = 10026;
+    public static final Integer LOG_NODE_UNAVAILABLE = 10027;
+    public static final Integer BUILD_LIST_IS_EMPTY = 10028;
+    public static final Integer BUILD_LIST_TOO_LARGE = 10029;
+    public static final Integer LOG_BLOCK_NOT_EXIST = 10030;
 
 
 
@@ -149,6 +158,8 @@ public class NestStatusCode extends BaseStatusCode {
     public static final Integer DELETE_SERVER_FAILED = 13008;
     public static final Integer SERVERS_IS_EMPTY = 13009;
     public static final Integer SERVERS_ENVID_NOT_MATCH = 13010;
+    public static final Integer SERVER_MONITOR_METRIC_NOT_EXIST = 13011;
+    public static final Integer SERVER_MONITOR_RESOLUTION_NOT_EXIST = 13012;
 
 
 
@@ -0,0 +1,159 @@
+package com.kiss.kissnest.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 带发送缓冲的 WebSocket 连接：send 只把消息交给连接自己的 SerialExecutor 并立即返回，由共享的发送线程池按顺序写出；
+ * 同一连接同时最多一个线程在写，慢连接只占用一个发送线程。
+ * 缓冲区超过上限或单次写出超过时间上限的连接直接关闭，由客户端重连后重新拉取状态；
+ * 写出超时由 checkSendTimeout 定期检查，关闭连接在单独的 closeExecutor 上执行，不排在卡住的发送任务后面
+ */
+@Slf4j
+public class BufferedWebSocketSession {
+
+    private final WebSocketSession session;
+
+    /**
+     * 排队的消息数由 bufferSizeLimit 按字符数限制，执行器本身不限制任务数
+     */
+    private final SerialExecutor sender;
+
+    private final Executor closeExecutor;
+
+    private final long sendTimeLimit;
+
+    private final int bufferSizeLimit;
+
+    /**
+     * 已提交还未写出的消息的字符数
+     */
+    private final AtomicInteger bufferSize = new AtomicInteger();
+
+    private volatile long sendStartTime;
+
+    private volatile boolean closed;
+
+    public BufferedWebSocketSession(WebSocketSession session, Executor executor, Executor closeExecutor, long sendTimeLimit, int bufferSizeLimit) {
+        this.session = session;
+        this.sender = new SerialExecutor(executor, Integer.MAX_VALUE);
+        this.closeExecutor = closeExecutor;
+        this.sendTimeLimit = sendTimeLimit;
+        this.bufferSizeLimit = bufferSizeLimit;
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    public String getId() {
+        return session.getId();
+    }
+
+    public boolean isOpen() {
+        return !closed && session.isOpen();
+    }
+
+    /**
+     * 放入发送缓冲区，不等待写出
+     *
+     * @return 连接已关闭或因为跟不上被关闭时返回 false
+     */
+    public boolean send(TextMessage message) {
+
+        if (!isOpen()) {
+            return false;
+        }
+
+        if (checkSendTimeout()) {
+            return false;
+        }
+
+        int length = message.getPayload().length();
+
+        if (bufferSize.addAndGet(length) > bufferSizeLimit) {
+            close("发送缓冲区已满");
+            return false;
+        }
+
+        try {
+            sender.execute(() -> write(message, length));
+        } catch (RejectedExecutionException e) {
+            close("发送线程池已满");
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * 当前写出超过 sendTimeLimit 时关闭连接
+     *
+     * @return 是否因超时被关闭
+     */
+    public boolean checkSendTimeout() {
+
+        long startTime = sendStartTime;
+
+        if (startTime > 0 && System.currentTimeMillis() - startTime > sendTimeLimit) {
+            close("发送超时");
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * 连接关闭后排队中的消息直接丢弃
+     */
+    private void write(TextMessage message, int length) {
+
+        bufferSize.addAndGet(-length);
+
+        if (closed) {
+            return;
+        }
+
+        sendStartTime = System.currentTimeMillis();
+
+        try {
+            session.sendMessage(message);
+        } catch (Exception e) {
+            log.warn("推送消息到连接{}失败", session.getId(), e);
+            close("发送失败");
+        } finally {
+            sendStartTime = 0;
+        }
+    }
+
+    private void close(String reason) {
+
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        log.warn("关闭连接{}: {}", session.getId(), reason);
+
+        try {
+            closeExecutor.execute(this::closeSession);
+        } catch (RejectedExecutionException e) {
+            closeSession();
+        }
+    }
+
+    private void closeSession() {
+
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (Exception e) {
+            log.warn("关闭连接{}失败", session.getId(), e);
+        }
+    }
+}
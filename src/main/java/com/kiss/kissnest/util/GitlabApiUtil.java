@@ -10,17 +10,26 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.gitlab.api.GitlabAPI;
 import org.gitlab.api.TokenType;
 import org.gitlab.api.models.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 import com.kiss.foundation.utils.ThreadLocalUtil;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @Slf4j
@@ -38,6 +47,50 @@ public class GitlabApiUtil {
     @Value("${gitlab.server.user}")
     private String gitlabServerUser;
 
+    @Value("${gitlab.client.maxTotal:20}")
+    private Integer maxTotal;
+
+    @Value("${gitlab.client.userTtlSeconds:600}")
+    private Long userTtlSeconds;
+
+    @Value("${gitlab.client.userNegativeTtlSeconds:60}")
+    private Long userNegativeTtlSeconds;
+
+    @Autowired
+    @Qualifier("gitlabExecutor")
+    private ThreadPoolTaskExecutor gitlabExecutor;
+
+    /**
+     * access token -> 客户端
+     */
+    private final Map<String, GitlabAPI> clients = new ConcurrentHashMap<>();
+
+    /**
+     * 用户名 -> GitLab 用户 id
+     */
+    private final Map<String, CachedUserId> userIdCache = new ConcurrentHashMap<>();
+
+    private CloseableHttpClient httpClient;
+
+    @PostConstruct
+    public void init() {
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxTotal);
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictIdleConnections(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+
+        httpClient.close();
+    }
+
     public String getAccessToken(String account, String password) throws Exception {
 
         Map<String, Object> map = new HashMap<>();
@@ -58,7 +111,7 @@ public class GitlabApiUtil {
     public GitlabGroup createGroup(String groupName, String accessToken) {
 
         try {
-            GitlabAPI gitlabAPI = GitlabAPI.connect(gitlabServerUrl, accessToken, TokenType.ACCESS_TOKEN);
+            GitlabAPI gitlabAPI = getClient(accessToken);
             GitlabGroup gitlabGroup = gitlabAPI.createGroup(groupName);
             return gitlabGroup;
         } catch (Exception e) {
@@ -70,7 +123,7 @@ public class GitlabApiUtil {
     public GitlabGroup createSubGroup(String groupName, String accessToken, Integer parentId) {
 
         try {
-            GitlabAPI gitlabAPI = GitlabAPI.connect(gitlabServerUrl, accessToken, TokenType.ACCESS_TOKEN);
+            GitlabAPI gitlabAPI = getClient(accessToken);
             GitlabGroup gitlabGroup = gitlabAPI.createGroup(groupName, groupName, null, null, null, parentId);
             return gitlabGroup;
         } catch (Exception e) {
@@ -81,7 +134,7 @@ public class GitlabApiUtil {
 
     public boolean deleteGroup(Integer groupId, String accessToken) {
         try {
-            GitlabAPI gitlabAPI = GitlabAPI.connect(gitlabServerUrl, accessToken, TokenType.ACCESS_TOKEN);
+            GitlabAPI gitlabAPI = getClient(accessToken);
             gitlabAPI.deleteGroup(groupId);
 
             return true;
@@ -94,7 +147,7 @@ public class GitlabApiUtil {
     public GitlabProject createProject(String projectName, String accessToken) {
 
         try {
-            GitlabAPI gitlabAPI = GitlabAPI.connect(gitlabServerUrl, accessToken, TokenType.ACCESS_TOKEN);
+            GitlabAPI gitlabAPI = getClient(accessToken);
             GitlabProject gitlabProject = gitlabAPI.createProject(projectName);
             return gitlabProject;
         } catch (Exception e) {
@@ -106,7 +159,7 @@ public class GitlabApiUtil {
     public GitlabProject createProjectForGroup(String projectName, Integer groupId, String accessToken) {
 
         try {
-            GitlabAPI gitlabAPI = GitlabAPI.connect(gitlabServerUrl, accessToken, TokenType.ACCESS_TOKEN);
+            GitlabAPI gitlabAPI = getClient(accessToken);
             GitlabGroup gitlabGroup = null;
 
             try {
@@ -128,7 +181,7 @@ public class GitlabApiUtil {
 
     public boolean deleteProject(Integer projectId, String accessToken) {
         try {
-            GitlabAPI gitlabAPI = GitlabAPI.connect(gitlabServerUrl, accessToken, TokenType.ACCESS_TOKEN);
+            GitlabAPI gitlabAPI = getClient(accessToken);
             gitlabAPI.deleteProject(projectId);
 
             return true;
@@ -140,7 +193,7 @@ public class GitlabApiUtil {
 
     public List<GitlabBranch> getBranches(Integer projectId, String accessToken) {
         try {
-            GitlabAPI gitlabAPI = GitlabAPI.connect(gitlabServerUrl, accessToken, TokenType.ACCESS_TOKEN);
+            GitlabAPI gitlabAPI = getClient(accessToken);
             List<GitlabBranch> gitlabBranches = gitlabAPI.getBranches(projectId);
 
             return gitlabBranches;
@@ -152,7 +205,7 @@ public class GitlabApiUtil {
 
     public GitlabTag addTag(Integer projectId, String tagName, String ref, String message, String releaseDescription, String accessToken) {
         try {
-            GitlabAPI gitlabAPI = GitlabAPI.connect(gitlabServerUrl, accessToken, TokenType.ACCESS_TOKEN);
+            GitlabAPI gitlabAPI = getClient(accessToken);
             GitlabTag gitlabTag = gitlabAPI.addTag(projectId, tagName, ref, message, releaseDescription);
 
             return gitlabTag;
@@ -164,7 +217,7 @@ public class GitlabApiUtil {
 
     public void createBranch(Integer projectId,String branchName,String ref,String accessToken) {
         try {
-            GitlabAPI gitlabAPI = GitlabAPI.connect(gitlabServerUrl, accessToken, TokenType.ACCESS_TOKEN);
+            GitlabAPI gitlabAPI = getClient(accessToken);
             gitlabAPI.createBranch(projectId,branchName,ref);
         } catch (Exception e) {
             e.printStackTrace();
@@ -173,7 +226,7 @@ public class GitlabApiUtil {
 
     public List<GitlabTag> getTags(Integer projectId, String accessToken) {
         try {
-            GitlabAPI gitlabAPI = GitlabAPI.connect(gitlabServerUrl, accessToken, TokenType.ACCESS_TOKEN);
+            GitlabAPI gitlabAPI = getClient(accessToken);
            return gitlabAPI.getTags(projectId);
         } catch (Exception e) {
             log.info("获取tag失败了");
@@ -183,56 +236,148 @@ public class GitlabApiUtil {
     }
 
     public void addMember(Integer repositoryId, String accessToken, String username, Integer level, RepositoryType type, String name) {
-        try {
-            GitlabAPI gitlabAPI = GitlabAPI.connect(gitlabServerUrl, accessToken, TokenType.ACCESS_TOKEN);
-            String users = getUser(username, accessToken);
 
-            if (users == null) {
-                ThreadLocalUtil.setString("member_account_has_not_been_activated", name);
+        Map<String, Integer> levels = new HashMap<>();
+        levels.put(username, level);
+        Map<String, String> names = new HashMap<>();
+        names.put(username, name);
+
+        addMembers(repositoryId, accessToken, levels, type, names);
+    }
+
+    /**
+     * 批量添加成员，先一次性解析所有用户名对应的 GitLab 用户 id，再逐个添加
+     *
+     * @param levels 用户名 -> 角色
+     * @param names  用户名 -> 姓名，用于提示未激活的账号，可以为 null
+     * @throws TransactionalException 有用户查询失败时抛出 MEMBER_ACCOUNT_HAS_NOT_BEEN_ACTIVATED
+     */
+    public void addMembers(Integer repositoryId, String accessToken, Map<String, Integer> levels, RepositoryType type, Map<String, String> names) {
+
+        if (levels.isEmpty()) {
+            return;
+        }
+
+        Map<String, Integer> userIds = resolveUserIds(levels.keySet(), accessToken);
+
+        // 任一用户查询失败时不添加任何成员
+        for (String username : levels.keySet()) {
+            if (!userIds.containsKey(username)) {
+                log.warn("查询 GitLab 用户{}失败", username);
+                ThreadLocalUtil.setString("member_account_has_not_been_activated", names == null || names.get(username) == null ? username : names.get(username));
                 throw new TransactionalException(NestStatusCode.MEMBER_ACCOUNT_HAS_NOT_BEEN_ACTIVATED);
             }
+        }
 
-            JSONArray jsonArray = JSONObject.parseArray(users);
+        GitlabAPI gitlabAPI = getClient(accessToken);
 
-            if (jsonArray.size() == 0) {
-                return;
+        for (Map.Entry<String, Integer> entry : levels.entrySet()) {
+            Integer id = userIds.get(entry.getKey());
+
+            if (id == null) {
+                continue;
+            }
+
+            try {
+                GitlabAccessLevel accessLevel = toAccessLevel(entry.getValue());
+
+                switch (type) {
+                    case Group:
+                        gitlabAPI.addGroupMember(repositoryId, id, accessLevel);
+                        break;
+                    case SubGroup:
+                        gitlabAPI.addGroupMember(repositoryId, id, accessLevel);
+                        break;
+                    case Project:
+                        gitlabAPI.addProjectMember(repositoryId, id, accessLevel);
+                        break;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
             }
+        }
+    }
+
+    /**
+     * 解析用户名对应的 GitLab 用户 id，缓存未命中的用户名并行查询
+     *
+     * @return 用户名 -> 用户 id；GitLab 中不存在的用户值为 null，查询失败的用户不在结果中
+     */
+    public Map<String, Integer> resolveUserIds(Collection<String> usernames, String accessToken) {
 
-            JSONObject jsonObject = jsonArray.getJSONObject(0);
-            Integer id = jsonObject.getInteger("id");
+        Map<String, Integer> userIds = new HashMap<>();
+        Map<String, CompletableFuture<CachedUserId>> lookups = new HashMap<>();
+        long now = System.currentTimeMillis();
 
-            GitlabAccessLevel accessLevel;
+        for (String username : usernames) {
+            CachedUserId cached = userIdCache.get(username);
 
-            switch (level) {
-                case 1:
-                    accessLevel = GitlabAccessLevel.Master;
-                    break;
-                case 2:
-                    accessLevel = GitlabAccessLevel.Developer;
-                    break;
-                default:
-                    accessLevel = GitlabAccessLevel.Guest;
+            if (cached != null && cached.expireAt > now) {
+                userIds.put(username, cached.id);
+            } else {
+                lookups.put(username, CompletableFuture.supplyAsync(() -> lookupUserId(username, accessToken), gitlabExecutor));
             }
+        }
+
+        for (Map.Entry<String, CompletableFuture<CachedUserId>> entry : lookups.entrySet()) {
+            CachedUserId cached = entry.getValue().join();
 
-            switch (type) {
-                case Group:
-                    gitlabAPI.addGroupMember(repositoryId, id, accessLevel);
-                    break;
-                case SubGroup:
-                    gitlabAPI.addGroupMember(repositoryId, id, accessLevel);
-                    break;
-                case Project:
-                    gitlabAPI.addProjectMember(repositoryId, id, accessLevel);
-                    break;
+            if (cached != null) {
+                userIdCache.put(entry.getKey(), cached);
+                userIds.put(entry.getKey(), cached.id);
             }
+        }
+
+        return userIds;
+    }
+
+    private CachedUserId lookupUserId(String username, String accessToken) {
+
+        String users = getUser(username, accessToken);
+
+        if (users == null) {
+            return null;
+        }
+
+        try {
+            JSONArray jsonArray = JSONObject.parseArray(users);
+            long now = System.currentTimeMillis();
+
+            // 不存在的用户同样缓存，但有效期较短，用户激活后能尽快生效
+            if (jsonArray.size() == 0) {
+                return new CachedUserId(null, now + userNegativeTtlSeconds * 1000);
+            }
+
+            return new CachedUserId(jsonArray.getJSONObject(0).getInteger("id"), now + userTtlSeconds * 1000);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.warn("解析 GitLab 用户{}失败:{}", username, users);
+            return null;
         }
     }
 
+    private GitlabAccessLevel toAccessLevel(Integer level) {
+
+        switch (level) {
+            case 1:
+                return GitlabAccessLevel.Master;
+            case 2:
+                return GitlabAccessLevel.Developer;
+            default:
+                return GitlabAccessLevel.Guest;
+        }
+    }
+
+    /**
+     * 同一个 token 复用同一个客户端，底层 HttpURLConnection 的 keep-alive 连接由 JVM 复用
+     */
+    private GitlabAPI getClient(String accessToken) {
+
+        return clients.computeIfAbsent(accessToken, token -> GitlabAPI.connect(gitlabServerUrl, token, TokenType.ACCESS_TOKEN));
+    }
+
     public String getBranchVersion(Integer projectId, String branch, String accessToken) {
         try {
-            GitlabAPI gitlabAPI = GitlabAPI.connect(gitlabServerUrl, accessToken, TokenType.ACCESS_TOKEN);
+            GitlabAPI gitlabAPI = getClient(accessToken);
             GitlabBranch gitlabBranch = gitlabAPI.getBranch(projectId, branch);
 
             return gitlabBranch.getCommit().getId();
@@ -244,29 +389,33 @@ public class GitlabApiUtil {
 
     public String getUser(String userName, String accessToken) {
 
-        CloseableHttpClient httpclient = HttpClients.createDefault();
         HttpGet httpGet = new HttpGet(String.format(gitlabServerUser, userName));
-        CloseableHttpResponse response = null;
-        try {
-            httpGet.setHeader("Authorization", "Bearer " + accessToken);
-            response = httpclient.execute(httpGet);
+        httpGet.setHeader("Authorization", "Bearer " + accessToken);
+
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
             String str = EntityUtils.toString(response.getEntity(), "utf-8");
+
+            if (response.getStatusLine().getStatusCode() != 200) {
+                log.warn("查询 GitLab 用户{}失败,状态码{}", userName, response.getStatusLine().getStatusCode());
+                return null;
+            }
+
             return str;
         } catch (Exception e) {
             e.printStackTrace();
-            httpGet.abort();
             return null;
-        } finally {
-            httpGet.abort();
-            if (response != null) {
-
-                try {
-                    response.close();
-                    httpclient.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+        }
+    }
+
+    private static class CachedUserId {
+
+        private final Integer id;
+
+        private final long expireAt;
+
+        CachedUserId(Integer id, long expireAt) {
+            this.id = id;
+            this.expireAt = expireAt;
         }
     }
 
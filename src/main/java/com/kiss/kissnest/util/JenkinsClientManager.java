@@ -0,0 +1,279 @@
+package com.kiss.kissnest.util;
+
+import com.kiss.kissnest.entity.CrumbEntity;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Jenkins HTTP 连接管理：所有请求共享一个带连接池的 HttpClient，Basic 认证头直接随请求发送；
+ * 每个用户缓存 crumb 及其绑定的 session cookie，Jenkins 拒绝 crumb 时重新获取并重试一次；
+ * 用户的密码或 token 变化时替换会话，超过 sessionIdleSeconds 未使用的会话被移除
+ */
+@Component
+@Slf4j
+public class JenkinsClientManager {
+
+    @Value("${jenkins.url}")
+    private String jenkinsUrl;
+
+    @Value("${jenkins.crumbPath}")
+    private String jenkinsCrumbPath;
+
+    @Value("${jenkins.client.maxTotal:50}")
+    private Integer maxTotal;
+
+    @Value("${jenkins.client.maxPerRoute:20}")
+    private Integer maxPerRoute;
+
+    @Value("${jenkins.client.keepAliveSeconds:60}")
+    private Long keepAliveSeconds;
+
+    @Value("${jenkins.client.connectTimeoutSeconds:10}")
+    private Integer connectTimeoutSeconds;
+
+    @Value("${jenkins.client.socketTimeoutSeconds:60}")
+    private Integer socketTimeoutSeconds;
+
+    @Value("${jenkins.client.sessionIdleSeconds:1800}")
+    private Long sessionIdleSeconds;
+
+    private PoolingHttpClientConnectionManager connectionManager;
+
+    private CloseableHttpClient httpClient;
+
+    /**
+     * 用户名 -> 会话
+     */
+    private final Map<String, JenkinsSession> sessions = new ConcurrentHashMap<>();
+
+    private volatile long lastEvictAt;
+
+    @PostConstruct
+    public void init() {
+
+        connectionManager = new PoolingHttpClientConnectionManager(keepAliveSeconds, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutSeconds * 1000)
+                .setSocketTimeout(socketTimeoutSeconds * 1000)
+                .build();
+
+        // Location 头需要原样返回给调用方，不自动跟随重定向
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> keepAliveSeconds * 1000)
+                .disableRedirectHandling()
+                .evictIdleConnections(keepAliveSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+
+        httpClient.close();
+    }
+
+    public JenkinsResponse get(String pathOrUrl, String account, String passwordOrToken) throws IOException {
+
+        return execute(() -> new HttpGet(toUrl(pathOrUrl)), getSession(account, passwordOrToken), false);
+    }
+
+    /**
+     * POST 请求附带 crumb，crumb 失效（403）时清空该用户会话后重试一次
+     *
+     * @param entitySupplier 请求体，重试时重新创建；为 null 时发送空请求体
+     */
+    public JenkinsResponse post(String pathOrUrl, Supplier<HttpEntity> entitySupplier, String account, String passwordOrToken) throws IOException {
+
+        JenkinsSession session = getSession(account, passwordOrToken);
+
+        Supplier<HttpRequestBase> requestSupplier = () -> {
+            HttpPost httpPost = new HttpPost(toUrl(pathOrUrl));
+            if (entitySupplier != null) {
+                httpPost.setEntity(entitySupplier.get());
+            }
+            return httpPost;
+        };
+
+        JenkinsResponse response = execute(requestSupplier, session, true);
+
+        if (response.getStatus() == HttpStatus.SC_FORBIDDEN) {
+            log.info("Jenkins 用户{}的 crumb 失效,重新获取", account);
+            session.reset();
+            response = execute(requestSupplier, session, true);
+        }
+
+        return response;
+    }
+
+    private JenkinsResponse execute(Supplier<HttpRequestBase> requestSupplier, JenkinsSession session, boolean withCrumb) throws IOException {
+
+        HttpRequestBase request = requestSupplier.get();
+        request.setHeader(HttpHeaders.AUTHORIZATION, session.authorization);
+
+        if (withCrumb) {
+            CrumbEntity crumb = session.getCrumb();
+            if (crumb != null) {
+                request.setHeader(crumb.getCrumbRequestField(), crumb.getCrumb());
+            }
+        }
+
+        HttpClientContext context = HttpClientContext.create();
+        context.setCookieStore(session.cookieStore);
+
+        try (CloseableHttpResponse httpResponse = httpClient.execute(request, context)) {
+            JenkinsResponse response = new JenkinsResponse();
+            response.setStatus(httpResponse.getStatusLine().getStatusCode());
+
+            Header location = httpResponse.getFirstHeader(HttpHeaders.LOCATION);
+            response.setLocation(location == null ? null : location.getValue());
+
+            for (Header header : httpResponse.getAllHeaders()) {
+                response.getHeaders().put(header.getName().toLowerCase(), header.getValue());
+            }
+
+            // 读完响应体，连接才能归还连接池
+            HttpEntity entity = httpResponse.getEntity();
+            response.setBody(entity == null ? null : EntityUtils.toString(entity, StandardCharsets.UTF_8));
+
+            return response;
+        }
+    }
+
+    private JenkinsSession getSession(String account, String passwordOrToken) {
+
+        long now = System.currentTimeMillis();
+        String authorization = toAuthorization(account, passwordOrToken);
+
+        evictIdleSessions(now);
+
+        JenkinsSession session = sessions.compute(account, (key, current) ->
+                current != null && current.authorization.equals(authorization) ? current : new JenkinsSession(account, authorization));
+        session.lastUsedAt = now;
+
+        return session;
+    }
+
+    /**
+     * 每隔 sessionIdleSeconds 检查一次，移除期间没有使用过的会话
+     */
+    private void evictIdleSessions(long now) {
+
+        long idleMillis = sessionIdleSeconds * 1000;
+
+        if (now - lastEvictAt < idleMillis) {
+            return;
+        }
+
+        lastEvictAt = now;
+        sessions.values().removeIf(session -> now - session.lastUsedAt > idleMillis);
+    }
+
+    private String toAuthorization(String account, String passwordOrToken) {
+
+        return "Basic " + Base64.getEncoder().encodeToString((account + ":" + passwordOrToken).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String toUrl(String pathOrUrl) {
+
+        return pathOrUrl.startsWith("http") ? pathOrUrl : jenkinsUrl + pathOrUrl;
+    }
+
+    @Data
+    public static class JenkinsResponse {
+
+        private int status;
+
+        private String location;
+
+        private String body;
+
+        /**
+         * 响应头，名称统一为小写
+         */
+        private Map<String, String> headers = new HashMap<>();
+
+        public boolean isSuccessful() {
+            return status >= 200 && status < 400;
+        }
+
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase());
+        }
+    }
+
+    private class JenkinsSession {
+
+        private final String account;
+
+        private final String authorization;
+
+        private final CookieStore cookieStore = new BasicCookieStore();
+
+        private volatile CrumbEntity crumb;
+
+        private volatile long lastUsedAt;
+
+        JenkinsSession(String account, String authorization) {
+            this.account = account;
+            this.authorization = authorization;
+        }
+
+        /**
+         * crumb 与获取它时的 session cookie 绑定，两者必须一起缓存、一起失效
+         */
+        synchronized CrumbEntity getCrumb() throws IOException {
+
+            if (crumb == null) {
+                JenkinsResponse response = execute(() -> new HttpGet(toUrl(jenkinsCrumbPath)), this, false);
+
+                if (response.getStatus() == HttpStatus.SC_OK) {
+                    crumb = JsonUtil.getJsonObject(response.getBody(), CrumbEntity.class);
+                } else {
+                    // 未开启 CSRF 保护时 crumbIssuer 返回 404，不带 crumb 请求即可
+                    log.warn("获取 Jenkins 用户{}的 crumb 失败,状态码{}", account, response.getStatus());
+                }
+            }
+
+            return crumb;
+        }
+
+        synchronized void reset() {
+
+            crumb = null;
+            cookieStore.clear();
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.kiss.kissnest.util;
 
 import com.alibaba.fastjson.JSONObject;
-import com.kiss.kissnest.entity.CrumbEntity;
 import com.offbytwo.jenkins.JenkinsServer;
 import com.offbytwo.jenkins.client.JenkinsHttpClient;
 import com.offbytwo.jenkins.client.JenkinsHttpConnection;
@@ -9,25 +8,19 @@ import com.offbytwo.jenkins.model.*;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.http.*;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.AuthCache;
-import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.*;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import com.kiss.foundation.utils.ThreadLocalUtil;
 
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -58,98 +51,67 @@ public class JenkinsUtil {
     @Value("${jenkins.queuePath}")
     private String jenkinsQueuePath;
 
-    public boolean createJob(String jobName, String configPath, String account, String passwordOrToken) {
+    @Value("${jenkins.buildLogUrl}")
+    private String jenkinsBuildLogUrl;
 
-        JenkinsServer server = null;
+    @Value("${jenkins.progressiveTextPath:/logText/progressiveText}")
+    private String jenkinsProgressiveTextPath;
+
+    @Autowired
+    private JenkinsClientManager jenkinsClientManager;
+
+    public boolean createJob(String jobName, String configPath, String account, String passwordOrToken) {
 
         try {
-            server = new JenkinsServer(new URI(jenkinsUrl), account, passwordOrToken);
             StringBuilder builder = readFile(configPath);
             if (builder == null) {
                 return false;
             }
 
-            server.createJob(jobName, builder.toString(), false);
-
-            return true;
+            return postJobConfig("/createItem?name=" + encode(jobName), builder.toString(), account, passwordOrToken);
         } catch (Exception e) {
             e.printStackTrace();
             return false;
-        } finally {
-            if (server != null) {
-                server.close();
-            }
         }
     }
 
     public boolean createJobByShell(String jobName, String path, String shell, String notificationUrl, String sshUrl, String account, String workspace, String passwordOrToken) {
 
-        JenkinsServer server = null;
-
         try {
-            server = new JenkinsServer(new URI(jenkinsUrl), account, passwordOrToken);
             StringBuilder builder = readFileFromClassPath("/config.xml");
             String formatShell = StringEscapeUtils.escapeHtml(shell);
             String script = String.format(builder.toString(), notificationUrl, sshUrl, workspace, workspace, jobName, path, jenkinBinIp, formatShell);
 
-            if (builder == null) {
-                return false;
-            }
-
-            server.createJob(jobName, script, false);
-
-            return true;
+            return postJobConfig("/createItem?name=" + encode(jobName), script, account, passwordOrToken);
         } catch (Exception e) {
             e.printStackTrace();
             return false;
-        } finally {
-            if (server != null) {
-                server.close();
-            }
         }
     }
 
     public boolean updateJob(String jobName, String path, String shell, String notificationUrl, String sshUrl, String account, String workspace, String passwordOrToken) {
-        JenkinsServer server = null;
 
         try {
-            server = new JenkinsServer(new URI(jenkinsUrl), account, passwordOrToken);
             StringBuilder builder = readFileFromClassPath("/config.xml");
             String formatShell = StringEscapeUtils.escapeHtml(shell);
             String script = String.format(builder.toString(), notificationUrl, sshUrl, workspace, workspace, jobName, path, jenkinBinIp, formatShell);
 
-            if (builder == null) {
-                return false;
-            }
-
-            server.updateJob(jobName, script, false);
-
-            return true;
+            return postJobConfig("/job/" + encode(jobName) + "/config.xml", script, account, passwordOrToken);
         } catch (Exception e) {
             e.printStackTrace();
             return false;
-        } finally {
-            if (server != null) {
-                server.close();
-            }
         }
     }
 
     public boolean deleteJob(String jobName, String account, String passwordOrToken) {
-        JenkinsServer server = null;
 
         try {
-            server = new JenkinsServer(new URI(jenkinsUrl), account, passwordOrToken);
-            server.deleteJob(jobName);
+            JenkinsClientManager.JenkinsResponse response = jenkinsClientManager.post("/job/" + encode(jobName) + "/doDelete", null, account, passwordOrToken);
 
-            return true;
+            return response.isSuccessful();
         } catch (Exception e) {
             e.printStackTrace();
             return false;
-        } finally {
-            if (server != null) {
-                server.close();
-            }
         }
     }
 
@@ -164,15 +126,9 @@ public class JenkinsUtil {
                 url = String.format(buildWithParameterUrl, jobName);
             }
 
-            HttpResponse auth = authorizationExecute(params, url, account, passwordOrToken);
-            Header[] headers = auth.getHeaders("Location");
-
-            String location = null;
-            if (headers != null && headers.length != 0) {
-                location = headers[0] == null ? null : headers[0].getValue();
-            }
+            JenkinsClientManager.JenkinsResponse response = authorizationExecute(params, url, account, passwordOrToken);
 
-            return location;
+            return response == null ? null : response.getLocation();
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -185,9 +141,8 @@ public class JenkinsUtil {
         String url = String.format(generateTokenUrl, account);
 
         try {
-            authorizationExecute(null, url, account, password);
-            String result = ThreadLocalUtil.getString("entity");
-            return JSONObject.parseObject(result).getJSONObject("data").getString("tokenValue");
+            JenkinsClientManager.JenkinsResponse response = authorizationExecute(null, url, account, password);
+            return JSONObject.parseObject(response.getBody()).getJSONObject("data").getString("tokenValue");
         } catch (Exception e) {
             e.printStackTrace();
             return "";
@@ -339,14 +294,14 @@ public class JenkinsUtil {
     public String getConsoleOutputText(String jobName, String xmlLogUrl, String account, String passwordOrToken) {
 
         try {
+            JenkinsClientManager.JenkinsResponse response = jenkinsClientManager.get(xmlLogUrl, account, passwordOrToken);
 
-            JenkinsServer server = new JenkinsServer(new URI(jenkinsUrl), account, passwordOrToken);
-            FolderJob folderJob = new FolderJob(jobName, jenkinsUrl);
-            JobWithDetails jobWithDetails = server.getJob(folderJob, jobName);
-            JenkinsHttpConnection client = jobWithDetails.getClient();
-
-            return client.get(xmlLogUrl);
+            if (!response.isSuccessful()) {
+                log.warn("获取任务{}构建日志失败,状态码{}", jobName, response.getStatus());
+                return null;
+            }
 
+            return response.getBody();
         } catch (Exception e) {
             e.printStackTrace();
             return null;
@@ -355,6 +310,14 @@ public class JenkinsUtil {
     }
 
 
+    /**
+     * 从 start 字节开始读取构建日志，响应头 X-Text-Size 为下次读取的起点，X-More-Data 为 true 表示构建仍在输出
+     */
+    public JenkinsClientManager.JenkinsResponse getProgressiveText(String jobName, Integer number, Long start, String account, String passwordOrToken) throws IOException {
+
+        return jenkinsClientManager.get(String.format(jenkinsBuildLogUrl, encode(jobName), number) + jenkinsProgressiveTextPath + "?start=" + start, account, passwordOrToken);
+    }
+
     public StringBuilder readFileFromClassPath(String name) throws IOException {
 
         InputStream in = JenkinsUtil.class.getResourceAsStream(name);
@@ -369,70 +332,42 @@ public class JenkinsUtil {
         return builder;
     }
 
-    private HttpResponse authorizationExecute(Map<String, String> params, String url, String account, String passwordOrToken) throws IOException {
+    private JenkinsClientManager.JenkinsResponse authorizationExecute(Map<String, String> params, String url, String account, String passwordOrToken) throws IOException {
 
-        URI uri = URI.create(url);
-        HttpHost host = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
-        CredentialsProvider credsProvider = new BasicCredentialsProvider();
-        credsProvider.setCredentials(new AuthScope(uri.getHost(), uri.getPort()), new UsernamePasswordCredentials(account, passwordOrToken));
-        AuthCache authCache = new BasicAuthCache();
-        BasicScheme basicAuth = new BasicScheme();
-        authCache.put(host, basicAuth);
-        HttpPost httpPost = new HttpPost(uri);
+        List<BasicNameValuePair> pairs = new ArrayList<>();
 
         if (null != params && !params.isEmpty()) {
-            List<BasicNameValuePair> pairs = new ArrayList<>();
-
             for (Map.Entry<String, String> entry : params.entrySet()) {
                 pairs.add(new BasicNameValuePair(entry.getKey(), entry.getValue()));
             }
-
-            UrlEncodedFormEntity urlEncodedFormEntity = new UrlEncodedFormEntity(pairs, "UTF-8");
-            httpPost.setEntity(urlEncodedFormEntity);
         }
 
-        HttpClientContext localContext = HttpClientContext.create();
-        localContext.setAuthCache(authCache);
-        HttpResponse response = null;
-        CrumbEntity crumbEntity = getCrumb(jenkinsUrl, jenkinsCrumbPath, account, passwordOrToken);
+        JenkinsClientManager.JenkinsResponse response = jenkinsClientManager.post(url, pairs.isEmpty() ? null : () -> new UrlEncodedFormEntity(pairs, StandardCharsets.UTF_8), account, passwordOrToken);
+        Integer code = response.getStatus();
 
-        try (CloseableHttpClient httpClient = HttpClients.custom().setDefaultCredentialsProvider(credsProvider).build()) {
-            assert crumbEntity != null;
-            httpPost.addHeader(crumbEntity.getCrumbRequestField(), crumbEntity.getCrumb());
-            response = httpClient.execute(host, httpPost, localContext);
+        if (code == HttpStatus.SC_OK || code == HttpStatus.SC_CREATED) {
+            return response;
+        }
 
-            Integer code = response.getStatusLine().getStatusCode();
+        log.warn("Jenkins 请求{}失败,状态码{}", url, code);
 
-            if (code == HttpStatus.SC_OK || code == HttpStatus.SC_CREATED) {
-                String result = EntityUtils.toString(response.getEntity(), "utf-8");
-                ThreadLocalUtil.setString("entity", result);
-                return response;
-            }
+        return null;
+    }
 
-            return null;
-        } catch (Exception e) {
-            httpPost.abort();
-            e.printStackTrace();
-            return null;
-        } finally {
+    private boolean postJobConfig(String path, String config, String account, String passwordOrToken) throws IOException {
 
-            if (response != null) {
-                ((CloseableHttpResponse) response).close();
-            }
+        JenkinsClientManager.JenkinsResponse response = jenkinsClientManager.post(path, () -> new StringEntity(config, ContentType.create("application/xml", StandardCharsets.UTF_8)), account, passwordOrToken);
 
-            httpPost.releaseConnection();
+        if (!response.isSuccessful()) {
+            log.warn("Jenkins 请求{}失败,状态码{}", path, response.getStatus());
         }
 
+        return response.isSuccessful();
     }
 
-    private CrumbEntity getCrumb(String uri, String path, String username, String password) {
-        try (JenkinsHttpClient jenkinsHttpClient = new JenkinsHttpClient(new URI(uri), username, password)) {
-            String jsonResult = jenkinsHttpClient.get(path);
-            return JsonUtil.getJsonObject(jsonResult, CrumbEntity.class);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
+    private String encode(String jobName) throws UnsupportedEncodingException {
+
+        return URLEncoder.encode(jobName, "UTF-8").replace("+", "%20");
     }
 
     public static void main(String[] args) throws Exception {
@@ -0,0 +1,119 @@
+package com.kiss.kissnest.util;
+
+import com.kiss.kissnest.entity.LogBlock;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 日志存储实例之间读取日志块：每个实例启动时把自己的访问地址登记到 Redis，
+ * 读取其他实例写入的块时到写入的实例上读取压缩后的块，沿用当前请求的 X-Access-Token
+ */
+@Component
+@Slf4j
+public class LogNodeClient {
+
+    private static final String NODES_KEY = "nest:log:nodes";
+
+    private static final String BLOCK_PATH = "/job/log/block";
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Value("${log.store.url:}")
+    private String url;
+
+    @Value("${server.port:8080}")
+    private Integer port;
+
+    @Value("${log.store.remoteTimeoutSeconds:10}")
+    private Long remoteTimeoutSeconds;
+
+    private OkHttpClient client;
+
+    @PostConstruct
+    public void init() {
+
+        client = new OkHttpClient.Builder()
+                .connectTimeout(remoteTimeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(remoteTimeoutSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 登记本实例的访问地址，未配置 url 时使用本机 IP 和服务端口
+     */
+    public void register(String node) {
+
+        String address = url;
+
+        try {
+            if (StringUtils.isEmpty(address)) {
+                address = "http://" + InetAddress.getLocalHost().getHostAddress() + ":" + port;
+            }
+            redisTemplate.opsForHash().put(NODES_KEY, node, address);
+            log.info("日志存储实例{}登记地址{}", node, address);
+        } catch (Exception e) {
+            log.error("日志存储实例{}登记地址失败", node, e);
+        }
+    }
+
+    /**
+     * 从写入的实例读取压缩后的块，实例未登记或请求失败时抛出 IOException
+     */
+    public byte[] fetchBlock(LogBlock block) throws IOException {
+
+        Object address = redisTemplate.opsForHash().get(NODES_KEY, block.getNode());
+
+        if (address == null) {
+            throw new IOException("日志存储实例" + block.getNode() + "未登记地址");
+        }
+
+        Request.Builder builder = new Request.Builder().url(address + BLOCK_PATH + "?id=" + block.getId());
+        HttpServletRequest request = getHttpServletRequest();
+
+        if (request != null) {
+            if (request.getHeader("X-Access-Token") != null) {
+                builder.header("X-Access-Token", request.getHeader("X-Access-Token"));
+            }
+            if (request.getHeader("X-LANGUAGE") != null) {
+                builder.header("X-LANGUAGE", request.getHeader("X-LANGUAGE"));
+            }
+        }
+
+        try (Response response = client.newCall(builder.build()).execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("读取实例" + block.getNode() + "上的日志块" + block.getId() + "失败,状态码" + response.code());
+            }
+
+            byte[] compressed = response.body().bytes();
+
+            if (compressed.length != block.getCompressedSize()) {
+                throw new IOException("实例" + block.getNode() + "返回的日志块" + block.getId() + "长度不一致");
+            }
+
+            return compressed;
+        }
+    }
+
+    private HttpServletRequest getHttpServletRequest() {
+
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+
+        return attributes == null ? null : attributes.getRequest();
+    }
+}
@@ -0,0 +1,614 @@
+package com.kiss.kissnest.util;
+
+import com.kiss.kissnest.dao.LogBlockDao;
+import com.kiss.kissnest.entity.LogBlock;
+import com.kiss.kissnest.output.LogRangeOutput;
+import com.kiss.kissnest.status.NestStatusCode;
+import com.kiss.foundation.exception.StatusException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 构建、部署输出的日志存储：输出切成不超过 blockBytes 的块，每块单独压缩后追加写入本地段文件，
+ * 块的位置与原文偏移、行号记录在 logblocks 表；按字节或行读取时只通过内存映射读取并解压相关的块。
+ * 段文件只在写入的实例上，每个实例写在 path/实例名 目录下，logblocks 记录写入的实例；
+ * 没有共享存储（shared 为 false）时其他实例写入的块通过 LogNodeClient 到写入的实例上读取，没有实例名的块是本地旧数据。
+ * 同一日志的追加按 (type, logId) 分段加锁串行执行，查询、压缩和写索引都在分段锁内；只有写入段文件时持有全局的 writeLock
+ */
+@Component
+@Slf4j
+public class LogStore {
+
+    public static final String UNIT_LINE = "line";
+
+    public static final String UNIT_BYTE = "byte";
+
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("segment-(\\d+)\\.log");
+
+    private static final int APPEND_LOCK_STRIPES = 64;
+
+    @Autowired
+    private LogBlockDao logBlockDao;
+
+    @Autowired
+    private LogNodeClient logNodeClient;
+
+    @Value("${log.store.path:/data/kiss-nest/logs}")
+    private String path;
+
+    @Value("${log.store.segmentBytes:268435456}")
+    private Long segmentBytes;
+
+    @Value("${log.store.blockBytes:65536}")
+    private Integer blockBytes;
+
+    @Value("${log.store.node:}")
+    private String node;
+
+    @Value("${log.store.shared:false}")
+    private Boolean shared;
+
+    /**
+     * 实例名/段号 -> 只读通道
+     */
+    private final Map<String, FileChannel> readChannels = new ConcurrentHashMap<>();
+
+    private final Object[] appendLocks = newLocks(APPEND_LOCK_STRIPES);
+
+    /**
+     * 保护 writeChannel、activeSegment、writePosition
+     */
+    private final Object writeLock = new Object();
+
+    private FileChannel writeChannel;
+
+    private int activeSegment;
+
+    private long writePosition;
+
+    @PostConstruct
+    public void init() throws IOException {
+
+        if (node == null || node.trim().isEmpty()) {
+            node = InetAddress.getLocalHost().getHostName();
+        }
+
+        node = node.trim().replaceAll("[^A-Za-z0-9._-]", "_");
+        File directory = nodeDirectory(node);
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("无法创建日志目录 " + directory);
+        }
+
+        String[] names = directory.list();
+
+        if (names != null) {
+            for (String name : names) {
+                Matcher matcher = SEGMENT_PATTERN.matcher(name);
+                if (matcher.matches()) {
+                    activeSegment = Math.max(activeSegment, Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+
+        openActiveSegment();
+        logNodeClient.register(node);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+
+        synchronized (writeLock) {
+            writeChannel.close();
+        }
+
+        for (FileChannel channel : readChannels.values()) {
+            channel.close();
+        }
+    }
+
+    /**
+     * 追加输出，每次追加都以换行结束，保证行号在块之间连续；
+     * 任一块写入失败时不记录任何块，已写入段文件的部分没有索引引用，抛出 LOG_WRITE_FAILED
+     */
+    public void append(Integer type, Integer logId, String text) {
+
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+
+        synchronized (appendLock(type, logId)) {
+            write(type, logId, text, logBlockDao.getLastLogBlock(type, logId));
+        }
+    }
+
+    /**
+     * 日志还没有任何块时才写入，整段输出只写一次的场景（如构建结束时的完整输出）重试时不会重复追加
+     *
+     * @return 是否写入
+     */
+    public boolean appendIfAbsent(Integer type, Integer logId, String text) {
+
+        if (text == null || text.isEmpty()) {
+            return false;
+        }
+
+        synchronized (appendLock(type, logId)) {
+            if (logBlockDao.getLastLogBlock(type, logId) != null) {
+                return false;
+            }
+
+            write(type, logId, text, null);
+            return true;
+        }
+    }
+
+    private void write(Integer type, Integer logId, String text, LogBlock last) {
+
+        byte[] bytes = (text.endsWith("\n") ? text : text + "\n").getBytes(StandardCharsets.UTF_8);
+        long rawOffset = last == null ? 0 : last.getRawOffset() + last.getRawSize();
+        long lineOffset = last == null ? 0 : last.getLineOffset() + last.getLineCount();
+        List<LogBlock> blocks = new ArrayList<>();
+        List<byte[]> compressedBlocks = new ArrayList<>();
+        int start = 0;
+
+        while (start < bytes.length) {
+            int end = blockEnd(bytes, start);
+            byte[] compressed = compress(bytes, start, end - start);
+
+            LogBlock block = new LogBlock();
+            block.setType(type);
+            block.setLogId(logId);
+            block.setCompressedSize(compressed.length);
+            block.setRawOffset(rawOffset);
+            block.setRawSize(end - start);
+            block.setLineOffset(lineOffset);
+            block.setLineCount(countLines(bytes, start, end));
+            block.setNode(node);
+
+            blocks.add(block);
+            compressedBlocks.add(compressed);
+            rawOffset += block.getRawSize();
+            lineOffset += block.getLineCount();
+            start = end;
+        }
+
+        writeBlocks(type, logId, blocks, compressedBlocks);
+        logBlockDao.createLogBlocks(blocks);
+    }
+
+    /**
+     * 顺序写入压缩后的块并记录各块所在的段和位置
+     */
+    private void writeBlocks(Integer type, Integer logId, List<LogBlock> blocks, List<byte[]> compressedBlocks) {
+
+        synchronized (writeLock) {
+            try {
+                for (int i = 0; i < blocks.size(); i++) {
+                    byte[] compressed = compressedBlocks.get(i);
+
+                    if (writePosition > 0 && writePosition + compressed.length > segmentBytes) {
+                        writeChannel.close();
+                        activeSegment++;
+                        openActiveSegment();
+                    }
+
+                    LogBlock block = blocks.get(i);
+                    block.setSegment(activeSegment);
+                    block.setPosition(writePosition);
+
+                    ByteBuffer buffer = ByteBuffer.wrap(compressed);
+                    while (buffer.hasRemaining()) {
+                        writePosition += writeChannel.write(buffer);
+                    }
+                }
+            } catch (IOException e) {
+                log.error("写入日志{}-{}失败", type, logId, e);
+                resetWritePosition();
+                throw new StatusException(NestStatusCode.LOG_WRITE_FAILED);
+            }
+        }
+    }
+
+    private Object appendLock(Integer type, Integer logId) {
+
+        int hash = 31 * type.hashCode() + logId.hashCode();
+
+        return appendLocks[(hash & Integer.MAX_VALUE) % appendLocks.length];
+    }
+
+    private static Object[] newLocks(int count) {
+
+        Object[] locks = new Object[count];
+
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+
+        return locks;
+    }
+
+    /**
+     * 写入失败后段文件的实际长度未知，以文件长度为准继续追加
+     */
+    private void resetWritePosition() {
+
+        try {
+            writePosition = writeChannel.size();
+        } catch (IOException e) {
+            log.error("读取日志段{}长度失败", activeSegment, e);
+        }
+    }
+
+    /**
+     * @param offset 起始行号或字节偏移，从 0 开始；tail 为 true 时忽略
+     * @param limit  最多读取的行数或字节数
+     * @param tail   读取最后 limit 行或字节
+     * @param legacy 没有写入日志存储的历史输出，为 null 表示没有
+     */
+    public LogRangeOutput read(Integer type, Integer logId, String unit, long offset, int limit, boolean tail, String legacy) {
+
+        List<LogBlock> blocks = logBlockDao.getLogBlocks(type, logId);
+        boolean byLine = !UNIT_BYTE.equals(unit);
+
+        if (blocks.isEmpty()) {
+            return readLegacy(legacy, byLine, offset, limit, tail);
+        }
+
+        LogBlock last = blocks.get(blocks.size() - 1);
+        long total = byLine ? last.getLineOffset() + last.getLineCount() : last.getRawOffset() + last.getRawSize();
+
+        if (tail) {
+            offset = Math.max(0, total - limit);
+        }
+
+        offset = Math.min(offset, total);
+        long end = Math.min(offset + limit, total);
+        List<LogBlock> selected = new ArrayList<>();
+
+        for (LogBlock block : blocks) {
+            if (byLine ? overlapsLines(block, offset, end) : overlapsBytes(block, offset, end)) {
+                selected.add(block);
+            }
+        }
+
+        if (selected.isEmpty()) {
+            return toRange(byLine, "", offset, end, total);
+        }
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+
+        try {
+            for (LogBlock block : selected) {
+                raw.write(readBlock(block));
+            }
+        } catch (IOException | DataFormatException e) {
+            log.error("读取日志{}-{}失败", type, logId, e);
+            return toRange(byLine, "", offset, offset, total);
+        }
+
+        byte[] bytes = raw.toByteArray();
+        LogBlock first = selected.get(0);
+
+        if (byLine) {
+            return toRange(true, sliceLines(new String(bytes, StandardCharsets.UTF_8), offset - first.getLineOffset(), end - offset), offset, end, total);
+        }
+
+        int from = (int) (offset - first.getRawOffset());
+        int[] range = alignUtf8(bytes, from, (int) Math.min(from + end - offset, bytes.length));
+
+        return toRange(false, new String(bytes, range[0], range[1] - range[0], StandardCharsets.UTF_8),
+                first.getRawOffset() + range[0], first.getRawOffset() + range[1], total);
+    }
+
+    private LogRangeOutput readLegacy(String legacy, boolean byLine, long offset, int limit, boolean tail) {
+
+        String text = legacy == null ? "" : legacy;
+
+        if (byLine) {
+            long total = countLines(text);
+            offset = tail ? Math.max(0, total - limit) : Math.min(offset, total);
+            long end = Math.min(offset + limit, total);
+            return toRange(true, sliceLines(text, offset, end - offset), offset, end, total);
+        }
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        long total = bytes.length;
+        offset = tail ? Math.max(0, total - limit) : Math.min(offset, total);
+        int[] range = alignUtf8(bytes, (int) offset, (int) Math.min(offset + limit, total));
+
+        return toRange(false, new String(bytes, range[0], range[1] - range[0], StandardCharsets.UTF_8), range[0], range[1], total);
+    }
+
+    /**
+     * 按字节读取时把 [from, end) 调整到 UTF-8 字符边界：from 跳过落在字符中间的字节，end 退回到字符开始处；
+     * limit 小于一个字符时 end 前进到下一个字符边界，保证每次至少读取一个字符
+     *
+     * @return 调整后的 [from, end)
+     */
+    private int[] alignUtf8(byte[] bytes, int from, int end) {
+
+        while (from < bytes.length && isContinuation(bytes[from])) {
+            from++;
+        }
+
+        int aligned = Math.max(end, from);
+
+        while (aligned > from && aligned < bytes.length && isContinuation(bytes[aligned])) {
+            aligned--;
+        }
+
+        if (aligned == from && end > from) {
+            aligned = from + 1;
+            while (aligned < bytes.length && isContinuation(bytes[aligned])) {
+                aligned++;
+            }
+        }
+
+        return new int[]{from, aligned};
+    }
+
+    private boolean isContinuation(byte value) {
+
+        return (value & 0xC0) == 0x80;
+    }
+
+    /**
+     * 第 offset 行从第 offset - 1 个换行之后开始，到第 end - 1 个换行结束；没有换行的块（超长行被截断）落在这两个换行之间时也需要读取
+     */
+    private boolean overlapsLines(LogBlock block, long offset, long end) {
+
+        long firstNewline = block.getLineOffset();
+
+        if (block.getLineCount() == 0) {
+            return firstNewline >= offset && firstNewline <= end - 1;
+        }
+
+        long lastNewline = firstNewline + block.getLineCount() - 1;
+
+        return block.getRawOffset() == 0 && offset == 0 || lastNewline >= offset - 1 && firstNewline <= end - 1;
+    }
+
+    private boolean overlapsBytes(LogBlock block, long offset, long end) {
+
+        return block.getRawOffset() < end && block.getRawOffset() + block.getRawSize() > offset;
+    }
+
+    /**
+     * 跳过 skip 个换行后取 count 行
+     */
+    private String sliceLines(String text, long skip, long count) {
+
+        int from = 0;
+
+        for (long i = 0; i < skip && from < text.length(); i++) {
+            int index = text.indexOf('\n', from);
+            if (index < 0) {
+                return "";
+            }
+            from = index + 1;
+        }
+
+        int to = from;
+
+        for (long i = 0; i < count && to < text.length(); i++) {
+            int index = text.indexOf('\n', to);
+            to = index < 0 ? text.length() : index + 1;
+        }
+
+        return text.substring(from, to);
+    }
+
+    private LogRangeOutput toRange(boolean byLine, String output, long offset, long nextOffset, long total) {
+
+        LogRangeOutput logRangeOutput = new LogRangeOutput();
+        logRangeOutput.setOutput(output);
+        logRangeOutput.setUnit(byLine ? UNIT_LINE : UNIT_BYTE);
+        logRangeOutput.setOffset(offset);
+        logRangeOutput.setNextOffset(nextOffset);
+        logRangeOutput.setTotal(total);
+
+        return logRangeOutput;
+    }
+
+    /**
+     * 读取本实例写入的压缩块，供其他实例读取
+     */
+    public byte[] readCompressedBlock(Integer id) {
+
+        LogBlock block = logBlockDao.getLogBlockById(id);
+
+        if (block == null) {
+            throw new StatusException(NestStatusCode.LOG_BLOCK_NOT_EXIST);
+        }
+
+        if (!isLocal(block)) {
+            log.warn("日志块{}保存在实例{}上,当前实例{}", id, block.getNode(), node);
+            throw new StatusException(NestStatusCode.LOG_NODE_UNAVAILABLE);
+        }
+
+        try {
+            return readCompressed(block);
+        } catch (IOException e) {
+            log.error("读取日志块{}失败", id, e);
+            throw new StatusException(NestStatusCode.LOG_BLOCK_NOT_EXIST);
+        }
+    }
+
+    /**
+     * 共享存储、本实例写入的块和没有实例名的旧数据都从本地读取
+     */
+    private boolean isLocal(LogBlock block) {
+
+        return shared || block.getNode() == null || block.getNode().equals(node);
+    }
+
+    /**
+     * 其他实例写入的块读取失败时抛出 LOG_NODE_UNAVAILABLE，不返回缺了一段的日志
+     */
+    private byte[] readBlock(LogBlock block) throws IOException, DataFormatException {
+
+        byte[] compressed;
+
+        if (isLocal(block)) {
+            compressed = readCompressed(block);
+        } else {
+            try {
+                compressed = logNodeClient.fetchBlock(block);
+            } catch (IOException e) {
+                log.warn("读取实例{}上的日志块{}失败", block.getNode(), block.getId(), e);
+                throw new StatusException(NestStatusCode.LOG_NODE_UNAVAILABLE);
+            }
+        }
+
+        Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[block.getRawSize()];
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                length += inflater.inflate(raw, length, raw.length - length);
+            }
+            return raw;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private byte[] readCompressed(LogBlock block) throws IOException {
+
+        String key = block.getNode() + "/" + block.getSegment();
+        FileChannel channel = readChannels.get(key);
+
+        // 段文件不存在时 open 抛出的 IOException 由调用方处理
+        if (channel == null) {
+            FileChannel opened = FileChannel.open(segmentFile(block.getNode(), block.getSegment()).toPath(), StandardOpenOption.READ);
+            channel = readChannels.putIfAbsent(key, opened);
+            if (channel == null) {
+                channel = opened;
+            } else {
+                opened.close();
+            }
+        }
+
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, block.getPosition(), block.getCompressedSize());
+        byte[] compressed = new byte[block.getCompressedSize()];
+        mapped.get(compressed);
+
+        return compressed;
+    }
+
+    private byte[] compress(byte[] bytes, int offset, int length) {
+
+        Deflater deflater = new Deflater();
+
+        try {
+            deflater.setInput(bytes, offset, length);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 块尽量在换行处结束，单行超过 blockBytes 时在字符边界截断
+     */
+    private int blockEnd(byte[] bytes, int start) {
+
+        int end = Math.min(start + blockBytes, bytes.length);
+
+        if (end == bytes.length) {
+            return end;
+        }
+
+        for (int i = end - 1; i > start; i--) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+
+        int aligned = end;
+
+        while (aligned > start + 1 && isContinuation(bytes[aligned])) {
+            aligned--;
+        }
+
+        return aligned;
+    }
+
+    private int countLines(byte[] bytes, int start, int end) {
+
+        int count = 0;
+
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == '\n') {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private long countLines(String text) {
+
+        long count = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+
+        return text.isEmpty() || text.endsWith("\n") ? count : count + 1;
+    }
+
+    private void openActiveSegment() throws IOException {
+
+        writeChannel = FileChannel.open(segmentFile(node, activeSegment).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writePosition = writeChannel.size();
+    }
+
+    /**
+     * 没有实例名的旧数据直接保存在 path 下
+     */
+    private File nodeDirectory(String owner) {
+
+        return owner == null ? new File(path) : new File(path, owner);
+    }
+
+    private File segmentFile(String owner, int segment) {
+
+        return new File(nodeDirectory(owner), String.format("segment-%06d.log", segment));
+    }
+}
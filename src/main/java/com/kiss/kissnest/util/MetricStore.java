@@ -0,0 +1,237 @@
+package com.kiss.kissnest.util;
+
+import com.kiss.kissnest.enums.ServerMetricEnums;
+import com.kiss.kissnest.input.MonitorServerInput;
+import com.kiss.kissnest.output.MetricPointOutput;
+import com.kiss.kissnest.output.MetricSeriesOutput;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 服务器监控指标的内存时序存储：每台服务器一个固定容量的环形缓冲区，时间保存在 long[]，各指标的值保存在 float[]，
+ * 写满后覆盖最早的数据，内存占用只与服务器数量和 capacity 有关；读取时按时间范围查询并降采样为 min/max/avg
+ */
+@Component
+@Slf4j
+public class MetricStore {
+
+    private static final ServerMetricEnums[] METRICS = ServerMetricEnums.values();
+
+    @Value("${monitor.store.capacity:2880}")
+    private Integer capacity;
+
+    @Value("${monitor.store.idleSeconds:86400}")
+    private Long idleSeconds;
+
+    /**
+     * 环境路径 + 内网 ip -> 监控数据
+     */
+    private final Map<String, ServerSeries> series = new ConcurrentHashMap<>();
+
+    /**
+     * @return 写入的各指标的值，按 ServerMetricEnums 的顺序，累计值指标已换算为速率；乱序到达被丢弃时返回 null
+     */
+    public float[] append(MonitorServerInput monitorServerInput, long time) {
+
+        String key = key(monitorServerInput.getEnvPath(), monitorServerInput.getInnerIp());
+
+        return series.computeIfAbsent(key, value -> new ServerSeries(capacity)).append(monitorServerInput, time);
+    }
+
+    /**
+     * @param from   起始时间（毫秒，包含）
+     * @param to     结束时间（毫秒，包含）
+     * @param points 最多返回的点数，每个点是一段时间内的 min/max/avg
+     */
+    public List<MetricSeriesOutput> query(String envPath, String innerIp, List<ServerMetricEnums> metrics, long from, long to, int points) {
+
+        ServerSeries serverSeries = series.get(key(envPath, innerIp));
+        List<MetricSeriesOutput> metricSeriesOutputs = new ArrayList<>();
+
+        for (ServerMetricEnums metric : metrics) {
+            MetricSeriesOutput metricSeriesOutput = new MetricSeriesOutput();
+            metricSeriesOutput.setMetric(metric.value());
+            metricSeriesOutput.setPoints(serverSeries == null || to < from ? new ArrayList<>() : serverSeries.query(metric, from, to, points));
+            metricSeriesOutputs.add(metricSeriesOutput);
+        }
+
+        return metricSeriesOutputs;
+    }
+
+    /**
+     * 移除 idleSeconds 内没有上报的服务器
+     */
+    public void sweep() {
+
+        long expireBefore = System.currentTimeMillis() - idleSeconds * 1000;
+
+        series.entrySet().removeIf(entry -> {
+            boolean idle = entry.getValue().getLastTime() < expireBefore;
+            if (idle) {
+                log.info("清理服务器{}的监控数据", entry.getKey());
+            }
+            return idle;
+        });
+    }
+
+    private String key(String envPath, String innerIp) {
+
+        return envPath + "|" + innerIp;
+    }
+
+    /**
+     * 监控数据中缺失的值保存为 NaN
+     */
+    private static float getValue(MonitorServerInput monitorServerInput, ServerMetricEnums metric) {
+
+        switch (metric) {
+            case CPU_USED:
+                return toFloat(monitorServerInput.getCpuUsed());
+            case MEM_USAGE:
+                return toFloat(monitorServerInput.getMemUsage());
+            case MEM_FREE:
+                return toFloat(monitorServerInput.getMemFree());
+            case HD_USAGE:
+                return toFloat(monitorServerInput.getHdUsage());
+            case HD_FREE:
+                return toFloat(monitorServerInput.getHdFree());
+            default:
+                return Float.NaN;
+        }
+    }
+
+    private static long getCounter(MonitorServerInput monitorServerInput, ServerMetricEnums metric) {
+
+        BigInteger value = metric == ServerMetricEnums.NETWORK_RECEIVE ? monitorServerInput.getNetworkReceive() : monitorServerInput.getNetworkSent();
+
+        return value == null ? -1 : value.longValue();
+    }
+
+    private static float toFloat(Number value) {
+
+        return value == null ? Float.NaN : value.floatValue();
+    }
+
+    private static class ServerSeries {
+
+        private final long[] times;
+
+        /**
+         * 指标序号 -> 各时间点的值
+         */
+        private final float[][] values;
+
+        /**
+         * 累计值指标上一次的原始值，用来计算速率
+         */
+        private final long[] lastCounters;
+
+        private int next;
+
+        private int size;
+
+        private volatile long lastTime;
+
+        private ServerSeries(int capacity) {
+
+            this.times = new long[capacity];
+            this.values = new float[METRICS.length][capacity];
+            this.lastCounters = new long[METRICS.length];
+        }
+
+        private long getLastTime() {
+            return lastTime;
+        }
+
+        private synchronized float[] append(MonitorServerInput monitorServerInput, long time) {
+
+            // 上报的时间不会早于上一次，乱序到达的直接丢弃，保证缓冲区内按时间排列
+            if (size > 0 && time <= lastTime) {
+                return null;
+            }
+
+            float[] sample = new float[METRICS.length];
+
+            for (int i = 0; i < METRICS.length; i++) {
+                ServerMetricEnums metric = METRICS[i];
+
+                if (metric.counter()) {
+                    long counter = getCounter(monitorServerInput, metric);
+                    boolean valid = size > 0 && counter >= 0 && lastCounters[i] >= 0 && counter >= lastCounters[i];
+                    sample[i] = valid ? (counter - lastCounters[i]) * 1000f / (time - lastTime) : Float.NaN;
+                    lastCounters[i] = counter;
+                } else {
+                    sample[i] = getValue(monitorServerInput, metric);
+                }
+
+                values[i][next] = sample[i];
+            }
+
+            times[next] = time;
+            next = (next + 1) % times.length;
+            size = Math.min(size + 1, times.length);
+            lastTime = time;
+
+            return sample;
+        }
+
+        private synchronized List<MetricPointOutput> query(ServerMetricEnums metric, long from, long to, int points) {
+
+            float[] metricValues = values[metric.ordinal()];
+            long bucketWidth = Math.max(1, (to - from) / points + 1);
+            int buckets = (int) ((to - from) / bucketWidth + 1);
+            float[] mins = new float[buckets];
+            float[] maxs = new float[buckets];
+            double[] sums = new double[buckets];
+            int[] counts = new int[buckets];
+            int start = (next - size + times.length) % times.length;
+
+            for (int i = 0; i < size; i++) {
+                int index = (start + i) % times.length;
+                long time = times[index];
+                float value = metricValues[index];
+
+                if (time < from || time > to || Float.isNaN(value)) {
+                    continue;
+                }
+
+                int bucket = (int) ((time - from) / bucketWidth);
+
+                if (counts[bucket] == 0) {
+                    mins[bucket] = value;
+                    maxs[bucket] = value;
+                } else {
+                    mins[bucket] = Math.min(mins[bucket], value);
+                    maxs[bucket] = Math.max(maxs[bucket], value);
+                }
+
+                sums[bucket] += value;
+                counts[bucket]++;
+            }
+
+            List<MetricPointOutput> metricPointOutputs = new ArrayList<>();
+
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                if (counts[bucket] == 0) {
+                    continue;
+                }
+
+                MetricPointOutput metricPointOutput = new MetricPointOutput();
+                metricPointOutput.setTime(from + bucket * bucketWidth);
+                metricPointOutput.setMin(mins[bucket]);
+                metricPointOutput.setMax(maxs[bucket]);
+                metricPointOutput.setAvg((float) (sums[bucket] / counts[bucket]));
+                metricPointOutputs.add(metricPointOutput);
+            }
+
+            return metricPointOutputs;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.kiss.kissnest.util;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * salt-api 会话管理：每个 salt master 共享一个带连接池的 OkHttpClient，
+ * 每个 (saltHost, saltUser) 缓存一个 token，到期前提前刷新，遇到 401 重新登录后重试一次
+ */
+@Component
+@Slf4j
+public class SaltSessionManager {
+
+    private static final MediaType JSON_TYPE = MediaType.parse("application/json");
+
+    @Value("${salt.session.refreshAheadSeconds:300}")
+    private Long refreshAheadSeconds;
+
+    @Value("${salt.client.maxIdleConnections:20}")
+    private Integer maxIdleConnections;
+
+    @Value("${salt.client.keepAliveMinutes:5}")
+    private Long keepAliveMinutes;
+
+    @Value("${salt.client.readTimeoutSeconds:600}")
+    private Long readTimeoutSeconds;
+
+    private final Map<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    private final Map<String, SaltSession> sessions = new ConcurrentHashMap<>();
+
+    public OkHttpClient getClient(String url) {
+
+        return clients.computeIfAbsent(url, key -> new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMinutes, TimeUnit.MINUTES))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+                .build());
+    }
+
+    /**
+     * 以 token 认证执行请求，401 时刷新 token 并重试一次，返回 200 时的响应体，否则返回 null
+     */
+    public String execute(String url, String username, String password, Request.Builder builder) {
+
+        try (Response response = open(getClient(url), url, username, password, builder)) {
+            if (response == null) {
+                return null;
+            }
+
+            if (response.code() == HttpStatus.SC_OK) {
+                return response.body().string();
+            }
+
+            log.warn("salt 请求失败 {},code {}", url, response.code());
+            return null;
+        } catch (IOException e) {
+            log.error("salt 请求异常 {}", url, e);
+            return null;
+        }
+    }
+
+    /**
+     * 打开长连接请求（如 /events），readTimeoutSeconds 内没有读到数据时读取抛出 SocketTimeoutException，由调用方读取并关闭响应
+     */
+    public Response openStream(String url, String username, String password, Request.Builder builder, long readTimeoutSeconds) throws IOException {
+
+        OkHttpClient streamClient = getClient(url).newBuilder()
+                .readTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+                .build();
+
+        return open(streamClient, url, username, password, builder);
+    }
+
+    private Response open(OkHttpClient client, String url, String username, String password, Request.Builder builder) throws IOException {
+
+        SaltSession session = getSession(url, username, password);
+        String token = session.getToken();
+
+        if (token == null) {
+            return null;
+        }
+
+        Response response = client.newCall(builder.header("X-Auth-Token", token).build()).execute();
+
+        if (response.code() == HttpStatus.SC_UNAUTHORIZED) {
+            response.close();
+            log.info("salt token 失效,重新登录 {}@{}", username, url);
+            token = session.refreshToken(token);
+
+            if (token == null) {
+                return null;
+            }
+
+            response = client.newCall(builder.header("X-Auth-Token", token).build()).execute();
+        }
+
+        return response;
+    }
+
+    public void invalidate(String url, String username) {
+
+        sessions.remove(sessionKey(url, username));
+    }
+
+    private SaltSession getSession(String url, String username, String password) {
+
+        SaltSession session = sessions.computeIfAbsent(sessionKey(url, username), key -> new SaltSession(url, username, password));
+
+        if (!StringUtils.equals(session.password, password)) {
+            session = new SaltSession(url, username, password);
+            sessions.put(sessionKey(url, username), session);
+        }
+
+        return session;
+    }
+
+    private String sessionKey(String url, String username) {
+
+        return url + "|" + username;
+    }
+
+    private String login(String url, String username, String password, SaltSession session) {
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("username", username);
+        params.put("password", password);
+        params.put("eauth", "pam");
+        Request request = new Request.Builder()
+                .url(url + "/login")
+                .post(RequestBody.create(JSON_TYPE, JSONObject.toJSONString(params)))
+                .addHeader("Accept", "application/json")
+                .build();
+
+        try (Response response = getClient(url).newCall(request).execute()) {
+            if (response.code() != HttpStatus.SC_OK) {
+                log.warn("salt 登录失败 {}@{},code {}", username, url, response.code());
+                return null;
+            }
+
+            JSONObject jsonObject = JSONObject.parseObject(response.body().string());
+            JSONArray jsonArray = jsonObject.getJSONArray("return");
+            JSONObject tokenJson = jsonArray.getJSONObject(0);
+            String token = tokenJson.getString("token");
+
+            if (StringUtils.isEmpty(token)) {
+                return null;
+            }
+
+            // expire 为秒级时间戳（带小数）
+            Double expire = tokenJson.getDouble("expire");
+            session.expireAt = expire == null ? System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1) : (long) (expire * 1000);
+
+            return token;
+        } catch (Exception e) {
+            log.error("salt 登录异常 {}@{}", username, url, e);
+            return null;
+        }
+    }
+
+    private class SaltSession {
+
+        private final String url;
+
+        private final String username;
+
+        private final String password;
+
+        private volatile String token;
+
+        private volatile long expireAt;
+
+        SaltSession(String url, String username, String password) {
+            this.url = url;
+            this.username = username;
+            this.password = password;
+        }
+
+        /**
+         * 同一会话的并发请求只会触发一次登录
+         */
+        synchronized String getToken() {
+
+            long refreshAt = expireAt - TimeUnit.SECONDS.toMillis(refreshAheadSeconds);
+
+            if (token == null || System.currentTimeMillis() >= refreshAt) {
+                token = login(url, username, password, this);
+            }
+
+            return token;
+        }
+
+        /**
+         * 被拒绝的 token 若已被其他线程刷新过，直接使用新的 token
+         */
+        synchronized String refreshToken(String staleToken) {
+
+            if (token == null || token.equals(staleToken)) {
+                token = login(url, username, password, this);
+            }
+
+            return token;
+        }
+    }
+}
@@ -2,9 +2,9 @@ package com.kiss.kissnest.util;
 
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
+import com.kiss.kissnest.entity.Environment;
 import okhttp3.*;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
@@ -13,41 +13,16 @@ import java.util.Map;
 @Component
 public class SaltStackUtil {
 
-    public String getToken(String url, String username, String password) {
-        OkHttpClient client = new OkHttpClient();
-        Map<String, Object> params = new HashMap<>();
-        params.put("username", username);
-        params.put("password", password);
-        params.put("eauth", "pam");
-        MediaType mediaType = MediaType.parse("application/json");
-        RequestBody body = RequestBody.create(mediaType, JSONObject.toJSONString(params));
-        Request request = new Request.Builder()
-                .url(url + "/login")
-                .post(body)
-                .addHeader("Content-Type", "application/json")
-                .build();
-
-        Response response = null;
-        try {
-            response = client.newCall(request).execute();
-            String tokenResp = response.body().string();
-            JSONObject jsonObject = JSONObject.parseObject(tokenResp);
-            JSONArray jsonArray = jsonObject.getJSONArray("return");
-            JSONObject tokenJson = jsonArray.getJSONObject(0);
-            String token = tokenJson.getString("token");
-            return StringUtils.isEmpty(token) ? null : token;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        } finally {
-            if (response != null) {
-                response.close();
-            }
-        }
+    @Autowired
+    private SaltSessionManager saltSessionManager;
+
+    public String callLocalSync(Environment environment, String functionName, String nodes, String option) {
+
+        return callLocalSync(environment.getSaltHost(), environment.getSaltUser(), environment.getSaltPassword(), environment.getSaltVersion(), functionName, nodes, option);
     }
 
     public String callLocalSync(String url, String username, String password, String version, String functionName, String nodes, String option) {
-        OkHttpClient client = new OkHttpClient();
+
         Map<String, Object> params = new HashMap<>();
         params.put("client", "local");
         params.put("tgt", nodes);
@@ -56,33 +31,79 @@ public class SaltStackUtil {
         params.put("expr_form", "list");
         MediaType mediaType = MediaType.parse("application/json");
         RequestBody body = RequestBody.create(mediaType, JSONObject.toJSONString(params));
-        String token = getToken(url, username, password);
-        Request request = new Request.Builder()
+        Request.Builder builder = new Request.Builder()
                 .url(url)
                 .post(body)
-                .addHeader("Accept", "application/json")
-                .addHeader("X-Auth-Token", token)
-                .build();
+                .addHeader("Accept", "application/json");
 
-        Response response = null;
-        try {
-            response = client.newCall(request).execute();
-            int code = response.code();
+        return saltSessionManager.execute(url, username, password, builder);
+    }
+
+    /**
+     * 以 local_async 提交命令，立即返回 jid，失败时返回 null
+     */
+    public String callLocalAsync(Environment environment, String functionName, String nodes, String option) {
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("client", "local_async");
+        params.put("tgt", nodes);
+        params.put("fun", functionName);
+        params.put("arg", option);
+        params.put("expr_form", "list");
+        MediaType mediaType = MediaType.parse("application/json");
+        RequestBody body = RequestBody.create(mediaType, JSONObject.toJSONString(params));
+        Request.Builder builder = new Request.Builder()
+                .url(environment.getSaltHost())
+                .post(body)
+                .addHeader("Accept", "application/json");
 
-            if (code == HttpStatus.SC_OK) {
-                ResponseBody responseBody = response.body();
-                return responseBody.string();
-            }
+        String response = saltSessionManager.execute(environment.getSaltHost(), environment.getSaltUser(), environment.getSaltPassword(), builder);
 
+        if (response == null) {
             return null;
-        } catch (Exception e) {
-            e.printStackTrace();
+        }
+
+        JSONArray returnArray = JSONObject.parseObject(response).getJSONArray("return");
+
+        if (returnArray == null || returnArray.isEmpty()) {
             return null;
-        } finally {
-            if (response != null) {
-                response.close();
-            }
         }
+
+        return returnArray.getJSONObject(0).getString("jid");
+    }
+
+    /**
+     * 查询 job 执行结果，返回 /jobs/&lt;jid&gt; 的原始响应
+     */
+    public String lookupJob(Environment environment, String jid) {
+
+        Request.Builder builder = new Request.Builder()
+                .url(environment.getSaltHost() + "/jobs/" + jid)
+                .get()
+                .addHeader("Accept", "application/json");
+
+        return saltSessionManager.execute(environment.getSaltHost(), environment.getSaltUser(), environment.getSaltPassword(), builder);
+    }
+
+    /**
+     * 部署命令末尾会 echo $?，以输出的最后一行是否为 0 判断命令是否执行成功
+     */
+    public static boolean isCommandSuccess(String message) {
+
+        if (message == null) {
+            return false;
+        }
+
+        String status = message.substring(message.lastIndexOf("\n") + 1).trim();
+
+        return status.equals("0");
     }
 
+    /**
+     * minion id 与 servers.innerIp 的对应规则，与 ServerMapper.getServerIpsByIds 保持一致
+     */
+    public static String toMinionId(String innerIp) {
+
+        return "node-" + innerIp.replace(".", "-");
+    }
 }
@@ -0,0 +1,101 @@
+package com.kiss.kissnest.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 串行执行器：任务按提交顺序在共享线程池上逐个执行，同一时间最多占用一个线程；
+ * 排队的任务超过 capacity 时拒绝提交
+ */
+@Slf4j
+public class SerialExecutor implements Executor {
+
+    /**
+     * 每次最多连续执行的任务数，执行完后重新排队，避免任务多的执行器一直占用线程
+     */
+    private static final int RUN_BATCH = 32;
+
+    private final Executor executor;
+
+    private final int capacity;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public SerialExecutor(Executor executor, int capacity) {
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            throw new RejectedExecutionException("串行执行器队列已满");
+        }
+
+        tasks.add(task);
+        schedule();
+    }
+
+    /**
+     * 没有排队和正在执行的任务
+     */
+    public boolean isIdle() {
+
+        return size.get() == 0 && !running.get();
+    }
+
+    private void schedule() {
+
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(this::run);
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    private void run() {
+
+        try {
+            Runnable task;
+            int count = 0;
+
+            while (count++ < RUN_BATCH && (task = tasks.poll()) != null) {
+                size.decrementAndGet();
+
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("串行任务执行异常", e);
+                }
+            }
+        } finally {
+            running.set(false);
+        }
+
+        // 执行期间新提交的任务
+        if (!tasks.isEmpty()) {
+            try {
+                schedule();
+            } catch (RejectedExecutionException e) {
+                log.error("串行任务提交失败,等待下一次提交时继续执行", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.kiss.kissnest.util;
+
+import org.springframework.web.socket.TextMessage;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 推送给团队的一条消息：序号、主题和序列化后的内容。
+ * 在实例之间传递和写入 Redis 时编码为 序号 + 换行 + 逗号分隔的主题 + 换行 + 内容
+ */
+public class WebSocketEvent {
+
+    private static final String TOPIC_SEPARATOR = ",";
+
+    private final Long seq;
+
+    private final Collection<String> topics;
+
+    private final TextMessage message;
+
+    public WebSocketEvent(Long seq, Collection<String> topics, String text) {
+        this.seq = seq;
+        this.topics = topics;
+        this.message = new TextMessage(text);
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public Collection<String> getTopics() {
+        return topics;
+    }
+
+    public TextMessage getMessage() {
+        return message;
+    }
+
+    public String encode() {
+
+        return (seq == null ? "" : seq.toString()) + "\n" + String.join(TOPIC_SEPARATOR, topics) + "\n" + message.getPayload();
+    }
+
+    public static WebSocketEvent decode(String value) {
+
+        int seqEnd = value.indexOf('\n');
+        int topicsEnd = value.indexOf('\n', seqEnd + 1);
+
+        if (seqEnd < 0 || topicsEnd < 0) {
+            throw new IllegalArgumentException("消息格式不正确");
+        }
+
+        String seq = value.substring(0, seqEnd);
+        String topics = value.substring(seqEnd + 1, topicsEnd);
+        List<String> topicList = topics.isEmpty() ? Collections.emptyList() : Arrays.asList(topics.split(TOPIC_SEPARATOR));
+
+        return new WebSocketEvent(seq.isEmpty() ? null : Long.valueOf(seq), topicList, value.substring(topicsEnd + 1));
+    }
+}
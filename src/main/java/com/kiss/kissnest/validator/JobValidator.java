@@ -9,6 +9,7 @@ import com.kiss.kissnest.entity.Server;
 import com.kiss.kissnest.input.*;
 import com.kiss.kissnest.status.NestStatusCode;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.springframework.validation.Errors;
@@ -35,11 +36,15 @@ public class JobValidator implements Validator {
     @Autowired
     private JobDao jobDao;
 
+    @Value("${build.batch.maxSize:50}")
+    private Integer batchMaxSize;
+
     @Override
     public boolean supports(Class<?> clazz) {
 
         return clazz.equals(CreateJobInput.class) ||
                 clazz.equals(BuildJobInput.class) ||
+                clazz.equals(BatchBuildJobInput.class) ||
                 clazz.equals(BuildLogInput.class) ||
                 clazz.equals(CreateDeployInput.class) ||
                 clazz.equals(UpdateJobInput.class) ||
@@ -63,6 +68,9 @@ public class JobValidator implements Validator {
             validateProjectId(buildJobInput.getProjectId(), errors);
             validateBranch(buildJobInput.getBranch(), errors);
             validateExecType(buildJobInput.getType(), errors);
+        } else if (BatchBuildJobInput.class.isInstance(target)) {
+            BatchBuildJobInput batchBuildJobInput = (BatchBuildJobInput) target;
+            validateBuilds(batchBuildJobInput.getBuilds(), errors);
         } else if (BuildLogInput.class.isInstance(target)) {
             BuildLogInput buildLogsInput = (BuildLogInput) target;
             teamValidaor.validateId(buildLogsInput.getTeamId(), "teamId", errors);
@@ -121,6 +129,37 @@ public class JobValidator implements Validator {
         }
     }
 
+    /**
+     * 每一项按单个构建的规则校验
+     */
+    public void validateBuilds(List<BuildJobInput> builds, Errors errors) {
+
+        if (builds == null || builds.isEmpty()) {
+            errors.rejectValue("builds", String.valueOf(NestStatusCode.BUILD_LIST_IS_EMPTY), "构建列表为空");
+            return;
+        }
+
+        if (builds.size() > batchMaxSize) {
+            errors.rejectValue("builds", String.valueOf(NestStatusCode.BUILD_LIST_TOO_LARGE), "构建数量超过上限");
+            return;
+        }
+
+        for (int i = 0; i < builds.size(); i++) {
+            BuildJobInput buildJobInput = builds.get(i);
+            errors.pushNestedPath("builds[" + i + "]");
+
+            if (buildJobInput == null) {
+                errors.reject(String.valueOf(NestStatusCode.BUILD_LIST_IS_EMPTY), "构建列表为空");
+            } else {
+                validateProjectId(buildJobInput.getProjectId(), errors);
+                validateBranch(buildJobInput.getBranch(), errors);
+                validateExecType(buildJobInput.getType(), errors);
+            }
+
+            errors.popNestedPath();
+        }
+    }
+
     public void validateScript(String shell, Errors errors) {
 
         if (StringUtils.isEmpty(shell)) {
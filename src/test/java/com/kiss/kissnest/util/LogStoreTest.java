@@ -0,0 +1,262 @@
+package com.kiss.kissnest.util;
+
+import com.kiss.kissnest.dao.LogBlockDao;
+import com.kiss.kissnest.entity.LogBlock;
+import com.kiss.kissnest.output.LogRangeOutput;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LogStoreTest {
+
+    private static final Integer TYPE = 1;
+
+    private static final Integer LOG_ID = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InMemoryLogBlockDao logBlockDao;
+
+    private LogNodeClient logNodeClient;
+
+    private LogStore logStore;
+
+    @Before
+    public void setUp() throws IOException {
+
+        logBlockDao = new InMemoryLogBlockDao();
+        logNodeClient = mock(LogNodeClient.class);
+        logStore = newLogStore("node-a", folder.getRoot().getPath());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+
+        logStore.close();
+    }
+
+    @Test
+    public void readLinesAcrossBlocks() {
+
+        logStore.append(TYPE, LOG_ID, lines(0, 5));
+        logStore.append(TYPE, LOG_ID, lines(5, 10));
+
+        assertTrue(logBlockDao.getLogBlocks(TYPE, LOG_ID).size() > 2);
+
+        LogRangeOutput range = logStore.read(TYPE, LOG_ID, LogStore.UNIT_LINE, 3, 4, false, null);
+
+        assertEquals(lines(3, 7), range.getOutput());
+        assertEquals(Long.valueOf(3), range.getOffset());
+        assertEquals(Long.valueOf(7), range.getNextOffset());
+        assertEquals(Long.valueOf(10), range.getTotal());
+    }
+
+    @Test
+    public void readBytesAcrossBlocks() {
+
+        String text = lines(0, 10);
+        logStore.append(TYPE, LOG_ID, text);
+
+        LogRangeOutput range = logStore.read(TYPE, LOG_ID, LogStore.UNIT_BYTE, 10, 20, false, null);
+
+        assertEquals(text.substring(10, 30), range.getOutput());
+        assertEquals(Long.valueOf(10), range.getOffset());
+        assertEquals(Long.valueOf(30), range.getNextOffset());
+        assertEquals(Long.valueOf(text.length()), range.getTotal());
+    }
+
+    @Test
+    public void readTail() {
+
+        String text = lines(0, 10);
+        logStore.append(TYPE, LOG_ID, text);
+
+        LogRangeOutput lineRange = logStore.read(TYPE, LOG_ID, LogStore.UNIT_LINE, 0, 3, true, null);
+
+        assertEquals(lines(7, 10), lineRange.getOutput());
+        assertEquals(Long.valueOf(7), lineRange.getOffset());
+        assertEquals(Long.valueOf(10), lineRange.getNextOffset());
+
+        LogRangeOutput byteRange = logStore.read(TYPE, LOG_ID, LogStore.UNIT_BYTE, 0, 5, true, null);
+
+        assertEquals(text.substring(text.length() - 5), byteRange.getOutput());
+        assertEquals(Long.valueOf(text.length() - 5), byteRange.getOffset());
+        assertEquals(Long.valueOf(text.length()), byteRange.getNextOffset());
+    }
+
+    @Test
+    public void readLongLineSplitAcrossBlocks() {
+
+        String longLine = repeat("a", 40) + "\n";
+        logStore.append(TYPE, LOG_ID, longLine + "next\n");
+
+        List<LogBlock> blocks = logBlockDao.getLogBlocks(TYPE, LOG_ID);
+
+        assertTrue(blocks.size() >= 3);
+        assertEquals(Integer.valueOf(0), blocks.get(0).getLineCount());
+
+        assertEquals(longLine, logStore.read(TYPE, LOG_ID, LogStore.UNIT_LINE, 0, 1, false, null).getOutput());
+        assertEquals("next\n", logStore.read(TYPE, LOG_ID, LogStore.UNIT_LINE, 1, 1, false, null).getOutput());
+        assertEquals(Long.valueOf(2), logStore.read(TYPE, LOG_ID, LogStore.UNIT_LINE, 0, 10, false, null).getTotal());
+    }
+
+    @Test
+    public void readMultiByteAtBlockBoundary() {
+
+        // 每个汉字 3 个字节，16 字节的块只能在第 15 个字节处截断
+        String line = repeat("日志", 10);
+        logStore.append(TYPE, LOG_ID, line);
+
+        List<LogBlock> blocks = logBlockDao.getLogBlocks(TYPE, LOG_ID);
+
+        assertEquals(Integer.valueOf(15), blocks.get(0).getRawSize());
+        assertEquals(line + "\n", logStore.read(TYPE, LOG_ID, LogStore.UNIT_LINE, 0, 1, false, null).getOutput());
+
+        LogRangeOutput crossBlock = logStore.read(TYPE, LOG_ID, LogStore.UNIT_BYTE, 12, 9, false, null);
+
+        assertEquals("日志日", crossBlock.getOutput());
+        assertEquals(Long.valueOf(12), crossBlock.getOffset());
+        assertEquals(Long.valueOf(21), crossBlock.getNextOffset());
+    }
+
+    @Test
+    public void readMultiByteAtRangeBoundary() {
+
+        logStore.append(TYPE, LOG_ID, repeat("日志", 10));
+
+        // 起点落在字符中间时跳到下一个字符，终点落在字符中间时退回到字符开始处
+        LogRangeOutput inside = logStore.read(TYPE, LOG_ID, LogStore.UNIT_BYTE, 1, 7, false, null);
+
+        assertEquals("志", inside.getOutput());
+        assertEquals(Long.valueOf(3), inside.getOffset());
+        assertEquals(Long.valueOf(6), inside.getNextOffset());
+
+        // limit 小于一个字符时至少读取一个字符
+        LogRangeOutput single = logStore.read(TYPE, LOG_ID, LogStore.UNIT_BYTE, 0, 1, false, null);
+
+        assertEquals("日", single.getOutput());
+        assertEquals(Long.valueOf(3), single.getNextOffset());
+    }
+
+    @Test
+    public void appendIfAbsentWritesOnce() {
+
+        assertTrue(logStore.appendIfAbsent(TYPE, LOG_ID, lines(0, 3)));
+        assertFalse(logStore.appendIfAbsent(TYPE, LOG_ID, lines(0, 3)));
+
+        assertEquals(lines(0, 3), logStore.read(TYPE, LOG_ID, LogStore.UNIT_LINE, 0, 10, false, null).getOutput());
+    }
+
+    @Test
+    public void readBlocksFromOtherNode() throws IOException {
+
+        String text = lines(0, 10);
+        logStore.append(TYPE, LOG_ID, text);
+
+        LogStore other = newLogStore("node-b", folder.newFolder().getPath());
+
+        when(logNodeClient.fetchBlock(any(LogBlock.class))).thenAnswer(invocation -> logStore.readCompressedBlock(((LogBlock) invocation.getArgument(0)).getId()));
+
+        try {
+            assertEquals(text, other.read(TYPE, LOG_ID, LogStore.UNIT_LINE, 0, 10, false, null).getOutput());
+        } finally {
+            other.close();
+        }
+    }
+
+    private LogStore newLogStore(String node, String path) throws IOException {
+
+        LogStore store = new LogStore();
+        ReflectionTestUtils.setField(store, "logBlockDao", logBlockDao);
+        ReflectionTestUtils.setField(store, "logNodeClient", logNodeClient);
+        ReflectionTestUtils.setField(store, "path", path);
+        ReflectionTestUtils.setField(store, "segmentBytes", 64L);
+        ReflectionTestUtils.setField(store, "blockBytes", 16);
+        ReflectionTestUtils.setField(store, "node", node);
+        ReflectionTestUtils.setField(store, "shared", false);
+        store.init();
+
+        return store;
+    }
+
+    /**
+     * 每行 8 个字节：line-00\n
+     */
+    private String lines(int from, int to) {
+
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = from; i < to; i++) {
+            builder.append(String.format("line-%02d\n", i));
+        }
+
+        return builder.toString();
+    }
+
+    private String repeat(String text, int count) {
+
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            builder.append(text);
+        }
+
+        return builder.toString();
+    }
+
+    private static class InMemoryLogBlockDao implements LogBlockDao {
+
+        private final List<LogBlock> blocks = new ArrayList<>();
+
+        @Override
+        public synchronized Integer createLogBlocks(List<LogBlock> logBlocks) {
+
+            for (LogBlock logBlock : logBlocks) {
+                logBlock.setId(blocks.size() + 1);
+                blocks.add(logBlock);
+            }
+
+            return logBlocks.size();
+        }
+
+        @Override
+        public synchronized List<LogBlock> getLogBlocks(Integer type, Integer logId) {
+
+            return blocks.stream()
+                    .filter(block -> block.getType().equals(type) && block.getLogId().equals(logId))
+                    .sorted(Comparator.comparing(LogBlock::getRawOffset))
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public synchronized LogBlock getLastLogBlock(Integer type, Integer logId) {
+
+            List<LogBlock> logBlocks = getLogBlocks(type, logId);
+
+            return logBlocks.isEmpty() ? null : logBlocks.get(logBlocks.size() - 1);
+        }
+
+        @Override
+        public synchronized LogBlock getLogBlockById(Integer id) {
+
+            return id > 0 && id <= blocks.size() ? blocks.get(id - 1) : null;
+        }
+    }
+}